@@ -0,0 +1,129 @@
+package com.tollbooth.query;
+
+import com.tollbooth.toll.TollEmailMeta;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.rowset.SqlRowSet;
+
+/**
+ * Compares mapping {@code toll_email_meta} rows with {@link RowMapperTemplate} against the
+ * name-based {@link AbstractRowMapper} that {@code TollEmailMetaDao} used before. Rows come from a
+ * scrollable in-memory H2 result set, so the driver's own per-row work is small next to the
+ * mapping. Run with {@code ./gradlew jmh -PjmhIncludes=RowMapperBenchmark}; the gc profiler's
+ * {@code gc.alloc.rate.norm} is the allocation per row.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RowMapperBenchmark {
+
+  private static final int ROWS = 1000;
+
+  private static final String SELECT_COLUMNS =
+      "id, gmail_id, sender_email, toll_paid, stripe_customer_id, processed_at, created_at";
+
+  private Connection connection;
+  private ResultSet rs;
+  private RowMapperTemplate<TollEmailMeta> template;
+
+  @Setup(Level.Trial)
+  public void setup() throws SQLException {
+    connection = DriverManager.getConnection("jdbc:h2:mem:rowmapper");
+    try (Statement statement = connection.createStatement()) {
+      statement.execute(
+          "CREATE TABLE toll_email_meta (id UUID PRIMARY KEY, gmail_id VARCHAR NOT NULL,"
+              + " sender_email VARCHAR NOT NULL, toll_paid BOOLEAN NOT NULL, stripe_customer_id"
+              + " VARCHAR, processed_at TIMESTAMP, created_at TIMESTAMP NOT NULL)");
+    }
+    try (PreparedStatement insert =
+        connection.prepareStatement("INSERT INTO toll_email_meta VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+      Timestamp now = Timestamp.from(Instant.now());
+      for (int i = 0; i < ROWS; i++) {
+        insert.setObject(1, UUID.randomUUID());
+        insert.setString(2, "gmail-" + i);
+        insert.setString(3, "sender" + i + "@example.com");
+        insert.setBoolean(4, i % 2 == 0);
+        insert.setString(5, "cus_" + i);
+        insert.setTimestamp(6, now);
+        insert.setTimestamp(7, now);
+        insert.addBatch();
+      }
+      insert.executeBatch();
+    }
+    rs =
+        connection
+            .createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY)
+            .executeQuery("SELECT " + SELECT_COLUMNS + " FROM toll_email_meta");
+    template = RowMapperTemplate.of(TollEmailMeta.class, SELECT_COLUMNS);
+
+    // Both mappers must agree before their speed is worth comparing
+    RowMapper<TollEmailMeta> legacy = new LegacyMapper();
+    RowMapper<TollEmailMeta> generated = template.newRowMapper();
+    rs.beforeFirst();
+    for (int row = 0; rs.next(); row++) {
+      if (!legacy.mapRow(rs, row).equals(generated.mapRow(rs, row))) {
+        throw new IllegalStateException("Mappers disagree on row " + row);
+      }
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws SQLException {
+    connection.close();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public void legacyMapper(Blackhole blackhole) throws SQLException {
+    map(new LegacyMapper(), blackhole);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public void rowMapperTemplate(Blackhole blackhole) throws SQLException {
+    map(template.newRowMapper(), blackhole);
+  }
+
+  private void map(RowMapper<TollEmailMeta> mapper, Blackhole blackhole) throws SQLException {
+    rs.beforeFirst();
+    for (int row = 0; rs.next(); row++) {
+      blackhole.consume(mapper.mapRow(rs, row));
+    }
+  }
+
+  /** {@code TollEmailMetaDao}'s mapper before it was replaced by {@link RowMapperTemplate}. */
+  static class LegacyMapper extends AbstractRowMapper<TollEmailMeta> {
+    @Override
+    public TollEmailMeta mapRow(SqlRowSet rs) {
+      return TollEmailMeta.builder()
+          .id(getUuid(rs, "id"))
+          .gmailId(rs.getString("gmail_id"))
+          .senderEmail(rs.getString("sender_email"))
+          .tollPaid(rs.getBoolean("toll_paid"))
+          .stripeCustomerId(rs.getString("stripe_customer_id"))
+          .processedAt(getInstant(rs, "processed_at"))
+          .createdAt(getInstant(rs, "created_at"))
+          .build();
+    }
+  }
+}
@@ -0,0 +1,26 @@
+package com.tollbooth.config;
+
+import java.util.HashMap;
+import java.util.Map;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "persistence")
+@Getter
+@Setter
+public class PersistenceProperties {
+
+  /** Entity caches by table name, see {@code EntityCache}. */
+  private Map<String, Cache> cache = new HashMap<>();
+
+  @Getter
+  @Setter
+  public static class Cache {
+    private boolean enabled;
+    private long maximumSize = 10_000;
+    private int expireAfterWriteSeconds = 300;
+  }
+}
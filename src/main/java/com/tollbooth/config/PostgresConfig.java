@@ -96,6 +96,8 @@ public class PostgresConfig {
     dataSource.setMinIdle(poolSize);
     dataSource.setMaxIdle(poolSize);
     dataSource.setDriverClassName("org.postgresql.Driver");
+    // Lets the driver send a batch of single-row inserts as multi-row inserts
+    dataSource.setConnectionProperties("reWriteBatchedInserts=true");
     dataSource.setValidationQuery("SELECT 1");
     dataSource.setTestOnReturn(true);
     dataSource.setTestOnBorrow(true);
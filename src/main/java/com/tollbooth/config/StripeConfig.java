@@ -1,8 +1,13 @@
 package com.tollbooth.config;
 
-import com.stripe.Stripe;
-import jakarta.annotation.PostConstruct;
+import com.stripe.StripeClient;
+import com.stripe.net.LiveStripeResponseGetter;
+import com.tollbooth.stripe.StripeCircuitBreaker;
+import com.tollbooth.stripe.StripeClientOptions;
+import com.tollbooth.stripe.StripeHttpClient;
+import java.time.Duration;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
@@ -14,12 +19,101 @@ public class StripeConfig {
   @Value("${stripe.webhook-secret}")
   private String webhookSecret;
 
-  @PostConstruct
-  public void init() {
-    Stripe.apiKey = apiKey;
+  @Value("${stripe.customer-cache-size:100000}")
+  private long customerCacheSize;
+
+  @Value("${stripe.customer-backfill-enabled:true}")
+  private boolean customerBackfillEnabled;
+
+  @Value("${stripe.max-network-retries:3}")
+  private int maxNetworkRetries;
+
+  @Value("${stripe.connect-timeout-ms:5000}")
+  private int connectTimeoutMs;
+
+  @Value("${stripe.read-timeout-ms:20000}")
+  private int readTimeoutMs;
+
+  @Value("${stripe.max-concurrent-requests:20}")
+  private int maxConcurrentRequests;
+
+  @Value("${stripe.circuit-breaker-failure-threshold:5}")
+  private int circuitBreakerFailureThreshold;
+
+  @Value("${stripe.circuit-breaker-open-ms:30000}")
+  private long circuitBreakerOpenMs;
+
+  @Value("${stripe.event-workers:4}")
+  private int eventWorkers;
+
+  @Value("${stripe.event-max-attempts:10}")
+  private int eventMaxAttempts;
+
+  @Value("${stripe.event-lease-ms:300000}")
+  private long eventLeaseMs;
+
+  @Value("${stripe.event-sync-lookback-hours:24}")
+  private long eventSyncLookbackHours;
+
+  @Value("${stripe.event-sync-requests-per-second:20}")
+  private double eventSyncRequestsPerSecond;
+
+  /**
+   * Stripe client shared by all services. Requests go through a pooled transport that caps
+   * concurrency and is guarded by the circuit breaker. Failed requests are retried with exponential
+   * backoff and jitter; mutations carry deterministic idempotency keys so retries cannot apply
+   * twice.
+   */
+  @Bean
+  StripeClient stripeClient(StripeCircuitBreaker stripeCircuitBreaker) {
+    StripeHttpClient httpClient =
+        new StripeHttpClient(
+            stripeCircuitBreaker,
+            maxConcurrentRequests,
+            Duration.ofMillis(connectTimeoutMs),
+            Duration.ofMillis(readTimeoutMs));
+    StripeClientOptions options =
+        new StripeClientOptions(apiKey, connectTimeoutMs, readTimeoutMs, maxNetworkRetries);
+    return new StripeClient(new LiveStripeResponseGetter(options, httpClient));
   }
 
   public String getWebhookSecret() {
     return webhookSecret;
   }
+
+  public long getCustomerCacheSize() {
+    return customerCacheSize;
+  }
+
+  public boolean isCustomerBackfillEnabled() {
+    return customerBackfillEnabled;
+  }
+
+  public int getCircuitBreakerFailureThreshold() {
+    return circuitBreakerFailureThreshold;
+  }
+
+  public long getCircuitBreakerOpenMs() {
+    return circuitBreakerOpenMs;
+  }
+
+  public int getEventWorkers() {
+    return eventWorkers;
+  }
+
+  public int getEventMaxAttempts() {
+    return eventMaxAttempts;
+  }
+
+  public long getEventLeaseMs() {
+    return eventLeaseMs;
+  }
+
+  public long getEventSyncLookbackHours() {
+    return eventSyncLookbackHours;
+  }
+
+  public double getEventSyncRequestsPerSecond() {
+    return eventSyncRequestsPerSecond;
+  }
 }
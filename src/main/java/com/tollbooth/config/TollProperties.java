@@ -1,5 +1,7 @@
 package com.tollbooth.config;
 
+import com.tollbooth.ledger.SettlementMode;
+import com.tollbooth.toll.SenderLockMode;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -27,6 +29,38 @@ public class TollProperties {
   private String emailBody;
   private String emailFromName;
   private boolean dryRun = true;
+  private boolean stripPlusAddressing = true;
+
+  @Setter(lombok.AccessLevel.NONE)
+  private List<String> plusAddressingDomains =
+      List.of(
+          "gmail.com",
+          "googlemail.com",
+          "outlook.com",
+          "hotmail.com",
+          "live.com",
+          "icloud.com",
+          "me.com",
+          "fastmail.com",
+          "proton.me",
+          "protonmail.com");
+
+  private boolean normalizeGmailDots = true;
+  private String knownContactsPath = "data/known-contacts.idx";
+  private int knownContactsInitialSize = 10_000;
+  private SettlementMode settlementMode = SettlementMode.IMMEDIATE;
+  private int noticeWindowSeconds = 300;
+  private int noticeMinIntervalSeconds = 3600;
+  private int retryBatchSize = 100;
+  private int retryMaxAttempts = 10;
+  private int retryLeaseSeconds = 300;
+  private SenderLockMode senderLockMode = SenderLockMode.LOCAL;
+  private int senderLockStripes = 1024;
+  private int processedBatchSize = 500;
+  private int processedFlushMs = 200;
+  private int emailMetaPartitionsAhead = 3;
+  private int emailMetaRetentionMonths = 0;
+  private String emailMetaArchiveDir;
 
   public void setTrustedDomains(List<String> trustedDomains) {
     this.trustedDomains = trustedDomains != null ? trustedDomains : new ArrayList<>();
@@ -41,4 +75,18 @@ public class TollProperties {
               .toList();
     }
   }
+
+  public void setPlusAddressingDomains(List<String> plusAddressingDomains) {
+    this.plusAddressingDomains = plusAddressingDomains != null ? plusAddressingDomains : List.of();
+  }
+
+  public void setPlusAddressingDomains(String plusAddressingDomains) {
+    if (plusAddressingDomains != null && !plusAddressingDomains.trim().isEmpty()) {
+      this.plusAddressingDomains =
+          Arrays.stream(plusAddressingDomains.split(","))
+              .map(String::trim)
+              .filter(s -> !s.isEmpty())
+              .toList();
+    }
+  }
 }
@@ -0,0 +1,103 @@
+package com.tollbooth.gmail;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.tollbooth.config.TollProperties;
+import java.net.IDN;
+import java.util.Set;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reduces email addresses to a canonical form so that variants of the same mailbox are treated as
+ * one sender by the whitelist, Stripe and the toll_email_meta table. Canonicalization lower-cases
+ * the address, converts internationalized domains to punycode and, when enabled, drops Gmail's
+ * insignificant dots and the plus-address tags of providers known to deliver them to the same
+ * mailbox. Elsewhere {@code alice+tag} may be a different mailbox altogether.
+ *
+ * <p>The canonical form is an identity key only. Mail is sent to, and searched for under, the
+ * address as the sender wrote it.
+ *
+ * <p>Results are cached and interned, so repeat senders resolve to the same String instance.
+ */
+@Component
+public class EmailAddressCanonicalizer {
+
+  private static final String GMAIL_DOMAIN = "gmail.com";
+  private static final Set<String> GMAIL_DOMAINS = Set.of(GMAIL_DOMAIN, "googlemail.com");
+
+  private final Cache<String, String> cache = CacheBuilder.newBuilder().maximumSize(10_000).build();
+  private final Interner<String> interner = Interners.newWeakInterner();
+
+  @Autowired private TollProperties tollProperties;
+
+  /**
+   * Returns the canonical form of an email address.
+   *
+   * @param email The email address as parsed from a header
+   * @return The canonical address, or null if the input is blank
+   */
+  public String canonicalize(String email) {
+    if (StringUtils.isBlank(email)) {
+      return null;
+    }
+    String cached = cache.getIfPresent(email);
+    if (cached != null) {
+      return cached;
+    }
+    String canonical = interner.intern(compute(email));
+    cache.put(email, canonical);
+    return canonical;
+  }
+
+  private String compute(String email) {
+    String trimmed = email.trim();
+    int atIndex = trimmed.lastIndexOf('@');
+    if (atIndex <= 0 || atIndex == trimmed.length() - 1) {
+      return trimmed.toLowerCase();
+    }
+
+    String localPart = trimmed.substring(0, atIndex).toLowerCase();
+    String domain = canonicalizeDomain(trimmed.substring(atIndex + 1));
+
+    if (tollProperties.isStripPlusAddressing() && isPlusAddressingDomain(domain)) {
+      int plusIndex = localPart.indexOf('+');
+      if (plusIndex > 0) {
+        localPart = localPart.substring(0, plusIndex);
+      }
+    }
+
+    if (GMAIL_DOMAINS.contains(domain)) {
+      domain = GMAIL_DOMAIN;
+      if (tollProperties.isNormalizeGmailDots()) {
+        localPart = localPart.replace(".", "");
+      }
+    }
+
+    return localPart + "@" + domain;
+  }
+
+  private boolean isPlusAddressingDomain(String domain) {
+    return tollProperties.getPlusAddressingDomains().stream()
+        .anyMatch(plusDomain -> plusDomain.equalsIgnoreCase(domain));
+  }
+
+  /**
+   * Returns the canonical form of a domain: lower-cased ASCII (punycode) without a trailing dot.
+   *
+   * @param domain The domain
+   * @return The canonical domain
+   */
+  public String canonicalizeDomain(String domain) {
+    String trimmed = StringUtils.removeEnd(domain.trim(), ".");
+    try {
+      return IDN.toASCII(trimmed, IDN.ALLOW_UNASSIGNED).toLowerCase();
+    } catch (IllegalArgumentException e) {
+      // Not a valid IDN; fall back to plain case folding
+      return trimmed.toLowerCase();
+    }
+  }
+}
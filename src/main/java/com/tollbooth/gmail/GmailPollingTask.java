@@ -4,7 +4,10 @@ import com.google.api.services.gmail.Gmail;
 import com.google.api.services.gmail.model.ListMessagesResponse;
 import com.google.api.services.gmail.model.Message;
 import com.tollbooth.config.GmailConfig;
+import com.tollbooth.toll.ProcessedEmailBuffer;
+import com.tollbooth.toll.TollRetryQueue;
 import com.tollbooth.toll.TollService;
+import com.tollbooth.toll.TollStage;
 import java.io.IOException;
 import java.time.Instant;
 import java.util.List;
@@ -31,6 +34,10 @@ public class GmailPollingTask {
 
   @Autowired private TollService tollService;
 
+  @Autowired private TollRetryQueue tollRetryQueue;
+
+  @Autowired private ProcessedEmailBuffer processedEmailBuffer;
+
   /**
    * Scheduled task that runs every minute to poll Gmail for new emails and process them for toll
    * payment. Uses a flag to prevent concurrent executions.
@@ -81,19 +88,28 @@ public class GmailPollingTask {
 
       logger.info("Found {} new messages to process", messages.size());
 
-      // Process each message
+      // Process each message; failures are parked in the retry queue by TollService
       for (Message messageSummary : messages) {
+        String messageId = messageSummary.getId();
         try {
-          String messageId = messageSummary.getId();
-          Message fullMessage = gmailService.getMessage(gmailClient, messageId);
+          Message fullMessage;
+          try {
+            fullMessage = gmailService.getMessage(gmailClient, messageId);
+          } catch (IOException e) {
+            logger.error("Error fetching message {}: {}", messageId, e.getMessage(), e);
+            tollRetryQueue.park(messageId, TollStage.FETCH, e.getMessage());
+            continue;
+          }
           tollService.processEmail(gmailClient, messageId, fullMessage);
         } catch (Exception e) {
-          logger.error(
-              "Error processing message {}: {}", messageSummary.getId(), e.getMessage(), e);
+          logger.error("Error processing message {}: {}", messageId, e.getMessage(), e);
           // Continue processing other messages even if one fails
         }
       }
 
+      // The next poll only looks back a few minutes, so the messages of this one must be
+      // recorded before it moves on; if that fails they are polled again
+      processedEmailBuffer.flush();
       lastRunAt = Instant.now();
       logger.info("Completed Gmail polling task, processed {} messages", messages.size());
 
@@ -1,14 +1,17 @@
 package com.tollbooth.gmail;
 
 import com.google.api.services.gmail.Gmail;
+import com.google.api.services.gmail.model.BatchModifyMessagesRequest;
 import com.google.api.services.gmail.model.Label;
 import com.google.api.services.gmail.model.Message;
 import com.google.api.services.gmail.model.MessagePartHeader;
 import com.google.api.services.gmail.model.ModifyMessageRequest;
+import com.google.common.collect.Lists;
 import com.tollbooth.config.GmailConfig;
 import java.io.IOException;
 import java.util.Base64;
 import java.util.List;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -19,8 +22,13 @@ public class GmailService {
 
   private static final Logger logger = LogManager.getLogger(GmailService.class);
 
+  /** The maximum number of messages Gmail accepts in one batchModify call. */
+  private static final int BATCH_MODIFY_LIMIT = 1000;
+
   @Autowired private GmailConfig gmailConfig;
 
+  @Autowired private EmailAddressCanonicalizer emailAddressCanonicalizer;
+
   /**
    * Gets an authenticated Gmail client.
    *
@@ -183,12 +191,60 @@ public class GmailService {
   }
 
   /**
-   * Extracts the sender email address from a Gmail message.
+   * Moves emails to the inbox, removes the awaiting toll label, and adds the toll paid label, using
+   * one batchModify call per {@value #BATCH_MODIFY_LIMIT} messages.
+   *
+   * @param gmailClient The Gmail client instance
+   * @param messageIds The IDs of the messages
+   * @param awaitingPaymentLabelId The ID of the "Awaiting Toll" label
+   * @return True if every message was moved, false otherwise
+   */
+  public boolean moveAndUnlabelMessages(
+      Gmail gmailClient, List<String> messageIds, String awaitingPaymentLabelId) {
+    if (messageIds.isEmpty()) {
+      return true;
+    }
+    try {
+      String userEmail = gmailConfig.getGmailEmail();
+      String tollPaidLabelId = ensureLabelExists(gmailClient, "Toll Paid");
+      List<String> addLabelIds =
+          tollPaidLabelId != null ? List.of("INBOX", tollPaidLabelId) : List.of("INBOX");
+
+      for (List<String> batch : Lists.partition(messageIds, BATCH_MODIFY_LIMIT)) {
+        BatchModifyMessagesRequest batchRequest =
+            new BatchModifyMessagesRequest()
+                .setIds(batch)
+                .setAddLabelIds(addLabelIds)
+                .setRemoveLabelIds(List.of(awaitingPaymentLabelId));
+        gmailClient.users().messages().batchModify(userEmail, batchRequest).execute();
+      }
+      return true;
+    } catch (IOException e) {
+      logger.error(
+          "Error moving and unlabeling {} messages: {}", messageIds.size(), e.getMessage(), e);
+      return false;
+    }
+  }
+
+  /**
+   * Extracts the sender email address from a Gmail message, in the canonical form produced by
+   * {@link EmailAddressCanonicalizer}. This identifies the sender; mail to them goes to {@link
+   * #extractSenderAddress(Message)}.
    *
    * @param message The Gmail message
-   * @return The sender email address, or null if not found
+   * @return The canonical sender email address, or null if not found
    */
   public String extractSenderEmail(Message message) {
+    return emailAddressCanonicalizer.canonicalize(extractSenderAddress(message));
+  }
+
+  /**
+   * Extracts the sender email address from a Gmail message as the sender wrote it.
+   *
+   * @param message The Gmail message
+   * @return The sender email address, or null if not found
+   */
+  public String extractSenderAddress(Message message) {
     if (message.getPayload() == null || message.getPayload().getHeaders() == null) {
       return null;
     }
@@ -202,11 +258,11 @@ public class GmailService {
             int startIndex = fromValue.indexOf('<') + 1;
             int endIndex = fromValue.indexOf('>');
             if (startIndex > 0 && endIndex > startIndex) {
-              return fromValue.substring(startIndex, endIndex).trim();
+              return StringUtils.trimToNull(fromValue.substring(startIndex, endIndex));
             }
           } else {
             // Handle case where it's just the email address
-            return fromValue.trim();
+            return StringUtils.trimToNull(fromValue);
           }
         }
       }
@@ -214,6 +270,25 @@ public class GmailService {
     return null;
   }
 
+  /**
+   * Extracts the subject from a Gmail message.
+   *
+   * @param message The Gmail message
+   * @return The subject, or null if the message has none
+   */
+  public String extractSubject(Message message) {
+    if (message.getPayload() == null || message.getPayload().getHeaders() == null) {
+      return null;
+    }
+
+    for (MessagePartHeader header : message.getPayload().getHeaders()) {
+      if ("Subject".equalsIgnoreCase(header.getName())) {
+        return header.getValue();
+      }
+    }
+    return null;
+  }
+
   /**
    * Sends an email via Gmail API.
    *
@@ -0,0 +1,44 @@
+package com.tollbooth.ledger;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.tollbooth.dto.Copyable;
+import com.tollbooth.dto.Identifiable;
+import java.time.Instant;
+import java.util.UUID;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+/**
+ * An append-only entry in the sender balance ledger. The reference is unique, so replaying the same
+ * debit, credit or webhook never records it twice.
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode(exclude = {"createdAt"})
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties({"createdAt"})
+public class LedgerEntry implements Identifiable<UUID>, Copyable<LedgerEntry> {
+
+  private UUID id;
+  private String stripeCustomerId;
+  private LedgerEntryType entryType;
+  private long amountCents;
+  private String reference;
+  private String stripeTransactionId;
+
+  /** The settlement that posts this debit to Stripe, in batched settlement mode. */
+  private String settlementId;
+
+  private Instant createdAt;
+
+  @Override
+  public LedgerEntry deepCopy() {
+    return this.toBuilder().build();
+  }
+}
@@ -0,0 +1,217 @@
+package com.tollbooth.ledger;
+
+import com.tollbooth.persistence.AbstractCrudDao;
+import com.tollbooth.query.Dao;
+import com.tollbooth.query.Parameters;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.stereotype.Component;
+
+@Component
+@Dao
+public class LedgerEntryDao extends AbstractCrudDao<LedgerEntry, UUID> {
+
+  private static final String UNSETTLED_DEBIT =
+      "entry_type = 'DEBIT' AND stripe_transaction_id IS NULL";
+
+  private static final String CLAIM_UNSETTLED_DEBITS =
+      "UPDATE sender_balance_ledger SET settlement_id = :settlementId\n"
+          + "WHERE id IN (\n"
+          + "  SELECT id FROM sender_balance_ledger\n"
+          + "  WHERE stripe_customer_id = :stripeCustomerId AND "
+          + UNSETTLED_DEBIT
+          + " AND settlement_id IS NULL\n"
+          + "  ORDER BY created_at\n"
+          + "  LIMIT :limit)";
+
+  @Override
+  protected String tableName() {
+    return "sender_balance_ledger";
+  }
+
+  @Override
+  protected String tableAlias() {
+    return null;
+  }
+
+  @Override
+  protected String selectColumns() {
+    return "id, stripe_customer_id, entry_type, amount_cents, reference, stripe_transaction_id,"
+        + " settlement_id, created_at";
+  }
+
+  @Override
+  protected List<Pair<String, String>> updateCols() {
+    return List.of(
+        Pair.of("stripe_customer_id", ":stripeCustomerId"),
+        Pair.of("entry_type", ":entryType"),
+        Pair.of("amount_cents", ":amountCents"),
+        Pair.of("reference", ":reference"),
+        Pair.of("stripe_transaction_id", ":stripeTransactionId"),
+        Pair.of("settlement_id", ":settlementId"),
+        Pair.of("created_at", ":createdAt"));
+  }
+
+  @Override
+  protected List<Pair<String, String>> insertCols() {
+    return List.of(
+        Pair.of("id", ":id"),
+        Pair.of("stripe_customer_id", ":stripeCustomerId"),
+        Pair.of("entry_type", ":entryType"),
+        Pair.of("amount_cents", ":amountCents"),
+        Pair.of("reference", ":reference"),
+        Pair.of("stripe_transaction_id", ":stripeTransactionId"),
+        Pair.of("settlement_id", ":settlementId"),
+        Pair.of("created_at", ":createdAt"));
+  }
+
+  /**
+   * Finds a ledger entry by its unique reference.
+   *
+   * @param reference The reference, e.g. "debit:{emailMetaId}"
+   * @return Optional of LedgerEntry if found
+   */
+  public Optional<LedgerEntry> findByReference(String reference) {
+    return select(selectColumns())
+        .from(tableName())
+        .where("reference = :reference")
+        .parameters("reference", reference)
+        .queryForSingle(rowMapper());
+  }
+
+  /**
+   * Returns which of the given references are already recorded.
+   *
+   * @param references The references to look up
+   * @return The subset of references that exist
+   */
+  public Set<String> findExistingReferences(Collection<String> references) {
+    if (references.isEmpty()) {
+      return Set.of();
+    }
+    return new HashSet<>(
+        select("reference")
+            .from(tableName())
+            .where("reference = ANY(:references)")
+            .parameters("references", Parameters.array("text", references))
+            .queryForList((rs, rowNum) -> rs.getString("reference")));
+  }
+
+  /**
+   * Finds the customers with debits that have not been posted to Stripe yet.
+   *
+   * @return The Stripe customer IDs
+   */
+  public List<String> findCustomersWithUnsettledDebits() {
+    return select("DISTINCT stripe_customer_id")
+        .from(tableName())
+        .where(UNSETTLED_DEBIT)
+        .queryForList((rs, rowNum) -> rs.getString("stripe_customer_id"));
+  }
+
+  /**
+   * Sums each customer's debits that have not been posted to Stripe yet. The local balance runs
+   * ahead of Stripe's by this amount.
+   *
+   * @param stripeCustomerIds The Stripe customer IDs
+   * @return The unsettled amount (in cents) by Stripe customer ID, for customers with any
+   */
+  public Map<String, Long> sumUnsettledDebitsByCustomer(Collection<String> stripeCustomerIds) {
+    if (stripeCustomerIds.isEmpty()) {
+      return Map.of();
+    }
+    return select("stripe_customer_id, SUM(amount_cents) AS unsettled_cents")
+        .from(tableName())
+        .where("stripe_customer_id = ANY(:stripeCustomerIds) AND " + UNSETTLED_DEBIT)
+        .groupBy("stripe_customer_id")
+        .parameters("stripeCustomerIds", Parameters.array("text", stripeCustomerIds))
+        .queryForList(
+            (rs, rowNum) ->
+                Pair.of(rs.getString("stripe_customer_id"), rs.getLong("unsettled_cents")))
+        .stream()
+        .collect(Collectors.toMap(Pair::getKey, Pair::getValue));
+  }
+
+  /**
+   * Sums the customer's debits that have not been posted to Stripe yet.
+   *
+   * @param stripeCustomerId The Stripe customer ID
+   * @return The unsettled amount (in cents)
+   */
+  public long sumUnsettledDebits(String stripeCustomerId) {
+    return select("COALESCE(SUM(amount_cents), 0) AS unsettled_cents")
+        .from(tableName())
+        .where("stripe_customer_id = :stripeCustomerId AND " + UNSETTLED_DEBIT)
+        .parameters("stripeCustomerId", stripeCustomerId)
+        .queryForSingle((rs, rowNum) -> rs.getLong("unsettled_cents"))
+        .orElse(0L);
+  }
+
+  /**
+   * Finds a settlement that claimed some of the customer's debits but was never completed.
+   *
+   * @param stripeCustomerId The Stripe customer ID
+   * @return Optional of the settlement ID
+   */
+  public Optional<String> findOpenSettlementId(String stripeCustomerId) {
+    return select("settlement_id")
+        .from(tableName())
+        .where("stripe_customer_id = :stripeCustomerId AND " + UNSETTLED_DEBIT)
+        .and("settlement_id IS NOT NULL")
+        .limit(1)
+        .parameters("stripeCustomerId", stripeCustomerId)
+        .queryForSingle((rs, rowNum) -> rs.getString("settlement_id"));
+  }
+
+  /**
+   * Assigns up to {@code limit} of the customer's oldest unclaimed, unsettled debits to a
+   * settlement.
+   *
+   * @param stripeCustomerId The Stripe customer ID
+   * @param settlementId The settlement ID
+   * @param limit The maximum number of debits to claim
+   * @return The number of debits claimed
+   */
+  public int claimUnsettledDebits(String stripeCustomerId, String settlementId, int limit) {
+    return jdbcTemplate.update(
+        CLAIM_UNSETTLED_DEBITS,
+        new Parameters(
+            "stripeCustomerId", stripeCustomerId, "settlementId", settlementId, "limit", limit));
+  }
+
+  /**
+   * Finds the debits claimed by a settlement.
+   *
+   * @param settlementId The settlement ID
+   * @return The debits, oldest first
+   */
+  public List<LedgerEntry> findBySettlementId(String settlementId) {
+    return select(selectColumns())
+        .from(tableName())
+        .where("settlement_id = :settlementId")
+        .orderBy("created_at")
+        .parameters("settlementId", settlementId)
+        .queryForList(rowMapper());
+  }
+
+  /**
+   * Records the Stripe balance transaction that settled a settlement's debits.
+   *
+   * @param settlementId The settlement ID
+   * @param stripeTransactionId The Stripe balance transaction ID
+   */
+  public void markSettled(String settlementId, String stripeTransactionId) {
+    update(tableName())
+        .set("stripe_transaction_id = :stripeTransactionId")
+        .where("settlement_id = :settlementId")
+        .parameters("settlementId", settlementId, "stripeTransactionId", stripeTransactionId)
+        .run();
+  }
+}
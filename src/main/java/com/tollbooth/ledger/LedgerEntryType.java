@@ -0,0 +1,12 @@
+package com.tollbooth.ledger;
+
+public enum LedgerEntryType {
+  /** The balance read from Stripe when a customer is first seen. */
+  OPENING,
+  /** A toll debited from the sender. */
+  DEBIT,
+  /** A top-up credited to the sender. */
+  CREDIT,
+  /** A change made outside Inbox Toll, learned from Stripe. */
+  ADJUSTMENT
+}
@@ -0,0 +1,79 @@
+package com.tollbooth.ledger;
+
+import com.tollbooth.stripe.StripeCircuitBreaker;
+import java.util.List;
+import java.util.Optional;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+public class LedgerSettlementTask {
+
+  private static final Logger logger = LogManager.getLogger(LedgerSettlementTask.class);
+
+  @Autowired private LedgerEntryDao ledgerEntryDao;
+
+  @Autowired private SenderBalanceLedger senderBalanceLedger;
+
+  @Autowired private StripeCircuitBreaker stripeCircuitBreaker;
+
+  /**
+   * Posts the tolls debited locally to Stripe, one balance transaction per customer (more only for
+   * customers with more debits than one settlement can list). Runs in either mode, so debits left
+   * over from batched mode, or from a batch release whose settlement failed in immediate mode, are
+   * still settled. A customer whose settlement fails is retried on the next run.
+   */
+  @Scheduled(
+      initialDelayString = "${toll.settlement-interval-ms:900000}",
+      fixedDelayString = "${toll.settlement-interval-ms:900000}")
+  public void settle() {
+    List<String> customerIds = ledgerEntryDao.findCustomersWithUnsettledDebits();
+    if (customerIds.isEmpty()) {
+      return;
+    }
+
+    long start = System.currentTimeMillis();
+    int settledCustomers = 0;
+    int settledDebits = 0;
+    for (String customerId : customerIds) {
+      if (stripeCircuitBreaker.isOpen()) {
+        logger.warn("Stripe is unavailable, deferring settlement of remaining customers");
+        break;
+      }
+      try {
+        settledDebits += settle(customerId);
+        settledCustomers++;
+      } catch (Exception e) {
+        logger.error("Failed to settle debits for customer {}: {}", customerId, e.getMessage(), e);
+      }
+    }
+
+    logger.info(
+        "Settled {} debits for {} of {} customers in {} ms",
+        settledDebits,
+        settledCustomers,
+        customerIds.size(),
+        System.currentTimeMillis() - start);
+  }
+
+  /**
+   * Posts the customer's locally debited tolls to Stripe, retrying any settlement left unfinished
+   * first.
+   *
+   * @param customerId The sender's Stripe customer ID
+   * @return The number of debits settled
+   * @throws com.tollbooth.validation.ServiceException if Stripe rejects a settlement
+   */
+  public int settle(String customerId) {
+    int settled = 0;
+    Optional<String> settlementId = senderBalanceLedger.claimSettlement(customerId);
+    while (settlementId.isPresent()) {
+      settled += senderBalanceLedger.settle(customerId, settlementId.get());
+      settlementId = senderBalanceLedger.claimSettlement(customerId);
+    }
+    return settled;
+  }
+}
@@ -0,0 +1,42 @@
+package com.tollbooth.ledger;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.tollbooth.dto.Copyable;
+import com.tollbooth.dto.Identifiable;
+import java.time.Instant;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+/**
+ * The materialized balance of a sender's Stripe customer. Amounts use Stripe's sign convention:
+ * positive is owed by the sender, negative is prepaid credit.
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode(exclude = {"updatedAt"})
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties({"updatedAt"})
+public class SenderBalance implements Identifiable<String>, Copyable<SenderBalance> {
+
+  private String stripeCustomerId;
+  private long balanceCents;
+  private Long stripeBalanceCents;
+  private Instant reconciledAt;
+  private Instant updatedAt;
+
+  @Override
+  public String getId() {
+    return stripeCustomerId;
+  }
+
+  @Override
+  public SenderBalance deepCopy() {
+    return this.toBuilder().build();
+  }
+}
@@ -0,0 +1,102 @@
+package com.tollbooth.ledger;
+
+import com.tollbooth.persistence.AbstractCrudDao;
+import com.tollbooth.query.CompiledStatement;
+import com.tollbooth.query.Dao;
+import com.tollbooth.query.Parameters;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.stereotype.Component;
+
+@Component
+@Dao
+public class SenderBalanceDao extends AbstractCrudDao<SenderBalance, String> {
+
+  private final Supplier<CompiledStatement> recordStripeBalance =
+      compiled(
+          () ->
+              update(tableName())
+                  .set("stripe_balance_cents = :stripeBalanceCents, reconciled_at = :reconciledAt")
+                  .where("stripe_customer_id = :stripeCustomerId"));
+
+  @Override
+  protected String tableName() {
+    return "sender_balance";
+  }
+
+  @Override
+  protected String tableAlias() {
+    return null;
+  }
+
+  @Override
+  protected String selectColumns() {
+    return "stripe_customer_id, balance_cents, stripe_balance_cents, reconciled_at, updated_at";
+  }
+
+  @Override
+  protected List<Pair<String, String>> updateCols() {
+    return List.of(
+        Pair.of("balance_cents", ":balanceCents"),
+        Pair.of("stripe_balance_cents", ":stripeBalanceCents"),
+        Pair.of("reconciled_at", ":reconciledAt"),
+        Pair.of("updated_at", ":updatedAt"));
+  }
+
+  @Override
+  protected List<Pair<String, String>> insertCols() {
+    return List.of(
+        Pair.of("stripe_customer_id", ":stripeCustomerId"),
+        Pair.of("balance_cents", ":balanceCents"),
+        Pair.of("stripe_balance_cents", ":stripeBalanceCents"),
+        Pair.of("reconciled_at", ":reconciledAt"),
+        Pair.of("updated_at", ":updatedAt"));
+  }
+
+  @Override
+  protected Pair<String, Map<String, Object>> keyCondition(String key) {
+    return Pair.of("stripe_customer_id = :stripeCustomerId", Map.of("stripeCustomerId", key));
+  }
+
+  @Override
+  protected Pair<String, Map<String, Object>> keysCondition(Collection<String> keys) {
+    return Pair.of(
+        "stripe_customer_id = ANY(:stripeCustomerIds)",
+        Map.of("stripeCustomerIds", Parameters.array("text", keys)));
+  }
+
+  /**
+   * Finds a balance and locks its row until the surrounding transaction ends.
+   *
+   * @param stripeCustomerId The Stripe customer ID
+   * @return Optional of SenderBalance if found
+   */
+  public Optional<SenderBalance> findForUpdate(String stripeCustomerId) {
+    var keyCondition = keyCondition(stripeCustomerId);
+    return select(selectColumns())
+        .from(tableName())
+        .where(keyCondition.getLeft())
+        .parameters(keyCondition.getRight())
+        .forUpdate()
+        .queryForSingle(rowMapper());
+  }
+
+  /**
+   * Records the Stripe-side balances found by reconciliation. Only the Stripe balance and
+   * reconciliation time are written, so debits and credits made since the balances were read are
+   * kept.
+   *
+   * @param balances The balances, with the Stripe-side balance and reconciliation time set
+   */
+  public void recordStripeBalances(Collection<SenderBalance> balances) {
+    if (balances.isEmpty()) {
+      return;
+    }
+    batchUpdate(recordStripeBalance.get(), balances.stream().map(Parameters::new).toList());
+    invalidate(balances.stream().map(SenderBalance::getStripeCustomerId).toList());
+  }
+}
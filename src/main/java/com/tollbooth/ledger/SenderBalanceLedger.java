@@ -0,0 +1,409 @@
+package com.tollbooth.ledger;
+
+import com.stripe.exception.StripeException;
+import com.stripe.model.CustomerBalanceTransaction;
+import com.tollbooth.config.TollProperties;
+import com.tollbooth.stripe.StripeService;
+import com.tollbooth.validation.ErrorCode;
+import com.tollbooth.validation.Validation;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Keeps a local, append-only ledger of every sender balance change alongside a materialized balance
+ * per customer, so balance checks are a local read under a row lock instead of a Stripe round trip.
+ * Stripe remains the system of record for money movement: credits are posted to Stripe and only
+ * recorded locally once Stripe has accepted them. Single debits are too in {@link
+ * SettlementMode#IMMEDIATE} mode; in {@link SettlementMode#BATCHED} mode they are recorded locally
+ * and posted to Stripe later by {@link LedgerSettlementTask}, one balance transaction per customer.
+ * Batches of debits are always recorded locally first and posted as a settlement, whose set of
+ * debits is fixed before Stripe is called.
+ */
+@Service
+public class SenderBalanceLedger {
+
+  private static final Logger logger = LogManager.getLogger(SenderBalanceLedger.class);
+
+  @Autowired private SenderBalanceDao senderBalanceDao;
+
+  @Autowired private LedgerEntryDao ledgerEntryDao;
+
+  @Autowired private StripeService stripeService;
+
+  @Autowired private TollProperties tollProperties;
+
+  /**
+   * Debits the toll from the sender if their local balance covers it. The balance row stays locked
+   * while the debit is posted to Stripe, so concurrent debits for the same sender are serialized.
+   * In batched settlement mode the debit is only recorded locally. Debits are keyed by {@code
+   * emailMetaId}, so retrying a toll that was already debited is a no-op.
+   *
+   * @param stripeCustomerId The sender's Stripe customer ID
+   * @param tollAmount The toll amount (in dollars)
+   * @param emailMetaId The ID of the email meta record the toll is for
+   * @return True if the toll was debited, false if the balance is insufficient
+   * @throws com.tollbooth.validation.ServiceException if Stripe rejects the debit
+   */
+  @Transactional
+  public boolean debitIfSufficient(String stripeCustomerId, double tollAmount, UUID emailMetaId) {
+    long tollAmountCents = Math.round(tollAmount * 100);
+    SenderBalance balance = lockBalance(stripeCustomerId);
+    if (ledgerEntryDao.findByReference("debit:" + emailMetaId).isPresent()) {
+      logger.info("Toll for email meta {} already debited", emailMetaId);
+      return true;
+    }
+
+    boolean sufficient = balance.getBalanceCents() <= -tollAmountCents;
+    logger.debug(
+        "Sender {} balance: {} cents, toll: {} cents, sufficient: {}",
+        stripeCustomerId,
+        balance.getBalanceCents(),
+        tollAmountCents,
+        sufficient);
+    if (!sufficient) {
+      return false;
+    }
+
+    if (isBatched()) {
+      append(
+          balance,
+          LedgerEntryType.DEBIT,
+          tollAmountCents,
+          "debit:" + emailMetaId,
+          null,
+          balance.getStripeBalanceCents());
+      return true;
+    }
+
+    CustomerBalanceTransaction transaction =
+        stripeService.debitSenderBalance(stripeCustomerId, tollAmount, emailMetaId);
+    Validation.check(
+        transaction != null,
+        ErrorCode.INTERNAL_SERVER_ERROR,
+        "Failed to debit balance for customer %s",
+        stripeCustomerId);
+
+    append(
+        balance,
+        LedgerEntryType.DEBIT,
+        tollAmountCents,
+        "debit:" + emailMetaId,
+        transaction.getId(),
+        transaction.getEndingBalance());
+    return true;
+  }
+
+  /**
+   * Debits the toll for as many of the given emails as the sender's balance covers, oldest first.
+   * The debits are only recorded locally, as in batched settlement mode, and are posted to Stripe
+   * by settling them with {@link #claimSettlement} and {@link #settle}; in immediate mode the
+   * caller does so right away. Emails that were already debited count as paid without being charged
+   * again.
+   *
+   * @param stripeCustomerId The sender's Stripe customer ID
+   * @param tollAmount The toll amount per email (in dollars)
+   * @param emailMetaIds The IDs of the email meta records to pay for, oldest first
+   * @return The IDs of the emails that are now paid for, in the given order
+   */
+  @Transactional
+  public List<UUID> debitAllIfSufficient(
+      String stripeCustomerId, double tollAmount, List<UUID> emailMetaIds) {
+    long tollAmountCents = Math.round(tollAmount * 100);
+    SenderBalance balance = lockBalance(stripeCustomerId);
+
+    Set<String> alreadyDebited =
+        ledgerEntryDao.findExistingReferences(
+            emailMetaIds.stream().map(id -> "debit:" + id).toList());
+    List<UUID> paid = new ArrayList<>();
+    List<UUID> toDebit = new ArrayList<>();
+    long available = -balance.getBalanceCents();
+    for (UUID emailMetaId : emailMetaIds) {
+      if (alreadyDebited.contains("debit:" + emailMetaId)) {
+        paid.add(emailMetaId);
+      } else if (available >= tollAmountCents) {
+        available -= tollAmountCents;
+        toDebit.add(emailMetaId);
+      }
+    }
+    logger.debug(
+        "Sender {} balance: {} cents, debiting {} of {} held emails at {} cents",
+        stripeCustomerId,
+        balance.getBalanceCents(),
+        toDebit.size(),
+        emailMetaIds.size(),
+        tollAmountCents);
+    if (toDebit.isEmpty()) {
+      return paid;
+    }
+
+    // One entry per email keeps per-email references unique, so a single-email retry is a no-op
+    Instant now = Instant.now();
+    ledgerEntryDao.createAllIfAbsent(
+        toDebit.stream()
+            .map(
+                emailMetaId ->
+                    LedgerEntry.builder()
+                        .id(UUID.randomUUID())
+                        .stripeCustomerId(stripeCustomerId)
+                        .entryType(LedgerEntryType.DEBIT)
+                        .amountCents(tollAmountCents)
+                        .reference("debit:" + emailMetaId)
+                        .createdAt(now)
+                        .build())
+            .toList());
+    balance.setBalanceCents(balance.getBalanceCents() + tollAmountCents * toDebit.size());
+    balance.setUpdatedAt(now);
+    senderBalanceDao.update(balance);
+
+    paid.addAll(toDebit);
+    return emailMetaIds.stream().filter(paid::contains).toList();
+  }
+
+  /**
+   * Credits a top-up to the sender. Credits are keyed by {@code reference}, so a replayed webhook
+   * does not credit the sender twice.
+   *
+   * @param stripeCustomerId The sender's Stripe customer ID
+   * @param creditAmountCents The amount to credit (in cents)
+   * @param reference A unique reference for the credit, e.g. "topup:{sessionId}"
+   * @param description The Stripe balance transaction description
+   * @return True if the credit is recorded, false if Stripe rejected it
+   */
+  @Transactional
+  public boolean credit(
+      String stripeCustomerId, long creditAmountCents, String reference, String description) {
+    SenderBalance balance = lockBalance(stripeCustomerId);
+    if (ledgerEntryDao.findByReference(reference).isPresent()) {
+      logger.info("Credit {} already recorded for customer {}", reference, stripeCustomerId);
+      return true;
+    }
+
+    CustomerBalanceTransaction transaction =
+        stripeService.creditSenderBalance(
+            stripeCustomerId, creditAmountCents, description, reference);
+    if (transaction == null) {
+      return false;
+    }
+
+    append(
+        balance,
+        LedgerEntryType.CREDIT,
+        -creditAmountCents,
+        reference,
+        transaction.getId(),
+        transaction.getEndingBalance());
+    return true;
+  }
+
+  /**
+   * Applies a balance reported by Stripe, e.g. from a {@code customer.updated} webhook. If it
+   * differs from the local balance, less any debits not yet settled to Stripe, and is newer than
+   * the last local change, the difference is recorded as an adjustment.
+   *
+   * @param stripeCustomerId The sender's Stripe customer ID
+   * @param stripeBalanceCents The balance reported by Stripe (in cents)
+   * @param asOf When Stripe reported the balance
+   * @param reference A unique reference for the report, e.g. the webhook event ID
+   */
+  @Transactional
+  public void applyStripeBalance(
+      String stripeCustomerId, long stripeBalanceCents, Instant asOf, String reference) {
+    var existing = senderBalanceDao.findForUpdate(stripeCustomerId);
+    if (existing.isEmpty()) {
+      open(stripeCustomerId, stripeBalanceCents);
+      return;
+    }
+
+    SenderBalance balance = existing.get();
+    if (balance.getUpdatedAt() != null && !asOf.isAfter(balance.getUpdatedAt())) {
+      return;
+    }
+    // Whether a settlement that never completed reached Stripe is unknown until it is retried
+    if (ledgerEntryDao.findOpenSettlementId(stripeCustomerId).isPresent()) {
+      logger.info(
+          "Settlement in progress for customer {}, not applying Stripe balance {} cents",
+          stripeCustomerId,
+          stripeBalanceCents);
+      return;
+    }
+    long expectedStripeBalanceCents =
+        balance.getBalanceCents() - ledgerEntryDao.sumUnsettledDebits(stripeCustomerId);
+    if (expectedStripeBalanceCents == stripeBalanceCents) {
+      return;
+    }
+
+    logger.info(
+        "Stripe reported balance {} cents for customer {} (expected {} cents), recording"
+            + " adjustment",
+        stripeBalanceCents,
+        stripeCustomerId,
+        expectedStripeBalanceCents);
+    append(
+        balance,
+        LedgerEntryType.ADJUSTMENT,
+        stripeBalanceCents - expectedStripeBalanceCents,
+        "adjustment:" + reference,
+        null,
+        stripeBalanceCents);
+  }
+
+  /**
+   * Claims the customer's unsettled debits for a settlement, oldest first and at most {@link
+   * StripeService#MAX_SETTLEMENT_EMAILS}. A settlement that was claimed but never completed is
+   * returned again instead, so it is retried with the same idempotency key. Claims are committed
+   * before Stripe is called, which keeps the set of debits in a settlement fixed across retries.
+   *
+   * @param stripeCustomerId The sender's Stripe customer ID
+   * @return The settlement ID, or empty if there is nothing to settle
+   */
+  @Transactional
+  public Optional<String> claimSettlement(String stripeCustomerId) {
+    senderBalanceDao.findForUpdate(stripeCustomerId);
+    Optional<String> open = ledgerEntryDao.findOpenSettlementId(stripeCustomerId);
+    if (open.isPresent()) {
+      return open;
+    }
+
+    String settlementId = UUID.randomUUID().toString();
+    int claimed =
+        ledgerEntryDao.claimUnsettledDebits(
+            stripeCustomerId, settlementId, StripeService.MAX_SETTLEMENT_EMAILS);
+    return claimed > 0 ? Optional.of(settlementId) : Optional.empty();
+  }
+
+  /**
+   * Posts a claimed settlement to Stripe as one balance transaction and marks its debits settled.
+   * The balance row stays locked while Stripe is called, so a {@code customer.updated} webhook for
+   * the settlement is applied only after the debits are marked settled.
+   *
+   * @param stripeCustomerId The sender's Stripe customer ID
+   * @param settlementId The settlement ID from {@link #claimSettlement}
+   * @return The number of debits settled
+   * @throws com.tollbooth.validation.ServiceException if Stripe rejects the settlement
+   */
+  @Transactional
+  public int settle(String stripeCustomerId, String settlementId) {
+    SenderBalance balance = lockBalance(stripeCustomerId);
+    List<LedgerEntry> debits =
+        ledgerEntryDao.findBySettlementId(settlementId).stream()
+            .filter(entry -> entry.getStripeTransactionId() == null)
+            .toList();
+    if (debits.isEmpty()) {
+      return 0;
+    }
+
+    long amountCents = debits.stream().mapToLong(LedgerEntry::getAmountCents).sum();
+    List<UUID> emailMetaIds =
+        debits.stream()
+            .map(entry -> UUID.fromString(entry.getReference().substring("debit:".length())))
+            .toList();
+    CustomerBalanceTransaction transaction =
+        stripeService.settleSenderBalance(
+            stripeCustomerId, settlementId, amountCents, emailMetaIds);
+    Validation.check(
+        transaction != null,
+        ErrorCode.INTERNAL_SERVER_ERROR,
+        "Failed to settle balance for customer %s",
+        stripeCustomerId);
+
+    ledgerEntryDao.markSettled(settlementId, transaction.getId());
+    balance.setStripeBalanceCents(transaction.getEndingBalance());
+    balance.setUpdatedAt(Instant.now());
+    senderBalanceDao.update(balance);
+    return debits.size();
+  }
+
+  private boolean isBatched() {
+    return tollProperties.getSettlementMode() == SettlementMode.BATCHED;
+  }
+
+  /**
+   * Locks the sender's balance row, seeding it from Stripe the first time the customer is seen.
+   *
+   * @param stripeCustomerId The sender's Stripe customer ID
+   * @return The locked balance
+   */
+  private SenderBalance lockBalance(String stripeCustomerId) {
+    var existing = senderBalanceDao.findForUpdate(stripeCustomerId);
+    if (existing.isPresent()) {
+      return existing.get();
+    }
+
+    try {
+      open(stripeCustomerId, stripeService.retrieveSenderBalance(stripeCustomerId));
+    } catch (StripeException e) {
+      throw Validation.unexpectedException(
+          e, "Failed to retrieve opening balance for customer %s", stripeCustomerId);
+    }
+    return senderBalanceDao
+        .findForUpdate(stripeCustomerId)
+        .orElseThrow(
+            Validation.serviceExceptionSupplier(
+                ErrorCode.INTERNAL_SERVER_ERROR,
+                "Balance for customer %s disappeared",
+                stripeCustomerId));
+  }
+
+  private void open(String stripeCustomerId, long stripeBalanceCents) {
+    Instant now = Instant.now();
+    boolean created =
+        senderBalanceDao.createIfAbsent(
+            SenderBalance.builder()
+                .stripeCustomerId(stripeCustomerId)
+                .balanceCents(stripeBalanceCents)
+                .stripeBalanceCents(stripeBalanceCents)
+                .reconciledAt(now)
+                .updatedAt(now)
+                .build());
+    if (created) {
+      ledgerEntryDao.create(
+          LedgerEntry.builder()
+              .id(UUID.randomUUID())
+              .stripeCustomerId(stripeCustomerId)
+              .entryType(LedgerEntryType.OPENING)
+              .amountCents(stripeBalanceCents)
+              .reference("opening:" + stripeCustomerId)
+              .createdAt(now)
+              .build());
+    }
+  }
+
+  private void append(
+      SenderBalance balance,
+      LedgerEntryType entryType,
+      long amountCents,
+      String reference,
+      String stripeTransactionId,
+      Long stripeBalanceCents) {
+    Instant now = Instant.now();
+    boolean appended =
+        ledgerEntryDao.createIfAbsent(
+            LedgerEntry.builder()
+                .id(UUID.randomUUID())
+                .stripeCustomerId(balance.getStripeCustomerId())
+                .entryType(entryType)
+                .amountCents(amountCents)
+                .reference(reference)
+                .stripeTransactionId(stripeTransactionId)
+                .createdAt(now)
+                .build());
+    if (!appended) {
+      logger.warn("Ledger entry {} already recorded, not applying it again", reference);
+      return;
+    }
+
+    balance.setBalanceCents(balance.getBalanceCents() + amountCents);
+    balance.setStripeBalanceCents(stripeBalanceCents);
+    balance.setUpdatedAt(now);
+    senderBalanceDao.update(balance);
+  }
+}
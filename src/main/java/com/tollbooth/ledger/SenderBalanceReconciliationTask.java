@@ -0,0 +1,108 @@
+package com.tollbooth.ledger;
+
+import com.stripe.StripeClient;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Customer;
+import com.stripe.model.StripeSearchResult;
+import com.stripe.param.CustomerSearchParams;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+public class SenderBalanceReconciliationTask {
+
+  private static final Logger logger = LogManager.getLogger(SenderBalanceReconciliationTask.class);
+  private static final String INBOX_TOLL_CUSTOMER_QUERY = "metadata['inbox_toll_customer']:'true'";
+  private static final long PAGE_SIZE = 100L;
+
+  @Autowired private SenderBalanceDao senderBalanceDao;
+
+  @Autowired private LedgerEntryDao ledgerEntryDao;
+
+  @Autowired private StripeClient stripeClient;
+
+  /**
+   * Compares every local balance against Stripe in bulk, paging through Inbox Toll customers rather
+   * than retrieving them one at a time. Debits not yet settled to Stripe are expected to be missing
+   * from the Stripe-side balance and do not count as drift. Drift is logged for investigation
+   * rather than corrected, since it usually means a balance was changed outside of Inbox Toll; the
+   * Stripe-side balance and reconciliation time are recorded either way. Local balances and
+   * unsettled debits are read as each page arrives, so balances changed or debits settled earlier
+   * in a long sweep are compared as they now stand.
+   */
+  @Scheduled(
+      initialDelayString = "${stripe.balance-reconciliation-interval-ms:3600000}",
+      fixedDelayString = "${stripe.balance-reconciliation-interval-ms:3600000}")
+  public void reconcile() {
+    long start = System.currentTimeMillis();
+    int checked = 0;
+    int drifted = 0;
+    try {
+      String page = null;
+      do {
+        CustomerSearchParams.Builder params =
+            CustomerSearchParams.builder().setQuery(INBOX_TOLL_CUSTOMER_QUERY).setLimit(PAGE_SIZE);
+        if (page != null) {
+          params.setPage(page);
+        }
+        StripeSearchResult<Customer> result = stripeClient.customers().search(params.build());
+
+        List<String> customerIds = result.getData().stream().map(Customer::getId).toList();
+        Map<String, SenderBalance> balances =
+            senderBalanceDao.findAll(customerIds).stream()
+                .collect(Collectors.toMap(SenderBalance::getStripeCustomerId, Function.identity()));
+        Map<String, Long> unsettled = ledgerEntryDao.sumUnsettledDebitsByCustomer(customerIds);
+        Instant now = Instant.now();
+        List<SenderBalance> reconciled = new ArrayList<>();
+        for (Customer customer : result.getData()) {
+          SenderBalance balance = balances.get(customer.getId());
+          if (balance == null) {
+            continue;
+          }
+          checked++;
+          long stripeBalanceCents = customer.getBalance() != null ? customer.getBalance() : 0L;
+          long unsettledCents = unsettled.getOrDefault(customer.getId(), 0L);
+          if (stripeBalanceCents != balance.getBalanceCents() - unsettledCents) {
+            drifted++;
+            logger.warn(
+                "Balance drift for customer {}: local {} cents ({} unsettled), Stripe {} cents",
+                customer.getId(),
+                balance.getBalanceCents(),
+                unsettledCents,
+                stripeBalanceCents);
+          }
+          reconciled.add(
+              SenderBalance.builder()
+                  .stripeCustomerId(customer.getId())
+                  .stripeBalanceCents(stripeBalanceCents)
+                  .reconciledAt(now)
+                  .build());
+        }
+        senderBalanceDao.recordStripeBalances(reconciled);
+
+        page = Boolean.TRUE.equals(result.getHasMore()) ? result.getNextPage() : null;
+      } while (page != null);
+
+      logger.info(
+          "Reconciled {} sender balances ({} drifted) in {} ms",
+          checked,
+          drifted,
+          System.currentTimeMillis() - start);
+    } catch (StripeException e) {
+      logger.error(
+          "Sender balance reconciliation stopped after {} balances: {}",
+          checked,
+          e.getMessage(),
+          e);
+    }
+  }
+}
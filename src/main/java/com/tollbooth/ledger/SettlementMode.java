@@ -0,0 +1,11 @@
+package com.tollbooth.ledger;
+
+public enum SettlementMode {
+  /** Each toll is posted to Stripe as its own balance transaction when it is charged. */
+  IMMEDIATE,
+  /**
+   * Tolls are charged against the local ledger only, and {@link LedgerSettlementTask} posts them to
+   * Stripe as one balance transaction per customer per interval.
+   */
+  BATCHED
+}
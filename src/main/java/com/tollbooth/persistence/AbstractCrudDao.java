@@ -3,20 +3,32 @@ package com.tollbooth.persistence;
 import static java.util.stream.Collectors.joining;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Suppliers;
+import com.tollbooth.dto.Copyable;
 import com.tollbooth.dto.Identifiable;
+import com.tollbooth.query.CompiledStatement;
 import com.tollbooth.query.CrudDao;
 import com.tollbooth.query.Insert;
 import com.tollbooth.query.Parameters;
+import com.tollbooth.query.PropertyAccessors;
+import com.tollbooth.query.RowMapperTemplate;
 import com.tollbooth.query.Select;
 import com.tollbooth.query.Update;
+import jakarta.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.GenericTypeResolver;
 import org.springframework.jdbc.core.RowMapper;
-import org.springframework.jdbc.core.namedparam.BeanPropertySqlParameterSource;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.jdbc.support.rowset.SqlRowSetMetaData;
 
@@ -56,11 +68,15 @@ public abstract class AbstractCrudDao<T extends Identifiable<K>, K> extends Abst
   protected abstract String selectColumns();
 
   /**
-   * Return a {@link RowMapper} to map records.
+   * Return a {@link RowMapper} to map records. By default each of the {@link #selectColumns()} is
+   * mapped onto the property of the same name, see {@link RowMapperTemplate}. Override for records
+   * that need custom mapping.
    *
-   * @return the row mapper
+   * @return the row mapper, for a single query
    */
-  protected abstract RowMapper<T> rowMapper();
+  protected RowMapper<T> rowMapper() {
+    return rowMapperTemplate.get().newRowMapper();
+  }
 
   /**
    * Return a list of pairs used to set the columns and their values during {@link Update}. E.g.
@@ -80,92 +96,306 @@ public abstract class AbstractCrudDao<T extends Identifiable<K>, K> extends Abst
    */
   protected abstract List<Pair<String, String>> insertCols();
 
+  // Compiled statements, built on first use. Statements keyed by condition are cached per key
+  // condition and the bitmask of non-null update columns, as both are constant for a given DAO and
+  // set of non-null columns
+
+  private final Supplier<RowMapperTemplate<T>> rowMapperTemplate =
+      Suppliers.memoize(() -> RowMapperTemplate.of(entityType(), selectColumns()));
+
+  private final Supplier<CompiledStatement> insertStatement = compiled(this::insert);
+
+  private final Supplier<CompiledStatement> insertIfAbsentStatement =
+      compiled(() -> insert().onConflict().doNothing());
+
+  private final Map<String, CompiledStatement> findStatements = new ConcurrentHashMap<>();
+
+  private final Map<String, CompiledStatement> deleteStatements = new ConcurrentHashMap<>();
+
+  private final Map<Pair<Long, String>, CompiledStatement> updateStatements =
+      new ConcurrentHashMap<>();
+
+  private final Supplier<UpdateColumns> updateColumns = Suppliers.memoize(UpdateColumns::new);
+
+  // Absent from contexts without caching, e.g. DAO tests
+  @Autowired(required = false)
+  private EntityCaches entityCaches;
+
+  // Null unless enabled for the table by persistence.cache.<table>.enabled
+  private EntityCache<T, K> cache;
+
+  /**
+   * Build the row mapper and resolve the update columns on startup, so a column without a matching
+   * property fails fast and the first query pays no reflection. Also create the entity cache, if
+   * enabled.
+   */
+  @PostConstruct
+  public void init() {
+    rowMapperTemplate.get();
+    updateColumns.get();
+    if (entityCaches != null) {
+      cache = entityCaches.<T, K>create(tableName(), this::copy).orElse(null);
+      if (cache != null) {
+        Preconditions.checkState(
+            Copyable.class.isAssignableFrom(entityType()), "Cached entities must be Copyable.");
+        cacheIndexes().forEach(cache::index);
+      }
+    }
+  }
+
   // CrudDao impl
 
   @Override
   public Optional<T> find(K key) {
-    var keyCondition = keyCondition(key);
-    return select(selectColumns())
-        .from(tableAs())
-        .where(keyCondition.getLeft())
-        .parameters(keyCondition.getRight())
-        .queryForSingle(rowMapper());
+    return cache == null ? load(key) : cache.get(key, () -> load(key));
+  }
+
+  @Override
+  public List<T> findAll(Collection<K> keys) {
+    if (keys.isEmpty()) {
+      return List.of();
+    }
+    return cache == null ? loadAll(keys) : cache.getAll(keys, this::loadAll);
   }
 
   @Override
   public void create(T entity) {
-    var insertCols = insertCols();
-    var columns = insertCols.stream().map(Pair::getLeft).collect(joining(","));
-    var values = insertCols.stream().map(Pair::getRight).collect(joining(","));
-    insertInto(tableAs())
-        .columns(columns)
-        .values(values)
-        .parameters(createAndUpdateParameters(entity))
-        .run();
+    insertStatement.get().update(createAndUpdateParameters(entity));
+    if (cache != null) {
+      cache.put(entity);
+    }
+  }
+
+  @Override
+  public boolean createIfAbsent(T entity) {
+    boolean created = insertIfAbsentStatement.get().update(createAndUpdateParameters(entity)) > 0;
+    if (created && cache != null) {
+      cache.put(entity);
+    }
+    return created;
   }
 
   @Override
   public void update(T entity) {
     var keyCondition = keyCondition(entity.getId());
 
-    var updateColumns = getNonNullUpdateCols(entity);
+    long nonNullColumns = updateColumns.get().nonNull(entity);
 
-    if (updateColumns.isEmpty()) {
+    if (nonNullColumns == 0) {
       return;
     }
 
-    var setClause =
-        updateColumns.stream()
-            .map(colPair -> String.format("%s = %s", colPair.getLeft(), colPair.getRight()))
-            .collect(joining(","));
-    update(tableAs())
-        .set(setClause)
-        .where(keyCondition.getLeft())
-        .parameters(createAndUpdateParameters(entity))
-        .parameters(keyCondition.getRight())
-        .run();
+    var parameters = createAndUpdateParameters(entity);
+    keyCondition.getRight().forEach(parameters::add);
+    updateStatement(nonNullColumns, keyCondition.getLeft()).update(parameters);
+    // Only the non-null properties were written, so the entity may not be the whole record
+    invalidate(List.of(entity.getId()));
   }
 
   @Override
   public void delete(K key) {
     var keyCondition = keyCondition(key);
-    deleteFrom(tableAs()).where(keyCondition.getLeft()).parameters(keyCondition.getRight()).run();
+    deleteStatement(keyCondition.getLeft()).update(new Parameters(keyCondition.getRight()));
+    invalidate(List.of(key));
+  }
+
+  @Override
+  public void createAll(Collection<T> entities) {
+    if (entities.isEmpty()) {
+      return;
+    }
+    batchUpdate(
+        insertStatement.get(), entities.stream().map(this::createAndUpdateParameters).toList());
+    if (cache != null) {
+      entities.forEach(cache::put);
+    }
+  }
+
+  @Override
+  public void createAllIfAbsent(Collection<T> entities) {
+    if (entities.isEmpty()) {
+      return;
+    }
+    batchUpdate(
+        insertIfAbsentStatement.get(),
+        entities.stream().map(this::createAndUpdateParameters).toList());
+  }
+
+  /**
+   * Update the records for the given entities in batches. As with {@link #update(Identifiable)},
+   * only non-null properties are written, so entities are batched by which properties are set.
+   *
+   * @param entities the entities
+   */
+  @Override
+  public void updateAll(Collection<T> entities) {
+    Map<Long, List<Parameters>> batches = new LinkedHashMap<>();
+    String condition = null;
+    for (T entity : entities) {
+      long nonNullColumns = updateColumns.get().nonNull(entity);
+      if (nonNullColumns == 0) {
+        continue;
+      }
+      var keyCondition = keyCondition(entity.getId());
+      condition = keyCondition.getLeft();
+      var parameters = createAndUpdateParameters(entity);
+      keyCondition.getRight().forEach(parameters::add);
+      batches.computeIfAbsent(nonNullColumns, columns -> new ArrayList<>()).add(parameters);
+    }
+    for (var batch : batches.entrySet()) {
+      batchUpdate(updateStatement(batch.getKey(), condition), batch.getValue());
+    }
+    invalidate(entities.stream().map(Identifiable::getId).toList());
+  }
+
+  @Override
+  public void deleteAll(Collection<K> keys) {
+    if (keys.isEmpty()) {
+      return;
+    }
+    List<Parameters> batch = new ArrayList<>();
+    String condition = null;
+    for (K key : keys) {
+      var keyCondition = keyCondition(key);
+      condition = keyCondition.getLeft();
+      batch.add(new Parameters(keyCondition.getRight()));
+    }
+    batchUpdate(deleteStatement(condition), batch);
+    invalidate(keys);
   }
 
   // Helper methods
 
   /**
-   * Filter update columns to only include non-null properties. Replaces leading colon or trailing
-   * colons when checking parameter names.
+   * Return the secondary keys by which the entity cache, if enabled, can look up and invalidate
+   * entities, see {@link #findCached} and {@link #invalidateBy}. E.g. Map.of("code", Foo::getCode).
+   *
+   * @return the secondary keys by name
+   */
+  protected Map<String, Function<T, ?>> cacheIndexes() {
+    return Map.of();
+  }
+
+  /**
+   * Return the entity with the given secondary key from the entity cache, if enabled, loading it on
+   * a miss.
+   *
+   * @param index the name of the secondary key, see {@link #cacheIndexes()}
+   * @param value the secondary key
+   * @param loader loads the entity
+   * @return the entity
+   */
+  protected Optional<T> findCached(String index, Object value, Supplier<Optional<T>> loader) {
+    return cache == null ? loader.get() : cache.getBy(index, value, loader);
+  }
+
+  /**
+   * Drop the entities with the given keys from the entity cache, if enabled, on every instance.
+   * Must follow any write that bypasses the CrudDao methods.
+   *
+   * @param keys the keys
+   */
+  protected void invalidate(Collection<K> keys) {
+    if (cache != null) {
+      cache.invalidate(keys);
+    }
+  }
+
+  /**
+   * Drop the entities with the given secondary keys from the entity cache, if enabled, on every
+   * instance. Must follow any write that bypasses the CrudDao methods.
+   *
+   * @param index the name of the secondary key, see {@link #cacheIndexes()}
+   * @param values the secondary keys
+   */
+  protected void invalidateBy(String index, Collection<?> values) {
+    if (cache != null) {
+      cache.invalidateBy(index, values);
+    }
+  }
+
+  private Optional<T> load(K key) {
+    var keyCondition = keyCondition(key);
+    return findStatement(keyCondition.getLeft())
+        .queryForSingle(new Parameters(keyCondition.getRight()), rowMapper());
+  }
+
+  private List<T> loadAll(Collection<K> keys) {
+    var keysCondition = keysCondition(keys);
+    return findStatement(keysCondition.getLeft())
+        .queryForList(new Parameters(keysCondition.getRight()), rowMapper());
+  }
+
+  @SuppressWarnings("unchecked")
+  private T copy(T entity) {
+    return ((Copyable<T>) entity).deepCopy();
+  }
+
+  /**
+   * Return an {@link Insert} of all {@link #insertCols()}, to be extended with e.g. an ON CONFLICT
+   * clause.
+   *
+   * @return the insert, without parameters
+   */
+  protected Insert insert() {
+    var insertCols = insertCols();
+    var columns = insertCols.stream().map(Pair::getLeft).collect(joining(","));
+    var values = insertCols.stream().map(Pair::getRight).collect(joining(","));
+    return insertInto(tableAs()).columns(columns).values(values);
+  }
+
+  /**
+   * Return the compiled SELECT of the record matching the key condition.
+   *
+   * @param keyCondition the condition matching the record
+   * @return the statement
+   */
+  private CompiledStatement findStatement(String keyCondition) {
+    return findStatements.computeIfAbsent(
+        keyCondition,
+        condition -> select(selectColumns()).from(tableAs()).where(condition).compile());
+  }
+
+  /**
+   * Return the compiled DELETE of the record matching the key condition.
+   *
+   * @param keyCondition the condition matching the record
+   * @return the statement
+   */
+  private CompiledStatement deleteStatement(String keyCondition) {
+    return deleteStatements.computeIfAbsent(
+        keyCondition, condition -> deleteFrom(tableAs()).where(condition).compile());
+  }
+
+  /**
+   * Return the compiled {@link Update} setting the given columns of the record matching the key
+   * condition.
+   *
+   * @param nonNullColumns the bitmask of the update columns to set, see {@link UpdateColumns}
+   * @param keyCondition the condition matching the record
+   * @return the statement
+   */
+  private CompiledStatement updateStatement(long nonNullColumns, String keyCondition) {
+    return updateStatements.computeIfAbsent(
+        Pair.of(nonNullColumns, keyCondition),
+        key -> {
+          var setClause =
+              updateColumns.get().select(nonNullColumns).stream()
+                  .map(colPair -> String.format("%s = %s", colPair.getLeft(), colPair.getRight()))
+                  .collect(joining(","));
+          return update(tableAs()).set(setClause).where(keyCondition).compile();
+        });
+  }
+
+  /**
+   * Filter update columns to only include non-null properties.
    *
    * @param entity the entity with properties to update
    * @return a list of update columns and values for non-null properties
    */
   protected List<Pair<String, String>> getNonNullUpdateCols(T entity) {
-    // Get all potential update columns
-    List<Pair<String, String>> allCols = updateCols();
-
-    // Create a Parameters object from the entity to check for property values
-    BeanPropertySqlParameterSource beanParams = new BeanPropertySqlParameterSource(entity);
-
-    return allCols.stream()
-        .filter(
-            colPair -> {
-              String paramValue = colPair.getRight();
-              // Explicitly check for now() function
-              if (paramValue.equals("now()")) {
-                return true;
-              }
-              String paramName = colPair.getRight().replaceAll("^:", "").replaceAll("::.*$", "");
-              try {
-                // Check if the property exists and is not null
-                return beanParams.hasValue(paramName) && beanParams.getValue(paramName) != null;
-              } catch (IllegalArgumentException e) {
-                // Parameter doesn't exist in bean, skip it
-                return false;
-              }
-            })
-        .collect(Collectors.toList());
+    var columns = updateColumns.get();
+    return columns.select(columns.nonNull(entity));
   }
 
   /**
@@ -196,6 +426,36 @@ public abstract class AbstractCrudDao<T extends Identifiable<K>, K> extends Abst
     return Pair.of(condition, Map.of("id", key));
   }
 
+  /**
+   * Given the {@code keys}, return a pair of a condition and a parameter map corresponding to their
+   * records. The keys should be bound as a single array, see {@link Parameters#array}, so the
+   * condition is the same for any number of keys. This default implementation assumes UUID keys and
+   * must be overridden for other key types.
+   *
+   * @param keys the keys
+   * @return a pair of the condition and parameters
+   */
+  protected Pair<String, Map<String, Object>> keysCondition(Collection<K> keys) {
+    Preconditions.checkState(
+        keys.stream().allMatch(UUID.class::isInstance),
+        "keysCondition() must be overridden for non-UUID keys.");
+    var alias = tableAlias();
+    var columnName = alias == null ? "id" : alias + ".id";
+    var condition = String.format("%s = ANY(%s)", columnName, ":ids");
+    return Pair.of(condition, Map.of("ids", Parameters.array("uuid", keys)));
+  }
+
+  /**
+   * Return the entity type, as given by the subclass' type arguments.
+   *
+   * @return the entity type
+   */
+  @SuppressWarnings("unchecked")
+  protected Class<T> entityType() {
+    return (Class<T>)
+        GenericTypeResolver.resolveTypeArguments(getClass(), AbstractCrudDao.class)[0];
+  }
+
   /**
    * Return the table and alias SQL clause given {@link #tableName()} and {@link #tableAlias()}.
    * E.g. "foos AS foo".
@@ -235,4 +495,60 @@ public abstract class AbstractCrudDao<T extends Identifiable<K>, K> extends Abst
     }
     return false;
   }
+
+  /**
+   * The {@link #updateCols()}, each with the index of the entity property its value binds. Resolved
+   * once, so the non-null columns of an entity are a bitmask read through its {@link
+   * PropertyAccessors}, without reflection or parsing parameter names.
+   */
+  private final class UpdateColumns {
+
+    // Column values that do not bind a property, e.g. "now()", are always set
+    private static final int ALWAYS = -2;
+
+    private final List<Pair<String, String>> columns = updateCols();
+    private final PropertyAccessors<T> accessors = PropertyAccessors.of(entityType());
+    private final int[] propertyIndices = new int[columns.size()];
+    private final Map<Long, List<Pair<String, String>>> selections = new ConcurrentHashMap<>();
+
+    UpdateColumns() {
+      Preconditions.checkState(
+          columns.size() <= Long.SIZE, "At most %s update columns are supported.", Long.SIZE);
+      for (int i = 0; i < columns.size(); i++) {
+        String value = columns.get(i).getRight();
+        // ":foo" and ":foo::jsonb" bind "foo"; a parameter without a property is never set
+        propertyIndices[i] =
+            value.equals("now()")
+                ? ALWAYS
+                : accessors.indexOf(value.replaceAll("^:", "").replaceAll("::.*$", ""));
+      }
+    }
+
+    /** Return the bitmask of the columns to set for the entity, bit i for column i. */
+    long nonNull(T entity) {
+      long mask = 0;
+      for (int i = 0; i < propertyIndices.length; i++) {
+        int index = propertyIndices[i];
+        if (index == ALWAYS || (index >= 0 && accessors.get(entity, index) != null)) {
+          mask |= 1L << i;
+        }
+      }
+      return mask;
+    }
+
+    /** Return the columns in the bitmask. */
+    List<Pair<String, String>> select(long mask) {
+      return selections.computeIfAbsent(
+          mask,
+          key -> {
+            List<Pair<String, String>> selected = new ArrayList<>();
+            for (int i = 0; i < columns.size(); i++) {
+              if ((mask & (1L << i)) != 0) {
+                selected.add(columns.get(i));
+              }
+            }
+            return List.copyOf(selected);
+          });
+    }
+  }
 }
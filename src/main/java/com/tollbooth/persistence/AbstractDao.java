@@ -1,11 +1,19 @@
 package com.tollbooth.persistence;
 
+import com.google.common.base.Suppliers;
+import com.google.common.collect.Lists;
+import com.tollbooth.query.CompiledStatement;
 import com.tollbooth.query.Delete;
 import com.tollbooth.query.Insert;
+import com.tollbooth.query.Query;
 import com.tollbooth.query.Select;
 import com.tollbooth.query.Update;
+import java.util.List;
+import java.util.function.Supplier;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -13,8 +21,14 @@ public abstract class AbstractDao {
 
   @Autowired protected NamedParameterJdbcTemplate jdbcTemplate;
 
+  @Value("${persistence.batch-size:500}")
+  private int batchSize;
+
+  @Value("${persistence.fetch-size:1000}")
+  private int fetchSize;
+
   protected Select select(String select) {
-    return new Select(jdbcTemplate).select(select);
+    return new Select(jdbcTemplate).select(select).fetchSize(fetchSize);
   }
 
   protected Delete deleteFrom(String tableName) {
@@ -28,4 +42,41 @@ public abstract class AbstractDao {
   protected Update update(String tableName) {
     return new Update(jdbcTemplate).update(tableName);
   }
+
+  /**
+   * Mark a query as static, i.e. one whose SQL does not depend on its arguments, so it is built and
+   * compiled on first use and then reused. Assign the result to a field, e.g. {@code private final
+   * Supplier<CompiledStatement> findByCode = compiled(() -> select(...).from(...).where("code =
+   * :code"));}.
+   *
+   * @param query builds the query, without parameters
+   * @return a supplier of the compiled statement
+   */
+  protected static Supplier<CompiledStatement> compiled(Supplier<? extends Query<?>> query) {
+    return Suppliers.memoize(() -> query.get().compile());
+  }
+
+  /**
+   * Execute the statement once per parameter source as JDBC batches of at most {@link #batchSize()}
+   * statements each.
+   *
+   * @param statement the statement
+   * @param batch the parameters of each execution
+   */
+  protected void batchUpdate(
+      CompiledStatement statement, List<? extends SqlParameterSource> batch) {
+    for (List<? extends SqlParameterSource> chunk : Lists.partition(batch, batchSize())) {
+      statement.batchUpdate(chunk);
+    }
+  }
+
+  /**
+   * The maximum number of statements sent to the database in one JDBC batch. Override for tables
+   * with unusually wide or narrow rows.
+   *
+   * @return the batch size
+   */
+  protected int batchSize() {
+    return batchSize;
+  }
 }
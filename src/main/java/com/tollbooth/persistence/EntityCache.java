@@ -0,0 +1,303 @@
+package com.tollbooth.persistence;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import com.tollbooth.dto.Identifiable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * A read-through cache of the entities of one table, bounded in size and age. Entities are cached
+ * by key and, optionally, by secondary keys such as a Gmail ID; a secondary key lives exactly as
+ * long as the cached entity it points to. Copies go in and out, so callers can't mutate a cached
+ * entity.
+ *
+ * <p>Only the DAO knows which of its writes change an entity, so it must invalidate them; {@link
+ * AbstractCrudDao} does so for its own writes. Within a transaction, writes are applied when it
+ * commits and invalidations once more when it completes, so a rolled back or not yet committed row
+ * is never left cached. A load that overlaps an invalidation is not cached.
+ *
+ * @param <T> the entity type
+ * @param <K> the key type
+ */
+public class EntityCache<T extends Identifiable<K>, K> {
+
+  /** Receives invalidations to pass on to the other instances, see {@link EntityCaches}. */
+  public interface Publisher {
+    void publish(String cache, String index, Collection<String> values);
+  }
+
+  private final String name;
+  private final UnaryOperator<T> copier;
+  private final Publisher publisher;
+  private final Cache<String, T> entities;
+  private final Map<String, Function<T, ?>> indexers = new ConcurrentHashMap<>();
+  private final Map<String, Map<String, String>> indexes = new ConcurrentHashMap<>();
+  // Bumped by every invalidation, so a load can tell whether one overlapped it
+  private final AtomicLong generation = new AtomicLong();
+
+  /**
+   * Create a cache.
+   *
+   * @param name the cache name, unique among caches sharing a publisher
+   * @param maximumSize the maximum number of entities held
+   * @param expireAfterWrite how long an entity is held after it is cached
+   * @param copier copies an entity
+   * @param publisher passes invalidations on to the other instances
+   */
+  public EntityCache(
+      String name,
+      long maximumSize,
+      Duration expireAfterWrite,
+      UnaryOperator<T> copier,
+      Publisher publisher) {
+    this.name = name;
+    this.copier = copier;
+    this.publisher = publisher;
+    this.entities =
+        CacheBuilder.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(expireAfterWrite)
+            .recordStats()
+            .removalListener(this::removeIndexes)
+            .build();
+  }
+
+  /**
+   * Add a secondary key. Must be called before the cache is used.
+   *
+   * @param index the index name, e.g. "gmailId"
+   * @param indexer returns an entity's secondary key
+   * @return this
+   */
+  public EntityCache<T, K> index(String index, Function<T, ?> indexer) {
+    Preconditions.checkState(entities.size() == 0, "Indexes must be added before use.");
+    indexers.put(index, indexer);
+    indexes.put(index, new ConcurrentHashMap<>());
+    return this;
+  }
+
+  /**
+   * Return the cache name.
+   *
+   * @return the name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Return the underlying cache, e.g. to monitor it.
+   *
+   * @return the cache
+   */
+  public Cache<String, T> getEntities() {
+    return entities;
+  }
+
+  /**
+   * Return the entity with the given key, loading and caching it on a miss.
+   *
+   * @param key the key
+   * @param loader loads the entity
+   * @return the entity
+   */
+  public Optional<T> get(K key, Supplier<Optional<T>> loader) {
+    T cached = entities.getIfPresent(key.toString());
+    if (cached != null) {
+      return Optional.of(copier.apply(cached));
+    }
+    return load(loader);
+  }
+
+  /**
+   * Return the entity with the given secondary key, loading and caching it on a miss.
+   *
+   * @param index the index name
+   * @param value the secondary key
+   * @param loader loads the entity
+   * @return the entity
+   */
+  public Optional<T> getBy(String index, Object value, Supplier<Optional<T>> loader) {
+    String key = index(index).get(value.toString());
+    T cached = key == null ? null : entities.getIfPresent(key);
+    // The entity may have been replaced by one with another secondary key since
+    if (cached != null
+        && value.toString().equals(String.valueOf(indexers.get(index).apply(cached)))) {
+      return Optional.of(copier.apply(cached));
+    }
+    return load(loader);
+  }
+
+  /**
+   * Return the entities with the given keys, loading and caching those that miss in one call.
+   *
+   * @param keys the keys
+   * @param loader loads the entities with the given keys
+   * @return the entities found, in no particular order
+   */
+  public List<T> getAll(Collection<K> keys, Function<Collection<K>, List<T>> loader) {
+    List<T> found = new ArrayList<>();
+    List<K> missing = new ArrayList<>();
+    for (K key : keys) {
+      T cached = entities.getIfPresent(key.toString());
+      if (cached != null) {
+        found.add(copier.apply(cached));
+      } else {
+        missing.add(key);
+      }
+    }
+    if (!missing.isEmpty()) {
+      long loadedAt = generation.get();
+      List<T> loaded = loader.apply(missing);
+      loaded.forEach(entity -> putIfCurrent(entity, loadedAt));
+      found.addAll(loaded);
+    }
+    return found;
+  }
+
+  /**
+   * Cache the given entity as just written, once the current transaction, if any, commits.
+   *
+   * @param entity the entity
+   */
+  public void put(T entity) {
+    T copy = copier.apply(entity);
+    afterCommit(() -> putIfCurrent(copy, generation.get()));
+  }
+
+  /**
+   * Drop the entities with the given keys, here and on the other instances.
+   *
+   * @param keys the keys
+   */
+  public void invalidate(Collection<K> keys) {
+    invalidate(null, keys.stream().map(Object::toString).toList());
+  }
+
+  /**
+   * Drop the entities with the given secondary keys, here and on the other instances.
+   *
+   * @param index the index name
+   * @param values the secondary keys
+   */
+  public void invalidateBy(String index, Collection<?> values) {
+    index(index);
+    invalidate(index, values.stream().map(Object::toString).toList());
+  }
+
+  /**
+   * Drop the entities with the given keys or secondary keys here only, as published by another
+   * instance.
+   *
+   * @param index the index name, or null for keys
+   * @param values the keys or secondary keys
+   */
+  public void invalidateLocally(String index, Collection<String> values) {
+    generation.incrementAndGet();
+    for (String value : values) {
+      String key = index == null ? value : index(index).get(value);
+      if (key != null) {
+        entities.invalidate(key);
+      }
+    }
+  }
+
+  /** Drop every entity here only, e.g. after invalidations from other instances were missed. */
+  public void invalidateAllLocally() {
+    generation.incrementAndGet();
+    entities.invalidateAll();
+  }
+
+  private void invalidate(String index, List<String> values) {
+    if (values.isEmpty()) {
+      return;
+    }
+    invalidateLocally(index, values);
+    publisher.publish(name, index, values);
+    afterCompletion(() -> invalidateLocally(index, values));
+  }
+
+  private Optional<T> load(Supplier<Optional<T>> loader) {
+    long loadedAt = generation.get();
+    Optional<T> loaded = loader.get();
+    loaded.ifPresent(entity -> putIfCurrent(copier.apply(entity), loadedAt));
+    return loaded;
+  }
+
+  private void putIfCurrent(T entity, long loadedAt) {
+    if (generation.get() != loadedAt) {
+      return;
+    }
+    String key = entity.getId().toString();
+    entities.put(key, entity);
+    indexers.forEach(
+        (index, indexer) -> {
+          Object value = indexer.apply(entity);
+          if (value != null) {
+            indexes.get(index).put(value.toString(), key);
+          }
+        });
+  }
+
+  private void removeIndexes(RemovalNotification<String, T> removal) {
+    // A replaced entity's secondary keys may be the new entity's too, so they are left to be
+    // checked on lookup rather than raced with the replacement's
+    if (removal.getValue() == null || removal.getCause() == RemovalCause.REPLACED) {
+      return;
+    }
+    indexers.forEach(
+        (index, indexer) -> {
+          Object value = indexer.apply(removal.getValue());
+          if (value != null) {
+            indexes.get(index).remove(value.toString(), removal.getKey());
+          }
+        });
+  }
+
+  private Map<String, String> index(String index) {
+    var values = indexes.get(index);
+    Preconditions.checkArgument(values != null, "Unknown index %s on cache %s.", index, name);
+    return values;
+  }
+
+  private static void afterCommit(Runnable action) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      action.run();
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronization() {
+          @Override
+          public void afterCommit() {
+            action.run();
+          }
+        });
+  }
+
+  private static void afterCompletion(Runnable action) {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+              action.run();
+            }
+          });
+    }
+  }
+}
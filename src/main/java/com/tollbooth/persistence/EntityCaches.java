@@ -0,0 +1,190 @@
+package com.tollbooth.persistence;
+
+import com.tollbooth.config.PersistenceProperties;
+import com.tollbooth.dto.Identifiable;
+import com.tollbooth.query.Parameters;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+import javax.sql.DataSource;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates the {@link EntityCache entity caches} enabled by {@code persistence.cache.<table>} and
+ * keeps them consistent across instances. Invalidations are published with Postgres NOTIFY, in the
+ * writer's transaction so they are only delivered once it commits, and received by a thread that
+ * LISTENs on a connection of its own. Notifications missed while that connection is down are
+ * unknown, so every cache is cleared whenever it (re)connects.
+ */
+@Component
+public class EntityCaches implements EntityCache.Publisher {
+
+  private static final Logger logger = LogManager.getLogger(EntityCaches.class);
+
+  private static final String CHANNEL = "entity_cache";
+
+  private static final String NOTIFY =
+      "SELECT pg_notify(:channel, payload) FROM unnest(:payloads) AS payload";
+
+  private static final long POLL_MILLIS = 10_000;
+  private static final long RECONNECT_MILLIS = 5_000;
+
+  // Tells this instance's own notifications apart from the other instances'
+  private final String instanceId = UUID.randomUUID().toString();
+
+  private final Map<String, EntityCache<?, ?>> caches = new ConcurrentHashMap<>();
+
+  @Autowired private PersistenceProperties persistenceProperties;
+
+  @Autowired private MeterRegistry meterRegistry;
+
+  @Autowired private DataSource dataSource;
+
+  @Autowired private NamedParameterJdbcTemplate jdbcTemplate;
+
+  private Thread listener;
+
+  private volatile boolean running = true;
+
+  /**
+   * Create the cache of the given table, if enabled, with its hit, miss and eviction counts exposed
+   * as the {@code cache.*} metrics tagged {@code cache=<table>}.
+   *
+   * @param table the table name
+   * @param copier copies an entity
+   * @param <T> the entity type
+   * @param <K> the key type
+   * @return the cache, or empty if not enabled
+   */
+  public synchronized <T extends Identifiable<K>, K> Optional<EntityCache<T, K>> create(
+      String table, UnaryOperator<T> copier) {
+    var config = persistenceProperties.getCache().get(table);
+    if (config == null || !config.isEnabled()) {
+      return Optional.empty();
+    }
+    var cache =
+        new EntityCache<>(
+            table,
+            config.getMaximumSize(),
+            Duration.ofSeconds(config.getExpireAfterWriteSeconds()),
+            copier,
+            this);
+    GuavaCacheMetrics.monitor(meterRegistry, cache.getEntities(), table);
+    caches.put(table, cache);
+    if (listener == null) {
+      listener = new Thread(this::listen, "entity-cache-listener");
+      listener.setDaemon(true);
+      listener.start();
+    }
+    logger.info(
+        "Caching {} entities of {} for {} s",
+        config.getMaximumSize(),
+        table,
+        config.getExpireAfterWriteSeconds());
+    return Optional.of(cache);
+  }
+
+  @Override
+  public void publish(String cache, String index, Collection<String> values) {
+    // instanceId, cache and index never contain tabs; a value may, so it goes last
+    List<String> payloads =
+        values.stream()
+            .map(value -> String.join("\t", instanceId, cache, index == null ? "" : index, value))
+            .toList();
+    jdbcTemplate.query(
+        NOTIFY,
+        new Parameters("channel", CHANNEL, "payloads", Parameters.array("text", payloads)),
+        rs -> {});
+  }
+
+  @PreDestroy
+  public void stop() {
+    running = false;
+    if (listener != null) {
+      listener.interrupt();
+    }
+  }
+
+  private void listen() {
+    while (running) {
+      try (Connection connection = dataSource.getConnection()) {
+        execute(connection, "LISTEN " + CHANNEL);
+        try {
+          caches.values().forEach(EntityCache::invalidateAllLocally);
+          PGConnection pgConnection = connection.unwrap(PGConnection.class);
+          while (running) {
+            PGNotification[] notifications = pgConnection.getNotifications((int) POLL_MILLIS);
+            if (notifications != null) {
+              for (PGNotification notification : notifications) {
+                receive(notification.getParameter());
+              }
+            }
+          }
+        } finally {
+          unlisten(connection);
+        }
+      } catch (SQLException | RuntimeException e) {
+        if (!running) {
+          return;
+        }
+        logger.warn("Entity cache invalidations interrupted, reconnecting: {}", e.getMessage());
+        caches.values().forEach(EntityCache::invalidateAllLocally);
+        try {
+          Thread.sleep(RECONNECT_MILLIS);
+        } catch (InterruptedException interrupted) {
+          return;
+        }
+      }
+    }
+  }
+
+  // The connection goes back to the pool, where nothing would read its notifications
+  private static void unlisten(Connection connection) {
+    try {
+      execute(connection, "UNLISTEN " + CHANNEL);
+    } catch (SQLException e) {
+      logger.debug("Failed to UNLISTEN, the connection is likely broken: {}", e.getMessage());
+    }
+  }
+
+  private static void execute(Connection connection, String sql) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.execute(sql);
+    }
+  }
+
+  private void receive(String payload) {
+    String[] fields = payload.split("\t", 4);
+    if (fields.length != 4 || fields[0].equals(instanceId)) {
+      return;
+    }
+    var cache = caches.get(fields[1]);
+    if (cache == null) {
+      return;
+    }
+    try {
+      cache.invalidateLocally(fields[2].isEmpty() ? null : fields[2], List.of(fields[3]));
+    } catch (IllegalArgumentException e) {
+      // E.g. an index only known to a newer instance, mid-deploy
+      logger.warn("Clearing cache {} on an unknown invalidation: {}", fields[1], e.getMessage());
+      cache.invalidateAllLocally();
+    }
+  }
+}
@@ -7,7 +7,6 @@ import java.sql.Timestamp;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
-import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
 import org.apache.commons.lang3.StringUtils;
@@ -27,16 +26,19 @@ public abstract class AbstractRowMapper<T> implements RowMapper<T> {
   // Helpers
 
   protected static UUID getUuid(SqlRowSet rs, String field) {
-    if (StringUtils.isNotBlank(rs.getString(field))) {
-      return UUID.fromString(Objects.requireNonNull(rs.getString(field)));
-    }
-    return null;
+    String value = rs.getString(field);
+    return StringUtils.isNotBlank(value) ? UUID.fromString(value) : null;
   }
 
   protected static Instant getInstant(SqlRowSet rs, String field) {
     return Optional.ofNullable(rs.getTimestamp(field)).map(Timestamp::toInstant).orElse(null);
   }
 
+  protected static Long getLong(SqlRowSet rs, String field) {
+    long value = rs.getLong(field);
+    return rs.wasNull() ? null : value;
+  }
+
   public static LocalDateTime toLocalDateTime(Instant instant) {
     return Optional.ofNullable(instant)
         .map(instant1 -> LocalDateTime.ofInstant(instant, ZoneOffset.UTC))
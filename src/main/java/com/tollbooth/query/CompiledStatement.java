@@ -0,0 +1,154 @@
+package com.tollbooth.query;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementCreatorFactory;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.SqlParameterValue;
+import org.springframework.jdbc.core.namedparam.EmptySqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+import org.springframework.jdbc.core.namedparam.ParsedSql;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+
+/**
+ * An immutable, compiled {@link Query}: its final SQL with the named parameters already parsed out.
+ * Executing it only binds parameters, so queries whose SQL does not depend on their arguments can
+ * be compiled once and reused, see {@code AbstractDao#compiled}. The JDBC SQL is reused verbatim,
+ * which lets the driver reuse a server-side prepared statement for it, unless a parameter is a
+ * collection that still needs expanding into one placeholder per element.
+ */
+public final class CompiledStatement {
+
+  private final NamedParameterJdbcTemplate jdbcTemplate;
+  private final String sql;
+  private final ParsedSql parsedSql;
+  private final String jdbcSql;
+
+  /**
+   * Compile the given SQL.
+   *
+   * @param jdbcTemplate a JdbcTemplate with which to execute the statement
+   * @param sql the SQL, with named parameters
+   */
+  public CompiledStatement(NamedParameterJdbcTemplate jdbcTemplate, String sql) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.sql = sql;
+    this.parsedSql = NamedParameterUtils.parseSqlStatement(sql);
+    this.jdbcSql =
+        NamedParameterUtils.substituteNamedParameters(parsedSql, new EmptySqlParameterSource());
+  }
+
+  /**
+   * Return the SQL this statement was compiled from.
+   *
+   * @return the SQL, with named parameters
+   */
+  public String getSql() {
+    return sql;
+  }
+
+  /**
+   * Execute this statement as an INSERT, UPDATE or DELETE.
+   *
+   * @param parameters the parameters
+   * @return the number of rows affected
+   */
+  public int update(SqlParameterSource parameters) {
+    Object[] values = NamedParameterUtils.buildValueArray(parsedSql, parameters, null);
+    return jdbcTemplate
+        .getJdbcOperations()
+        .update(factory(parameters, values).newPreparedStatementCreator(values));
+  }
+
+  /**
+   * Execute this statement and return an Optional of the first row, mapped with the given
+   * rowMapper.
+   *
+   * @param parameters the parameters
+   * @param rowMapper the row mapper
+   * @param <T> the resulting type
+   * @return the optional result
+   */
+  public <T> Optional<T> queryForSingle(SqlParameterSource parameters, RowMapper<T> rowMapper) {
+    var result = queryForList(parameters, rowMapper);
+    return result.isEmpty() ? Optional.empty() : Optional.of(result.get(0));
+  }
+
+  /**
+   * Execute this statement and return the rows, mapped with the given rowMapper.
+   *
+   * @param parameters the parameters
+   * @param rowMapper the row mapper
+   * @param <T> the resulting type
+   * @return the list of results
+   */
+  public <T> List<T> queryForList(SqlParameterSource parameters, RowMapper<T> rowMapper) {
+    Object[] values = NamedParameterUtils.buildValueArray(parsedSql, parameters, null);
+    return jdbcTemplate
+        .getJdbcOperations()
+        .query(factory(parameters, values).newPreparedStatementCreator(values), rowMapper);
+  }
+
+  /**
+   * Execute this statement once per parameter source as a single JDBC batch. Collection parameters
+   * are expanded for the first source, so they must have the same size throughout the batch.
+   *
+   * @param batch the parameters of each execution
+   * @return the number of rows affected by each execution
+   */
+  public int[] batchUpdate(List<? extends SqlParameterSource> batch) {
+    if (batch.isEmpty()) {
+      return new int[0];
+    }
+    Object[] firstValues = NamedParameterUtils.buildValueArray(parsedSql, batch.get(0), null);
+    PreparedStatementCreatorFactory factory = factory(batch.get(0), firstValues);
+    return jdbcTemplate
+        .getJdbcOperations()
+        .batchUpdate(
+            factory.getSql(),
+            new BatchPreparedStatementSetter() {
+              @Override
+              public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Object[] values =
+                    i == 0
+                        ? firstValues
+                        : NamedParameterUtils.buildValueArray(parsedSql, batch.get(i), null);
+                factory.newPreparedStatementSetter(values).setValues(ps);
+              }
+
+              @Override
+              public int getBatchSize() {
+                return batch.size();
+              }
+            });
+  }
+
+  @Override
+  public String toString() {
+    return sql;
+  }
+
+  private PreparedStatementCreatorFactory factory(SqlParameterSource parameters, Object[] values) {
+    return new PreparedStatementCreatorFactory(
+        expandsCollections(values)
+            ? NamedParameterUtils.substituteNamedParameters(parsedSql, parameters)
+            : jdbcSql,
+        NamedParameterUtils.buildSqlParameterList(parsedSql, parameters));
+  }
+
+  private static boolean expandsCollections(Object[] values) {
+    for (Object value : values) {
+      if (value instanceof SqlParameterValue parameterValue) {
+        value = parameterValue.getValue();
+      }
+      if (value instanceof Iterable<?>) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -1,6 +1,8 @@
 package com.tollbooth.query;
 
 import com.tollbooth.dto.Identifiable;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface CrudDao<T extends Identifiable<K>, K> {
@@ -13,6 +15,15 @@ public interface CrudDao<T extends Identifiable<K>, K> {
    */
   Optional<T> find(K key);
 
+  /**
+   * Return the entities with the given keys, in no particular order, in a single query. Keys
+   * without a record are skipped.
+   *
+   * @param keys the keys
+   * @return the entities
+   */
+  List<T> findAll(Collection<K> keys);
+
   /**
    * Create a record for the given entity.
    *
@@ -20,6 +31,23 @@ public interface CrudDao<T extends Identifiable<K>, K> {
    */
   void create(T entity);
 
+  /**
+   * Create a record for the given entity unless it conflicts with an existing record on its key or
+   * any other unique constraint.
+   *
+   * @param entity the entity
+   * @return true if the record was created, false if it already existed
+   */
+  boolean createIfAbsent(T entity);
+
+  /**
+   * Create records for the given entities in batches, skipping any that conflict with an existing
+   * record as in {@link #createIfAbsent(Identifiable)}.
+   *
+   * @param entities the entities
+   */
+  void createAllIfAbsent(Collection<T> entities);
+
   /**
    * Update the record for the given entity.
    *
@@ -33,4 +61,25 @@ public interface CrudDao<T extends Identifiable<K>, K> {
    * @param key the key
    */
   void delete(K key);
+
+  /**
+   * Create records for the given entities in batches.
+   *
+   * @param entities the entities
+   */
+  void createAll(Collection<T> entities);
+
+  /**
+   * Update the records for the given entities in batches.
+   *
+   * @param entities the entities
+   */
+  void updateAll(Collection<T> entities);
+
+  /**
+   * Delete the entities with the given keys in batches, idempotently.
+   *
+   * @param keys the keys
+   */
+  void deleteAll(Collection<K> keys);
 }
@@ -1,14 +1,25 @@
 package com.tollbooth.query;
 
 import com.google.common.base.Preconditions;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 
-/** A subclass of Query used to build and execute SQL INSERT statements. */
+/**
+ * A subclass of Query used to build and execute SQL INSERT statements, optionally with an ON
+ * CONFLICT clause and a RETURNING clause. A WHERE clause is only allowed on a DO UPDATE, where it
+ * limits which conflicting rows are updated.
+ */
 public class Insert extends Query<Insert> {
 
   private String tableName;
   private String columns;
   private String values;
+  private boolean onConflict;
+  private String conflictTarget;
+  private String conflictAction;
+  private String returning;
 
   /**
    * Create a new Insert.
@@ -52,14 +63,121 @@ public class Insert extends Query<Insert> {
     return self();
   }
 
+  /**
+   * Add an ON CONFLICT clause that applies to a conflict on any unique constraint. Must be followed
+   * by {@link #doNothing()}.
+   *
+   * @return this
+   */
+  public Insert onConflict() {
+    return onConflict(null);
+  }
+
+  /**
+   * Add an ON CONFLICT clause for the given conflict target. Must be followed by {@link
+   * #doNothing()} or {@link #doUpdate(String)}.
+   *
+   * @param conflictTarget the comma-separated unique columns (without the parentheses)
+   * @return this
+   */
+  public Insert onConflict(String conflictTarget) {
+    this.onConflict = true;
+    this.conflictTarget = conflictTarget;
+    return self();
+  }
+
+  /**
+   * Skip rows that conflict.
+   *
+   * @return this
+   */
+  public Insert doNothing() {
+    this.conflictAction = "DO NOTHING";
+    return self();
+  }
+
+  /**
+   * Update the existing row instead of inserting a conflicting one. The proposed row is available
+   * as EXCLUDED, e.g. "code = EXCLUDED.code".
+   *
+   * @param set the SET clause
+   * @return this
+   */
+  public Insert doUpdate(String set) {
+    this.conflictAction = "DO UPDATE SET " + set;
+    return self();
+  }
+
+  /**
+   * Set the RETURNING columns, to be read with {@link #queryForSingle(RowMapper)} or {@link
+   * #queryForList(RowMapper)}. Rows skipped by an ON CONFLICT clause are not returned.
+   *
+   * @param returning the comma-separated columns
+   * @return this
+   */
+  public Insert returning(String returning) {
+    this.returning = returning;
+    return self();
+  }
+
   @Override
   public String toSql() {
     Preconditions.checkState(
         tableName != null && columns != null && values != null,
         "Must call insertInto(), columns(), and values() in an Insert.");
     Preconditions.checkState(
-        toSqlWhereHelper().isEmpty(), "Cannot call where() or and() in an Insert.");
-    return String.format("INSERT INTO %s (%s)%nVALUES (%s)%n", tableName, columns, values);
+        !onConflict || conflictAction != null,
+        "Must call doNothing() or doUpdate() after onConflict() in an Insert.");
+    Preconditions.checkState(
+        conflictAction == null || conflictAction.startsWith("DO NOTHING") || conflictTarget != null,
+        "Must give a conflict target to onConflict() for doUpdate() in an Insert.");
+    List<String> whereClauses = toSqlWhereHelper();
+    Preconditions.checkState(
+        whereClauses.isEmpty()
+            || (conflictAction != null && conflictAction.startsWith("DO UPDATE")),
+        "Cannot call where() or and() in an Insert without doUpdate().");
+
+    StringBuilder sql =
+        new StringBuilder(
+            String.format("INSERT INTO %s (%s)%nVALUES (%s)%n", tableName, columns, values));
+    if (onConflict) {
+      sql.append("ON CONFLICT ");
+      if (conflictTarget != null) {
+        sql.append("(").append(conflictTarget).append(") ");
+      }
+      sql.append(conflictAction).append(lineSeparator);
+      whereClauses.forEach(clause -> sql.append(clause).append(lineSeparator));
+    }
+    if (returning != null) {
+      sql.append("RETURNING ").append(returning).append(lineSeparator);
+    }
+    return sql.toString();
+  }
+
+  /**
+   * Execute this Insert and return an Optional of the single row it returned, mapped with the given
+   * rowMapper. Requires {@link #returning(String)}.
+   *
+   * @param rowMapper the row mapper
+   * @param <T> the resulting type
+   * @return the optional result, empty if the row was skipped
+   */
+  public <T> Optional<T> queryForSingle(RowMapper<T> rowMapper) {
+    var result = queryForList(rowMapper);
+    return result.isEmpty() ? Optional.empty() : Optional.of(result.get(0));
+  }
+
+  /**
+   * Execute this Insert and return the rows it returned, mapped with the given rowMapper. Requires
+   * {@link #returning(String)}.
+   *
+   * @param rowMapper the row mapper
+   * @param <T> the resulting type
+   * @return the list of results
+   */
+  public <T> List<T> queryForList(RowMapper<T> rowMapper) {
+    Preconditions.checkState(returning != null, "Must call returning() to query an Insert.");
+    return jdbcTemplate.query(toSql(), parameters, rowMapper);
   }
 
   @Override
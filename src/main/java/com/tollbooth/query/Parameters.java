@@ -2,35 +2,40 @@ package com.tollbooth.query;
 
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.Collection;
 import java.util.Map;
 import org.springframework.jdbc.core.namedparam.AbstractSqlParameterSource;
-import org.springframework.jdbc.core.namedparam.BeanPropertySqlParameterSource;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.SqlArrayValue;
 
 /**
- * A convenience class that wraps {@link BeanPropertySqlParameterSource} with a {@link
- * MapSqlParameterSource}. This allows you to create a set of parameters from an Dto, then add to or
- * override them.
+ * A convenience class that wraps the properties of an object with a {@link MapSqlParameterSource}.
+ * This allows you to create a set of parameters from an Dto, then add to or override them. The
+ * object's properties are read through its {@link PropertyAccessors}, so binding them does no
+ * reflection once the accessors are built.
  */
 public class Parameters extends AbstractSqlParameterSource {
 
-  private MapSqlParameterSource mapParameters;
-  private BeanPropertySqlParameterSource beanParameters;
+  private final MapSqlParameterSource mapParameters;
+  private final Object object;
+  private final PropertyAccessors<?> accessors;
 
   /**
    * Create new Parameters from the given object and map.
    *
-   * @param object the object
+   * @param object the object, or null for none
    * @param map the map
    */
   public Parameters(Object object, Map<String, Object> map) {
-    this.beanParameters = new BeanPropertySqlParameterSource(object);
+    this.object = object;
+    this.accessors = object == null ? null : PropertyAccessors.of(object.getClass());
     this.mapParameters = new MapSqlParameterSource(map);
   }
 
   /** Create new empty Parameters. */
   public Parameters() {
-    this(new Object(), Map.of());
+    this((Object) null, Map.of());
   }
 
   /**
@@ -48,7 +53,7 @@ public class Parameters extends AbstractSqlParameterSource {
    * @param map the map
    */
   public Parameters(Map<String, Object> map) {
-    this(new Object(), map);
+    this((Object) null, map);
   }
 
   /** Create new Parameters from the given map entry. */
@@ -66,6 +71,19 @@ public class Parameters extends AbstractSqlParameterSource {
     this(Map.of(k1, v1, k2, v2, k3, v3));
   }
 
+  /**
+   * Wrap the given values to be bound as a single SQL array, e.g. to "id = ANY(:ids)". A collection
+   * bound directly is expanded into one placeholder per value instead, e.g. "id IN (?, ?, ?)", so
+   * the statement changes with the number of values and cannot be prepared once.
+   *
+   * @param elementType the SQL type of the elements, e.g. "uuid" or "text"
+   * @param values the values, converted as other parameter values are
+   * @return the array parameter value
+   */
+  public static SqlArrayValue array(String elementType, Collection<?> values) {
+    return new SqlArrayValue(elementType, values.stream().map(Parameters::toSqlValue).toArray());
+  }
+
   /** Add the given entry to the parameters. */
   public Parameters add(String key, Object value) {
     mapParameters.addValue(key, value);
@@ -74,25 +92,44 @@ public class Parameters extends AbstractSqlParameterSource {
 
   @Override
   public boolean hasValue(String paramName) {
-    return mapParameters.hasValue(paramName) || beanParameters.hasValue(paramName);
+    return mapParameters.hasValue(paramName) || propertyIndex(paramName) >= 0;
   }
 
   @Override
   public Object getValue(String paramName) throws IllegalArgumentException {
-    Object value =
-        mapParameters.hasValue(paramName)
-            ? mapParameters.getValue(paramName)
-            : beanParameters.getValue(paramName);
+    Object value;
+    if (mapParameters.hasValue(paramName)) {
+      value = mapParameters.getValue(paramName);
+    } else {
+      int index = propertyIndex(paramName);
+      if (index < 0) {
+        throw new IllegalArgumentException("No value registered for key '" + paramName + "'");
+      }
+      value = accessors.get(object, index);
+    }
+    return toSqlValue(value);
+  }
+
+  @Override
+  public int getSqlType(String paramName) {
+    if (mapParameters.hasValue(paramName)) {
+      return mapParameters.getSqlType(paramName);
+    }
+    int index = propertyIndex(paramName);
+    return index < 0 ? JdbcUtils.TYPE_UNKNOWN : accessors.sqlType(index);
+  }
+
+  private static Object toSqlValue(Object value) {
     if (value instanceof Instant) {
       return Timestamp.from((Instant) value);
     }
+    if (value instanceof Enum<?>) {
+      return ((Enum<?>) value).name();
+    }
     return value;
   }
 
-  @Override
-  public int getSqlType(String paramName) {
-    return mapParameters.hasValue(paramName)
-        ? mapParameters.getSqlType(paramName)
-        : beanParameters.getSqlType(paramName);
+  private int propertyIndex(String paramName) {
+    return accessors == null ? -1 : accessors.indexOf(paramName);
   }
 }
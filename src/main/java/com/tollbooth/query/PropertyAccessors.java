@@ -0,0 +1,114 @@
+package com.tollbooth.query;
+
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import org.springframework.jdbc.core.StatementCreatorUtils;
+
+/**
+ * A table of the readable properties of a type, each read through a getter generated with {@link
+ * LambdaMetafactory}. Built once per type, on first use, so reading a property afterwards is a map
+ * lookup and a direct call rather than JavaBeans introspection. Backs {@link Parameters}.
+ *
+ * @param <T> the type
+ */
+public final class PropertyAccessors<T> {
+
+  private static final ClassValue<PropertyAccessors<?>> ACCESSORS =
+      new ClassValue<>() {
+        @Override
+        protected PropertyAccessors<?> computeValue(Class<?> type) {
+          return new PropertyAccessors<>(type);
+        }
+      };
+
+  private final Map<String, Integer> indices = new HashMap<>();
+  private final List<Function<Object, Object>> getters = new ArrayList<>();
+  private final List<Integer> sqlTypes = new ArrayList<>();
+
+  private PropertyAccessors(Class<T> type) {
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+      for (PropertyDescriptor property : Introspector.getBeanInfo(type).getPropertyDescriptors()) {
+        Method readMethod = property.getReadMethod();
+        if (readMethod == null || readMethod.getDeclaringClass() == Object.class) {
+          continue;
+        }
+        indices.put(property.getName(), getters.size());
+        getters.add(getter(lookup, readMethod));
+        // As BeanPropertySqlParameterSource derives it
+        sqlTypes.add(StatementCreatorUtils.javaTypeToSqlParameterType(property.getPropertyType()));
+      }
+    } catch (Throwable e) {
+      throw new IllegalStateException("Cannot build property accessors for " + type.getName(), e);
+    }
+  }
+
+  /**
+   * Return the accessors of the given type, building them on first use.
+   *
+   * @param type the type
+   * @param <T> the type
+   * @return the accessors
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> PropertyAccessors<T> of(Class<T> type) {
+    return (PropertyAccessors<T>) ACCESSORS.get(type);
+  }
+
+  /**
+   * Return the index of the named property, for use with {@link #get(Object, int)}.
+   *
+   * @param property the property name
+   * @return the index, or -1 if the type has no such readable property
+   */
+  public int indexOf(String property) {
+    return indices.getOrDefault(property, -1);
+  }
+
+  /**
+   * Read the property at the given index.
+   *
+   * @param object the object to read
+   * @param index the property index
+   * @return the property value
+   */
+  public Object get(Object object, int index) {
+    return getters.get(index).apply(object);
+  }
+
+  /**
+   * Return the SQL type of the property at the given index, derived from its Java type.
+   *
+   * @param index the property index
+   * @return the SQL type, or {@link org.springframework.jdbc.support.JdbcUtils#TYPE_UNKNOWN}
+   */
+  public int sqlType(int index) {
+    return sqlTypes.get(index);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Function<Object, Object> getter(MethodHandles.Lookup lookup, Method readMethod)
+      throws Throwable {
+    MethodHandle target = lookup.unreflect(readMethod);
+    CallSite site =
+        LambdaMetafactory.metafactory(
+            lookup,
+            "apply",
+            MethodType.methodType(Function.class),
+            MethodType.methodType(Object.class, Object.class),
+            target,
+            MethodType.methodType(Object.class, readMethod.getDeclaringClass()));
+    return (Function<Object, Object>) site.getTarget().invokeExact();
+  }
+}
@@ -185,6 +185,16 @@ public abstract class Query<T extends Query<T>> {
    */
   public abstract String toSql();
 
+  /**
+   * Compile this Query into an immutable {@link CompiledStatement} that can be executed repeatedly
+   * with different parameters. Parameters set on this Query are not carried over.
+   *
+   * @return the compiled statement
+   */
+  public CompiledStatement compile() {
+    return new CompiledStatement(jdbcTemplate, toSql());
+  }
+
   /**
    * Return this Query's SQL query.
    *
@@ -224,8 +234,12 @@ public abstract class Query<T extends Query<T>> {
    */
   abstract T self();
 
-  /** Run the query (if its an {@link Insert}, {@link Update}, or {@link Delete}). */
-  public void run() {
-    jdbcTemplate.update(toSql(), parameters);
+  /**
+   * Run the query (if its an {@link Insert}, {@link Update}, or {@link Delete}).
+   *
+   * @return the number of rows affected
+   */
+  public int run() {
+    return jdbcTemplate.update(toSql(), parameters);
   }
 }
@@ -0,0 +1,210 @@
+package com.tollbooth.query;
+
+import com.google.common.base.CaseFormat;
+import com.google.common.base.Preconditions;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.springframework.jdbc.core.RowMapper;
+
+/**
+ * Maps rows onto a DTO by setting the property named after each selected column, e.g. {@code
+ * created_at} -> {@code setCreatedAt}. Built once per DTO from the DAO's select columns: each
+ * column's getter on {@link ResultSet} and the DTO's setter are bound into a single {@link
+ * MethodHandle}, so mapping a row reads each column by index as its native type, without wrapping
+ * the row or boxing primitives. Column indices are resolved once per result set by the row mappers
+ * from {@link #newRowMapper()}.
+ *
+ * @param <T> the DTO type
+ */
+public final class RowMapperTemplate<T> {
+
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+  private final MethodHandle constructor;
+  private final String[] columns;
+  private final MethodHandle[] setters;
+
+  private RowMapperTemplate(MethodHandle constructor, String[] columns, MethodHandle[] setters) {
+    this.constructor = constructor;
+    this.columns = columns;
+    this.setters = setters;
+  }
+
+  /**
+   * Build the template for the given DTO and select columns.
+   *
+   * @param type the DTO type, with a public no-args constructor and a public setter per column
+   * @param selectColumns the comma-separated select columns, e.g. "foo.id, foo.created_at"
+   * @param <T> the DTO type
+   * @return the template
+   * @throws IllegalStateException if a column has no matching property
+   */
+  public static <T> RowMapperTemplate<T> of(Class<T> type, String selectColumns) {
+    List<String> columns = new ArrayList<>();
+    List<MethodHandle> setters = new ArrayList<>();
+    try {
+      MethodHandle constructor =
+          LOOKUP
+              .findConstructor(type, MethodType.methodType(void.class))
+              .asType(MethodType.methodType(Object.class));
+      for (String selectColumn : selectColumns.split(",")) {
+        String column = columnLabel(selectColumn);
+        Field field =
+            findField(type, CaseFormat.LOWER_UNDERSCORE.to(CaseFormat.LOWER_CAMEL, column));
+        MethodHandle setter =
+            LOOKUP.findVirtual(
+                type,
+                "set" + CaseFormat.LOWER_CAMEL.to(CaseFormat.UPPER_CAMEL, field.getName()),
+                MethodType.methodType(void.class, field.getType()));
+        // (T, V) -> void and (ResultSet, int) -> V make (T, ResultSet, int) -> void
+        MethodHandle readAndSet =
+            MethodHandles.collectArguments(setter, 1, reader(field.getType()))
+                .asType(
+                    MethodType.methodType(void.class, Object.class, ResultSet.class, int.class));
+        columns.add(column);
+        setters.add(readAndSet);
+      }
+      return new RowMapperTemplate<>(
+          constructor, columns.toArray(String[]::new), setters.toArray(MethodHandle[]::new));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new IllegalStateException(
+          String.format("Cannot map columns [%s] onto %s", selectColumns, type.getName()), e);
+    }
+  }
+
+  /**
+   * Return a row mapper for one query. It resolves the column indices on the first row of each
+   * result set, so it must not be shared between threads.
+   *
+   * @return the row mapper
+   */
+  public RowMapper<T> newRowMapper() {
+    return new Mapper();
+  }
+
+  private final class Mapper implements RowMapper<T> {
+
+    private ResultSet resolvedFor;
+    private final int[] indices = new int[columns.length];
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T mapRow(ResultSet rs, int rowNum) throws SQLException {
+      if (rs != resolvedFor) {
+        for (int i = 0; i < columns.length; i++) {
+          indices[i] = rs.findColumn(columns[i]);
+        }
+        resolvedFor = rs;
+      }
+      try {
+        Object row = constructor.invokeExact();
+        for (int i = 0; i < setters.length; i++) {
+          setters[i].invokeExact(row, rs, indices[i]);
+        }
+        return (T) row;
+      } catch (SQLException | RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable e) {
+        throw new IllegalStateException("Error mapping row", e);
+      }
+    }
+  }
+
+  // Column readers, (ResultSet, int) -> V
+
+  private static MethodHandle reader(Class<?> type)
+      throws NoSuchMethodException, IllegalAccessException {
+    if (type == String.class) {
+      return resultSetGetter("getString", String.class);
+    } else if (type == int.class) {
+      return resultSetGetter("getInt", int.class);
+    } else if (type == long.class) {
+      return resultSetGetter("getLong", long.class);
+    } else if (type == boolean.class) {
+      return resultSetGetter("getBoolean", boolean.class);
+    } else if (type == double.class) {
+      return resultSetGetter("getDouble", double.class);
+    } else if (type == Instant.class) {
+      return staticReader("getInstant", Instant.class);
+    } else if (type == UUID.class) {
+      return staticReader("getUuid", UUID.class);
+    } else if (type.isEnum()) {
+      return MethodHandles.insertArguments(staticReader("getEnum", Enum.class), 2, type)
+          .asType(MethodType.methodType(type, ResultSet.class, int.class));
+    }
+    // Boxed primitives and anything else the driver can convert to
+    return MethodHandles.insertArguments(staticReader("getObject", Object.class), 2, type)
+        .asType(MethodType.methodType(type, ResultSet.class, int.class));
+  }
+
+  private static MethodHandle resultSetGetter(String name, Class<?> type)
+      throws NoSuchMethodException, IllegalAccessException {
+    return LOOKUP.findVirtual(ResultSet.class, name, MethodType.methodType(type, int.class));
+  }
+
+  private static MethodHandle staticReader(String name, Class<?> type)
+      throws NoSuchMethodException, IllegalAccessException {
+    MethodType methodType =
+        type == Enum.class || type == Object.class
+            ? MethodType.methodType(type, ResultSet.class, int.class, Class.class)
+            : MethodType.methodType(type, ResultSet.class, int.class);
+    return LOOKUP.findStatic(RowMapperTemplate.class, name, methodType);
+  }
+
+  private static Instant getInstant(ResultSet rs, int index) throws SQLException {
+    // Read as a Timestamp, like the Timestamp it is written as by Parameters
+    Timestamp timestamp = rs.getTimestamp(index);
+    return timestamp == null ? null : timestamp.toInstant();
+  }
+
+  private static UUID getUuid(ResultSet rs, int index) throws SQLException {
+    return rs.getObject(index, UUID.class);
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static Enum<?> getEnum(ResultSet rs, int index, Class<?> type) throws SQLException {
+    String name = rs.getString(index);
+    return name == null ? null : Enum.valueOf((Class) type, name);
+  }
+
+  private static Object getObject(ResultSet rs, int index, Class<?> type) throws SQLException {
+    return rs.getObject(index, type);
+  }
+
+  // Helpers
+
+  /**
+   * Return the label of a select column, e.g. "foo.created_at" -> "created_at" and "COUNT(*) AS
+   * total" -> "total".
+   */
+  private static String columnLabel(String selectColumn) {
+    String column = selectColumn.trim();
+    int as = column.toUpperCase().lastIndexOf(" AS ");
+    if (as >= 0) {
+      column = column.substring(as + 4).trim();
+    }
+    column = column.substring(column.lastIndexOf('.') + 1);
+    Preconditions.checkState(!column.isEmpty(), "Empty column in select columns.");
+    return column;
+  }
+
+  private static Field findField(Class<?> type, String name) throws NoSuchMethodException {
+    for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+      try {
+        return current.getDeclaredField(name);
+      } catch (NoSuchFieldException e) {
+        // Try the superclass
+      }
+    }
+    throw new NoSuchMethodException(type.getName() + " has no property " + name);
+  }
+}
@@ -4,9 +4,18 @@ import com.google.common.base.Preconditions;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.StringJoiner;
+import java.util.stream.Stream;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.PreparedStatementCreatorFactory;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+import org.springframework.jdbc.core.namedparam.ParsedSql;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
 
 /** A subclass of Query used to build and execute SQL SELECT queries. */
 public class Select extends Query<Select> {
@@ -19,6 +28,8 @@ public class Select extends Query<Select> {
   private String having;
   private Integer limit;
   private Integer offset;
+  private boolean forUpdate;
+  private int fetchSize;
 
   /**
    * Create a new Select.
@@ -121,6 +132,57 @@ public class Select extends Query<Select> {
     return self();
   }
 
+  /**
+   * Page by keyset: continue after the row whose values of the given columns are lastValues, and
+   * order by those columns. E.g. after("created_at, id", createdAt, id) -> "WHERE ((created_at, id)
+   * > (:after0, :after1)) ORDER BY created_at, id". Unlike OFFSET, no skipped rows are read, so
+   * each page costs the same given an index on the columns. The columns must identify a row, and
+   * the first page is requested with no lastValues.
+   *
+   * @param columns the ordering columns, e.g. "created_at, id"
+   * @param lastValues the columns' values in the last row of the previous page, if any
+   * @return this
+   */
+  public Select after(String columns, Object... lastValues) {
+    int columnCount = columns.split(",").length;
+    Preconditions.checkArgument(
+        lastValues.length == 0 || lastValues.length == columnCount,
+        "Expected %s last values for [%s].",
+        columnCount,
+        columns);
+    if (lastValues.length > 0) {
+      var placeholders = new StringJoiner(", ", "(", ")");
+      for (int i = 0; i < lastValues.length; i++) {
+        parameters("after" + i, lastValues[i]);
+        placeholders.add(":after" + i);
+      }
+      and("(" + columns + ") > " + placeholders);
+    }
+    return orderBy(columns);
+  }
+
+  /**
+   * Set the number of rows fetched from the database at a time by {@link
+   * #queryForStream(RowMapper)}.
+   *
+   * @param fetchSize the fetch size, 0 for the driver's default of fetching every row at once
+   * @return this
+   */
+  public Select fetchSize(int fetchSize) {
+    this.fetchSize = fetchSize;
+    return self();
+  }
+
+  /**
+   * Lock the selected rows with a FOR UPDATE clause. Only meaningful inside a transaction.
+   *
+   * @return this
+   */
+  public Select forUpdate() {
+    this.forUpdate = true;
+    return self();
+  }
+
   @Override
   public String toSql() {
     return toSqlHelper(false);
@@ -168,12 +230,15 @@ public class Select extends Query<Select> {
       if (offset != null) {
         clauses.add("OFFSET " + offset);
       }
+      if (forUpdate) {
+        clauses.add("FOR UPDATE");
+      }
     }
     return String.join(lineSeparator, clauses) + lineSeparator;
   }
 
   @Override
-  public void run() {
+  public int run() {
     throw new AssertionError("Select does not support the run() method");
   }
 
@@ -215,4 +280,45 @@ public class Select extends Query<Select> {
   public <T> List<T> queryForList(RowMapper<T> rowMapper) {
     return jdbcTemplate.query(toSql(), parameters, rowMapper);
   }
+
+  /**
+   * Execute this Select query and return a stream of results, mapped with the given rowMapper as
+   * they are read. Rows are fetched {@link #fetchSize(int)} at a time through a database cursor,
+   * which only lives as long as a transaction: the query joins the current transaction, or else
+   * starts a read-only one that ends when the stream is closed. The stream holds a connection until
+   * then, so it must be closed, e.g. with try-with-resources, on the thread that opened it.
+   *
+   * @param rowMapper the row mapper
+   * @param <T> the resulting type
+   * @return the stream of results
+   */
+  public <T> Stream<T> queryForStream(RowMapper<T> rowMapper) {
+    var transactionManager =
+        new DataSourceTransactionManager(jdbcTemplate.getJdbcTemplate().getDataSource());
+    var definition = new DefaultTransactionDefinition();
+    definition.setReadOnly(true);
+    TransactionStatus transaction = transactionManager.getTransaction(definition);
+    try {
+      ParsedSql parsedSql = NamedParameterUtils.parseSqlStatement(toSql());
+      PreparedStatementCreator creator =
+          new PreparedStatementCreatorFactory(
+                  NamedParameterUtils.substituteNamedParameters(parsedSql, parameters),
+                  NamedParameterUtils.buildSqlParameterList(parsedSql, parameters))
+              .newPreparedStatementCreator(
+                  NamedParameterUtils.buildValueArray(parsedSql, parameters, null));
+      return jdbcTemplate
+          .getJdbcOperations()
+          .queryForStream(
+              connection -> {
+                var statement = creator.createPreparedStatement(connection);
+                statement.setFetchSize(fetchSize);
+                return statement;
+              },
+              rowMapper)
+          .onClose(() -> transactionManager.commit(transaction));
+    } catch (RuntimeException e) {
+      transactionManager.rollback(transaction);
+      throw e;
+    }
+  }
 }
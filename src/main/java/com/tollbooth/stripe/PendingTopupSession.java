@@ -0,0 +1,40 @@
+package com.tollbooth.stripe;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.tollbooth.dto.Copyable;
+import com.tollbooth.dto.Identifiable;
+import java.time.Instant;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+/** The open top-up Checkout session for a sender, shared by all of their held messages. */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode(exclude = {"createdAt"})
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties({"createdAt"})
+public class PendingTopupSession implements Identifiable<String>, Copyable<PendingTopupSession> {
+
+  private String senderEmail;
+  private String stripeCustomerId;
+  private String sessionId;
+  private String sessionUrl;
+  private Instant expiresAt;
+  private Instant createdAt;
+
+  @Override
+  public String getId() {
+    return senderEmail;
+  }
+
+  @Override
+  public PendingTopupSession deepCopy() {
+    return this.toBuilder().build();
+  }
+}
@@ -0,0 +1,113 @@
+package com.tollbooth.stripe;
+
+import com.tollbooth.persistence.AbstractCrudDao;
+import com.tollbooth.query.Dao;
+import com.tollbooth.query.Parameters;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.stereotype.Component;
+
+@Component
+@Dao
+public class PendingTopupSessionDao extends AbstractCrudDao<PendingTopupSession, String> {
+
+  private static final String UPSERT =
+      "INSERT INTO pending_topup_session (sender_email, stripe_customer_id, session_id,"
+          + " session_url, expires_at, created_at)\n"
+          + "VALUES (:senderEmail, :stripeCustomerId, :sessionId, :sessionUrl, :expiresAt,"
+          + " :createdAt)\n"
+          + "ON CONFLICT (sender_email) DO UPDATE SET stripe_customer_id ="
+          + " EXCLUDED.stripe_customer_id, session_id = EXCLUDED.session_id, session_url ="
+          + " EXCLUDED.session_url, expires_at = EXCLUDED.expires_at, created_at ="
+          + " EXCLUDED.created_at";
+
+  @Override
+  protected String tableName() {
+    return "pending_topup_session";
+  }
+
+  @Override
+  protected String tableAlias() {
+    return null;
+  }
+
+  @Override
+  protected String selectColumns() {
+    return "sender_email, stripe_customer_id, session_id, session_url, expires_at, created_at";
+  }
+
+  @Override
+  protected List<Pair<String, String>> updateCols() {
+    return List.of(
+        Pair.of("stripe_customer_id", ":stripeCustomerId"),
+        Pair.of("session_id", ":sessionId"),
+        Pair.of("session_url", ":sessionUrl"),
+        Pair.of("expires_at", ":expiresAt"),
+        Pair.of("created_at", ":createdAt"));
+  }
+
+  @Override
+  protected List<Pair<String, String>> insertCols() {
+    return List.of(
+        Pair.of("sender_email", ":senderEmail"),
+        Pair.of("stripe_customer_id", ":stripeCustomerId"),
+        Pair.of("session_id", ":sessionId"),
+        Pair.of("session_url", ":sessionUrl"),
+        Pair.of("expires_at", ":expiresAt"),
+        Pair.of("created_at", ":createdAt"));
+  }
+
+  @Override
+  protected Pair<String, Map<String, Object>> keyCondition(String key) {
+    return Pair.of("sender_email = :senderEmail", Map.of("senderEmail", key));
+  }
+
+  @Override
+  protected Pair<String, Map<String, Object>> keysCondition(Collection<String> keys) {
+    return Pair.of(
+        "sender_email = ANY(:senderEmails)",
+        Map.of("senderEmails", Parameters.array("text", keys)));
+  }
+
+  /**
+   * Finds the sender's session if it is still open at the given time.
+   *
+   * @param senderEmail The canonical sender email
+   * @param openUntil The time the session must remain open until
+   * @return Optional of PendingTopupSession if the sender has a session open past openUntil
+   */
+  public Optional<PendingTopupSession> findOpen(String senderEmail, Instant openUntil) {
+    return select(selectColumns())
+        .from(tableName())
+        .where("sender_email = :senderEmail AND expires_at > :openUntil")
+        .parameters("senderEmail", senderEmail, "openUntil", openUntil)
+        .queryForSingle(rowMapper());
+  }
+
+  /**
+   * Inserts the session, replacing any earlier session for the sender.
+   *
+   * @param session The session
+   */
+  public void upsert(PendingTopupSession session) {
+    jdbcTemplate.update(UPSERT, new Parameters(session));
+  }
+
+  /**
+   * Removes the sender's session if it is the given one. A newer session for the same sender is
+   * left in place.
+   *
+   * @param senderEmail The canonical sender email
+   * @param sessionId The Checkout session ID
+   */
+  public void deleteSession(String senderEmail, String sessionId) {
+    deleteFrom(tableName())
+        .where("sender_email = :senderEmail AND session_id = :sessionId")
+        .parameters("senderEmail", senderEmail, "sessionId", sessionId)
+        .run();
+  }
+}
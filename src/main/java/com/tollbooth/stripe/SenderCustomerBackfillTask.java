@@ -0,0 +1,94 @@
+package com.tollbooth.stripe;
+
+import com.stripe.StripeClient;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Customer;
+import com.stripe.model.StripeSearchResult;
+import com.stripe.param.CustomerSearchParams;
+import com.tollbooth.config.StripeConfig;
+import com.tollbooth.config.TollProperties;
+import com.tollbooth.gmail.EmailAddressCanonicalizer;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+public class SenderCustomerBackfillTask {
+
+  private static final Logger logger = LogManager.getLogger(SenderCustomerBackfillTask.class);
+  private static final String INBOX_TOLL_CUSTOMER_QUERY = "metadata['inbox_toll_customer']:'true'";
+  private static final long PAGE_SIZE = 100L;
+
+  @Autowired private StripeConfig stripeConfig;
+
+  @Autowired private StripeClient stripeClient;
+
+  @Autowired private SenderCustomerDao senderCustomerDao;
+
+  @Autowired private EmailAddressCanonicalizer emailAddressCanonicalizer;
+
+  @Autowired private TollProperties tollProperties;
+
+  /**
+   * Pages through every Stripe customer created by Inbox Toll and records any that are missing from
+   * the sender_customer table, so steady-state toll processing never has to search Stripe for a
+   * customer. Runs once at startup and then daily to pick up customers created elsewhere. Skipped
+   * in dry run, which writes nothing.
+   */
+  @Scheduled(
+      initialDelay = 0,
+      fixedDelayString = "${stripe.customer-backfill-interval-ms:86400000}")
+  public void backfill() {
+    if (tollProperties.isDryRun() || !stripeConfig.isCustomerBackfillEnabled()) {
+      return;
+    }
+
+    long start = System.currentTimeMillis();
+    int total = 0;
+    try {
+      String page = null;
+      do {
+        CustomerSearchParams.Builder params =
+            CustomerSearchParams.builder().setQuery(INBOX_TOLL_CUSTOMER_QUERY).setLimit(PAGE_SIZE);
+        if (page != null) {
+          params.setPage(page);
+        }
+        StripeSearchResult<Customer> result = stripeClient.customers().search(params.build());
+
+        // Keep the first customer seen for each canonical email
+        Map<String, SenderCustomer> batch = new LinkedHashMap<>();
+        for (Customer customer : result.getData()) {
+          String senderEmail = emailAddressCanonicalizer.canonicalize(customer.getEmail());
+          if (senderEmail != null) {
+            batch.putIfAbsent(
+                senderEmail,
+                SenderCustomer.builder()
+                    .id(UUID.randomUUID())
+                    .senderEmail(senderEmail)
+                    .stripeCustomerId(customer.getId())
+                    .createdAt(Instant.now())
+                    .build());
+          }
+        }
+        senderCustomerDao.createAllIfAbsent(batch.values());
+        total += batch.size();
+
+        page = Boolean.TRUE.equals(result.getHasMore()) ? result.getNextPage() : null;
+      } while (page != null);
+
+      logger.info(
+          "Backfilled {} sender customers from Stripe in {} ms",
+          total,
+          System.currentTimeMillis() - start);
+    } catch (StripeException e) {
+      logger.error(
+          "Sender customer backfill stopped after {} customers: {}", total, e.getMessage(), e);
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package com.tollbooth.stripe;
+
+import com.tollbooth.persistence.AbstractCrudDao;
+import com.tollbooth.query.Dao;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.stereotype.Component;
+
+@Component
+@Dao
+public class SenderCustomerDao extends AbstractCrudDao<SenderCustomer, UUID> {
+
+  @Override
+  protected String tableName() {
+    return "sender_customer";
+  }
+
+  @Override
+  protected String tableAlias() {
+    return null;
+  }
+
+  @Override
+  protected String selectColumns() {
+    return "id, sender_email, stripe_customer_id, created_at";
+  }
+
+  @Override
+  protected List<Pair<String, String>> updateCols() {
+    return List.of(
+        Pair.of("sender_email", ":senderEmail"),
+        Pair.of("stripe_customer_id", ":stripeCustomerId"),
+        Pair.of("created_at", ":createdAt"));
+  }
+
+  @Override
+  protected List<Pair<String, String>> insertCols() {
+    return List.of(
+        Pair.of("id", ":id"),
+        Pair.of("sender_email", ":senderEmail"),
+        Pair.of("stripe_customer_id", ":stripeCustomerId"),
+        Pair.of("created_at", ":createdAt"));
+  }
+
+  /**
+   * Finds the customer mapping for a canonical sender email.
+   *
+   * @param senderEmail The canonical sender email
+   * @return Optional of SenderCustomer if found
+   */
+  public Optional<SenderCustomer> findBySenderEmail(String senderEmail) {
+    return select(selectColumns())
+        .from(tableName())
+        .where("sender_email = :senderEmail")
+        .parameters("senderEmail", senderEmail)
+        .queryForSingle(rowMapper());
+  }
+}
@@ -0,0 +1,91 @@
+package com.tollbooth.stripe;
+
+import com.tollbooth.config.StripeConfig;
+import java.time.Duration;
+import java.time.Instant;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Tracks the health of Stripe requests. After a run of consecutive failures (connection errors,
+ * timeouts or 5xx responses) the breaker opens and requests fail fast instead of waiting out their
+ * timeouts. Once the open period has passed a single probe request is let through; its outcome
+ * closes the breaker or opens it again.
+ */
+@Component
+public class StripeCircuitBreaker {
+
+  private static final Logger logger = LogManager.getLogger(StripeCircuitBreaker.class);
+
+  enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  @Autowired private StripeConfig stripeConfig;
+
+  private State state = State.CLOSED;
+  private int consecutiveFailures;
+  private Instant openedAt;
+
+  /**
+   * Returns whether a request may be sent. While half-open only one probe request is allowed.
+   *
+   * @return True if the request may be sent
+   */
+  public synchronized boolean allowRequest() {
+    if (state == State.CLOSED) {
+      return true;
+    }
+    if (state == State.OPEN && !openPeriodElapsed()) {
+      return false;
+    }
+    if (state == State.OPEN) {
+      state = State.HALF_OPEN;
+      logger.info("Stripe circuit breaker half-open, sending probe request");
+      return true;
+    }
+    // A probe is already in flight
+    return false;
+  }
+
+  /**
+   * Returns whether Stripe is currently considered unavailable, without claiming a probe.
+   *
+   * @return True if requests would be rejected
+   */
+  public synchronized boolean isOpen() {
+    return state == State.HALF_OPEN || (state == State.OPEN && !openPeriodElapsed());
+  }
+
+  /** Records a successful request, closing the breaker. */
+  public synchronized void recordSuccess() {
+    if (state != State.CLOSED) {
+      logger.info("Stripe circuit breaker closed");
+    }
+    state = State.CLOSED;
+    consecutiveFailures = 0;
+  }
+
+  /** Records a failed request, opening the breaker once the failure threshold is reached. */
+  public synchronized void recordFailure() {
+    consecutiveFailures++;
+    if (state == State.HALF_OPEN
+        || consecutiveFailures >= stripeConfig.getCircuitBreakerFailureThreshold()) {
+      if (state != State.OPEN) {
+        logger.warn(
+            "Stripe circuit breaker opened after {} consecutive failures", consecutiveFailures);
+      }
+      state = State.OPEN;
+      openedAt = Instant.now();
+    }
+  }
+
+  private boolean openPeriodElapsed() {
+    return Duration.between(openedAt, Instant.now()).toMillis()
+        >= stripeConfig.getCircuitBreakerOpenMs();
+  }
+}
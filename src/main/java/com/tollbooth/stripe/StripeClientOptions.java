@@ -0,0 +1,88 @@
+package com.tollbooth.stripe;
+
+import com.stripe.Stripe;
+import com.stripe.net.Authenticator;
+import com.stripe.net.BearerTokenAuthenticator;
+import com.stripe.net.StripeResponseGetterOptions;
+import java.net.PasswordAuthentication;
+import java.net.Proxy;
+
+/**
+ * Options for the Stripe client when it is built around a custom transport. Mirrors what {@code
+ * StripeClient.builder()} would configure, which the SDK does not expose.
+ */
+public class StripeClientOptions extends StripeResponseGetterOptions {
+
+  private final Authenticator authenticator;
+  private final int connectTimeout;
+  private final int readTimeout;
+  private final int maxNetworkRetries;
+
+  public StripeClientOptions(
+      String apiKey, int connectTimeout, int readTimeout, int maxNetworkRetries) {
+    this.authenticator = new BearerTokenAuthenticator(apiKey);
+    this.connectTimeout = connectTimeout;
+    this.readTimeout = readTimeout;
+    this.maxNetworkRetries = maxNetworkRetries;
+  }
+
+  @Override
+  public Authenticator getAuthenticator() {
+    return authenticator;
+  }
+
+  @Override
+  public String getClientId() {
+    return null;
+  }
+
+  @Override
+  public int getConnectTimeout() {
+    return connectTimeout;
+  }
+
+  @Override
+  public Proxy getConnectionProxy() {
+    return null;
+  }
+
+  @Override
+  public int getMaxNetworkRetries() {
+    return maxNetworkRetries;
+  }
+
+  @Override
+  public PasswordAuthentication getProxyCredential() {
+    return null;
+  }
+
+  @Override
+  public String getApiBase() {
+    return Stripe.LIVE_API_BASE;
+  }
+
+  @Override
+  public String getFilesBase() {
+    return Stripe.UPLOAD_API_BASE;
+  }
+
+  @Override
+  public String getConnectBase() {
+    return Stripe.CONNECT_API_BASE;
+  }
+
+  @Override
+  public String getMeterEventsBase() {
+    return Stripe.METER_EVENTS_API_BASE;
+  }
+
+  @Override
+  public int getReadTimeout() {
+    return readTimeout;
+  }
+
+  @Override
+  public String getStripeContext() {
+    return null;
+  }
+}
@@ -0,0 +1,163 @@
+package com.tollbooth.stripe;
+
+import com.tollbooth.persistence.AbstractCrudDao;
+import com.tollbooth.query.Dao;
+import com.tollbooth.query.Parameters;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.stereotype.Component;
+
+@Component
+@Dao
+public class StripeEventInboxDao extends AbstractCrudDao<StripeEventInboxEntry, String> {
+
+  // Leasing (rather than holding row locks while processing) lets workers process claimed events
+  // outside the claiming transaction; an event whose worker dies is retried once the lease ends
+  private static final String CLAIM_DUE =
+      "UPDATE stripe_event_inbox SET attempts = attempts + 1, next_attempt_at = :leaseUntil\n"
+          + "WHERE event_id IN (\n"
+          + "  SELECT event_id FROM stripe_event_inbox\n"
+          + "  WHERE processed_at IS NULL AND dead_lettered_at IS NULL AND next_attempt_at <="
+          + " :now\n"
+          + "  ORDER BY next_attempt_at\n"
+          + "  LIMIT :limit\n"
+          + "  FOR UPDATE SKIP LOCKED)\n"
+          + "RETURNING event_id, event_type, payload, attempts, next_attempt_at, last_error,"
+          + " processed_at, dead_lettered_at, created_at";
+
+  @Override
+  protected String tableName() {
+    return "stripe_event_inbox";
+  }
+
+  @Override
+  protected String tableAlias() {
+    return null;
+  }
+
+  @Override
+  protected String selectColumns() {
+    return "event_id, event_type, payload, attempts, next_attempt_at, last_error, processed_at,"
+        + " dead_lettered_at, created_at";
+  }
+
+  @Override
+  protected List<Pair<String, String>> updateCols() {
+    return List.of(
+        Pair.of("event_type", ":eventType"),
+        Pair.of("payload", ":payload"),
+        Pair.of("attempts", ":attempts"),
+        Pair.of("next_attempt_at", ":nextAttemptAt"),
+        Pair.of("last_error", ":lastError"),
+        Pair.of("processed_at", ":processedAt"),
+        Pair.of("dead_lettered_at", ":deadLetteredAt"),
+        Pair.of("created_at", ":createdAt"));
+  }
+
+  @Override
+  protected List<Pair<String, String>> insertCols() {
+    return List.of(
+        Pair.of("event_id", ":eventId"),
+        Pair.of("event_type", ":eventType"),
+        Pair.of("payload", ":payload"),
+        Pair.of("attempts", ":attempts"),
+        Pair.of("next_attempt_at", ":nextAttemptAt"),
+        Pair.of("last_error", ":lastError"),
+        Pair.of("processed_at", ":processedAt"),
+        Pair.of("dead_lettered_at", ":deadLetteredAt"),
+        Pair.of("created_at", ":createdAt"));
+  }
+
+  @Override
+  protected Pair<String, Map<String, Object>> keyCondition(String key) {
+    return Pair.of("event_id = :eventId", Map.of("eventId", key));
+  }
+
+  @Override
+  protected Pair<String, Map<String, Object>> keysCondition(Collection<String> keys) {
+    return Pair.of("event_id = ANY(:eventIds)", Map.of("eventIds", Parameters.array("text", keys)));
+  }
+
+  /**
+   * Claims up to {@code limit} due events, counting an attempt and leasing each until {@code
+   * leaseUntil}. Events claimed by another worker are skipped rather than waited on.
+   *
+   * @param limit The maximum number of events to claim
+   * @param now The current time
+   * @param leaseUntil When the claim lapses if the event is neither processed nor rescheduled
+   * @return The claimed events
+   */
+  public List<StripeEventInboxEntry> claimDue(int limit, Instant now, Instant leaseUntil) {
+    return jdbcTemplate.query(
+        CLAIM_DUE,
+        new Parameters("limit", limit, "now", now, "leaseUntil", leaseUntil),
+        rowMapper());
+  }
+
+  /**
+   * Marks an event as processed.
+   *
+   * @param eventId The Stripe event ID
+   * @param processedAt When processing finished
+   */
+  public void markProcessed(String eventId, Instant processedAt) {
+    update(tableName())
+        .set("processed_at = :processedAt, last_error = NULL")
+        .where("event_id = :eventId")
+        .parameters("eventId", eventId, "processedAt", processedAt)
+        .run();
+  }
+
+  /**
+   * Records a failed attempt and schedules the next one.
+   *
+   * @param eventId The Stripe event ID
+   * @param lastError The failure
+   * @param nextAttemptAt When to try again
+   */
+  public void markFailed(String eventId, String lastError, Instant nextAttemptAt) {
+    update(tableName())
+        .set("last_error = :lastError, next_attempt_at = :nextAttemptAt")
+        .where("event_id = :eventId")
+        .parameters("eventId", eventId, "lastError", lastError, "nextAttemptAt", nextAttemptAt)
+        .run();
+  }
+
+  /**
+   * Records a final failed attempt; the event is not retried again.
+   *
+   * @param eventId The Stripe event ID
+   * @param lastError The failure
+   * @param deadLetteredAt When the event was given up on
+   */
+  public void markDeadLettered(String eventId, String lastError, Instant deadLetteredAt) {
+    update(tableName())
+        .set("last_error = :lastError, dead_lettered_at = :deadLetteredAt")
+        .where("event_id = :eventId")
+        .parameters("eventId", eventId, "lastError", lastError, "deadLetteredAt", deadLetteredAt)
+        .run();
+  }
+
+  /**
+   * Returns which of the given events have already been received.
+   *
+   * @param eventIds The Stripe event IDs to look up
+   * @return The subset of event IDs in the inbox
+   */
+  public Set<String> findExistingIds(Collection<String> eventIds) {
+    if (eventIds.isEmpty()) {
+      return Set.of();
+    }
+    return new HashSet<>(
+        select("event_id")
+            .from(tableName())
+            .where("event_id = ANY(:eventIds)")
+            .parameters("eventIds", Parameters.array("text", eventIds))
+            .queryForList((rs, rowNum) -> rs.getString("event_id")));
+  }
+}
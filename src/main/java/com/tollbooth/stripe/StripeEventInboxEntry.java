@@ -0,0 +1,47 @@
+package com.tollbooth.stripe;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.tollbooth.dto.Copyable;
+import com.tollbooth.dto.Identifiable;
+import java.time.Instant;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+/** A verified Stripe webhook event waiting to be, or already, processed. */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode(exclude = {"createdAt"})
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties({"createdAt"})
+public class StripeEventInboxEntry
+    implements Identifiable<String>, Copyable<StripeEventInboxEntry> {
+
+  private String eventId;
+  private String eventType;
+
+  /** The event's {@link StripeEventSummary}, as JSON. */
+  private String payload;
+
+  private int attempts;
+  private Instant nextAttemptAt;
+  private String lastError;
+  private Instant processedAt;
+  private Instant deadLetteredAt;
+  private Instant createdAt;
+
+  @Override
+  public String getId() {
+    return eventId;
+  }
+
+  @Override
+  public StripeEventInboxEntry deepCopy() {
+    return this.toBuilder().build();
+  }
+}
@@ -0,0 +1,140 @@
+package com.tollbooth.stripe;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tollbooth.config.StripeConfig;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+public class StripeEventInboxWorker {
+
+  private static final Logger logger = LogManager.getLogger(StripeEventInboxWorker.class);
+
+  private static final Duration BASE_BACKOFF = Duration.ofSeconds(5);
+
+  private static final Duration MAX_BACKOFF = Duration.ofHours(1);
+
+  @Autowired private StripeEventInboxDao stripeEventInboxDao;
+
+  @Autowired private StripeEventProcessor stripeEventProcessor;
+
+  @Autowired private StripeConfig stripeConfig;
+
+  @Autowired private ObjectMapper objectMapper;
+
+  private ExecutorService executor;
+
+  // One permit per worker, so events are only claimed when a worker is free to take them
+  private Semaphore idleWorkers;
+
+  @PostConstruct
+  public void start() {
+    executor = Executors.newFixedThreadPool(stripeConfig.getEventWorkers());
+    idleWorkers = new Semaphore(stripeConfig.getEventWorkers());
+  }
+
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    executor.shutdown();
+    if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+      // Unfinished events are retried once their lease runs out
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Claims due events from the inbox and hands them to the worker pool. Claimed events are leased,
+   * so several instances can poll the same inbox without processing an event twice at once.
+   */
+  @Scheduled(fixedDelayString = "${stripe.event-poll-interval-ms:1000}")
+  public void pollInbox() {
+    int available = idleWorkers.drainPermits();
+    if (available == 0) {
+      return;
+    }
+
+    try {
+      Instant now = Instant.now();
+      List<StripeEventInboxEntry> claimed =
+          stripeEventInboxDao.claimDue(
+              available, now, now.plusMillis(stripeConfig.getEventLeaseMs()));
+      idleWorkers.release(available - claimed.size());
+      for (StripeEventInboxEntry entry : claimed) {
+        executor.execute(
+            () -> {
+              try {
+                process(entry);
+              } finally {
+                idleWorkers.release();
+              }
+            });
+      }
+    } catch (Exception e) {
+      idleWorkers.release(available);
+      logger.error("Unable to claim Stripe events: {}", e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Processes a claimed event, then records the outcome: processed, rescheduled with exponential
+   * backoff and jitter, or dead-lettered once it has used up its attempts.
+   *
+   * @param entry The claimed event
+   */
+  private void process(StripeEventInboxEntry entry) {
+    try {
+      StripeEventSummary event =
+          objectMapper.readValue(entry.getPayload(), StripeEventSummary.class);
+      stripeEventProcessor.process(event);
+      stripeEventInboxDao.markProcessed(entry.getEventId(), Instant.now());
+    } catch (Exception e) {
+      String error = e.getClass().getSimpleName() + ": " + e.getMessage();
+      if (entry.getAttempts() >= stripeConfig.getEventMaxAttempts()) {
+        logger.error(
+            "Giving up on Stripe event {} ({}) after {} attempts: {}",
+            entry.getEventId(),
+            entry.getEventType(),
+            entry.getAttempts(),
+            e.getMessage(),
+            e);
+        stripeEventInboxDao.markDeadLettered(entry.getEventId(), error, Instant.now());
+      } else {
+        Duration backoff = backoff(entry.getAttempts());
+        logger.warn(
+            "Error processing Stripe event {} ({}), attempt {}; retrying in {}s: {}",
+            entry.getEventId(),
+            entry.getEventType(),
+            entry.getAttempts(),
+            backoff.toSeconds(),
+            e.getMessage(),
+            e);
+        stripeEventInboxDao.markFailed(entry.getEventId(), error, Instant.now().plus(backoff));
+      }
+    }
+  }
+
+  /**
+   * Exponential backoff with jitter, capped at {@link #MAX_BACKOFF}.
+   *
+   * @param attempts The number of attempts made so far
+   * @return The delay before the next attempt
+   */
+  static Duration backoff(int attempts) {
+    long ceiling =
+        Math.min(MAX_BACKOFF.toMillis(), BASE_BACKOFF.toMillis() << Math.min(attempts - 1, 20));
+    return Duration.ofMillis(ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1));
+  }
+}
@@ -0,0 +1,197 @@
+package com.tollbooth.stripe;
+
+import com.google.api.services.gmail.Gmail;
+import com.tollbooth.config.GmailConfig;
+import com.tollbooth.config.TollProperties;
+import com.tollbooth.ledger.SenderBalanceLedger;
+import com.tollbooth.toll.TollService;
+import com.tollbooth.validation.ErrorCode;
+import com.tollbooth.validation.Validation;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Applies verified Stripe events taken from the event inbox. Handlers throw on failures that are
+ * worth retrying and must tolerate the same event being processed more than once.
+ */
+@Service
+public class StripeEventProcessor {
+
+  private static final Logger logger = LogManager.getLogger(StripeEventProcessor.class);
+
+  /** Event types with a handler; webhooks for any other type are dropped on receipt. */
+  public static final Set<String> HANDLED_TYPES =
+      Set.of("checkout.session.completed", "checkout.session.expired", "customer.updated");
+
+  @Autowired private StripeService stripeService;
+
+  @Autowired private SenderBalanceLedger senderBalanceLedger;
+
+  @Autowired private TollService tollService;
+
+  @Autowired private GmailConfig gmailConfig;
+
+  @Autowired private TollProperties tollProperties;
+
+  /**
+   * Handles checkout.session.completed and checkout.session.expired for toll top-ups, and
+   * customer.updated to keep the local balance ledger in step with Stripe.
+   *
+   * @param event The Stripe event, as read by {@link StripeWebhookReader}
+   * @throws IOException If the Gmail client cannot be created
+   */
+  public void process(StripeEventSummary event) throws IOException {
+    logger.info("Processing Stripe event: {} ({})", event.getType(), event.getId());
+
+    if ("checkout.session.completed".equals(event.getType())) {
+      handleCheckoutSessionCompleted(event);
+    } else if ("checkout.session.expired".equals(event.getType())) {
+      handleCheckoutSessionExpired(event);
+    } else if ("customer.updated".equals(event.getType())) {
+      handleCustomerUpdated(event);
+    } else {
+      logger.debug("Unhandled Stripe event type: {}", event.getType());
+    }
+  }
+
+  /**
+   * Handles checkout session completed events for toll top-ups.
+   *
+   * @param event The Stripe event
+   */
+  private void handleCheckoutSessionCompleted(StripeEventSummary event) throws IOException {
+    String sessionId = event.getObjectId();
+    Map<String, String> metadata = event.getMetadata();
+
+    if (metadata == null) {
+      logger.warn("No metadata found in checkout session for session {}", sessionId);
+      return;
+    }
+
+    // Check if this is a balance top-up
+    if (!"inbox_toll_topup".equals(metadata.get("sessionType"))) {
+      logger.debug("Not a toll top-up session, skipping");
+      return;
+    }
+
+    String senderCustomerId = metadata.get("senderCustomerId");
+    String senderEmail = metadata.get("senderEmail");
+    String tollAmountAtTopUp = metadata.get("tollAmountAtTopUp");
+
+    if (senderCustomerId == null
+        || senderEmail == null
+        || tollAmountAtTopUp == null
+        || event.getAmountTotal() == null) {
+      logger.warn("Missing required metadata for balance top-up session {}", sessionId);
+      return;
+    }
+
+    if (tollProperties.isDryRun()) {
+      long grossAmountCentsDry = event.getAmountTotal();
+      long feeDry = Math.round(grossAmountCentsDry * 0.029) + 30;
+      long netAmountCentsDry = grossAmountCentsDry - feeDry;
+      double netAmountDollarsDry = netAmountCentsDry / 100.0;
+      logger.info(
+          "DRY RUN: skipped live webhook processing for session {} (would credit ${} to sender"
+              + " {}, then process tolls for their held messages)",
+          sessionId,
+          netAmountDollarsDry,
+          senderEmail);
+      return;
+    }
+
+    // Get the top-up amount from the session (in cents)
+    long grossAmountCents = event.getAmountTotal();
+
+    // Calculate Stripe fee (2.9% + $0.30)
+    long fee = Math.round(grossAmountCents * 0.029) + 30;
+
+    // Calculate net amount in cents
+    long netAmountCents = grossAmountCents - fee;
+
+    // Credit the sender's balance with the net amount; the ledger reference makes retries safe
+    boolean creditSuccessful =
+        senderBalanceLedger.credit(
+            senderCustomerId,
+            netAmountCents,
+            "topup:" + sessionId,
+            "Balance top-up from session " + sessionId);
+    Validation.check(
+        creditSuccessful,
+        ErrorCode.INTERNAL_SERVER_ERROR,
+        "Failed to credit balance for sender %s from session %s",
+        senderEmail,
+        sessionId);
+
+    double netAmountDollars = netAmountCents / 100.0;
+    logger.info(
+        "Successfully credited ${} (net) to sender {} balance from session {}",
+        netAmountDollars,
+        senderEmail,
+        sessionId);
+
+    // The session is spent; later messages from the sender get a fresh one
+    stripeService.closeTopUpSession(senderEmail, sessionId);
+
+    // Now try to process the sender's held toll payments. A failure fails the event, so the inbox
+    // retries it; the credit and the debits are keyed, so the retry charges nothing twice
+    double tollAmount = Double.parseDouble(tollAmountAtTopUp);
+    Gmail gmailClient = gmailConfig.getGmailClient();
+    tollService.processTollPaymentsAfterTopUp(gmailClient, senderCustomerId, tollAmount);
+  }
+
+  /**
+   * Handles checkout session expired events, so the sender's next held message gets a fresh top-up
+   * link.
+   *
+   * @param event The Stripe event
+   */
+  private void handleCheckoutSessionExpired(StripeEventSummary event) {
+    String sessionId = event.getObjectId();
+    Map<String, String> metadata = event.getMetadata();
+    if (metadata == null
+        || !"inbox_toll_topup".equals(metadata.get("sessionType"))
+        || metadata.get("senderEmail") == null
+        || tollProperties.isDryRun()) {
+      return;
+    }
+
+    stripeService.closeTopUpSession(metadata.get("senderEmail"), sessionId);
+    logger.info("Top-up session {} for sender {} expired", sessionId, metadata.get("senderEmail"));
+  }
+
+  /**
+   * Handles customer updated events. Stripe does not emit an event per balance transaction, but
+   * every balance change updates the customer, so this is where changes made outside of Inbox Toll
+   * (e.g. in the dashboard) reach the local ledger.
+   *
+   * @param event The Stripe event
+   */
+  private void handleCustomerUpdated(StripeEventSummary event) {
+    if (event.getMetadata() == null
+        || !"true".equals(event.getMetadata().get("inbox_toll_customer"))
+        || event.getBalance() == null) {
+      return;
+    }
+
+    if (tollProperties.isDryRun()) {
+      logger.info(
+          "DRY RUN: would record Stripe balance {} for customer {}",
+          event.getBalance(),
+          event.getObjectId());
+      return;
+    }
+
+    senderBalanceLedger.applyStripeBalance(
+        event.getObjectId(),
+        event.getBalance(),
+        Instant.ofEpochSecond(event.getCreated()),
+        event.getId());
+  }
+}
@@ -0,0 +1,33 @@
+package com.tollbooth.stripe;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.Map;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The few fields of a Stripe webhook event that Inbox Toll acts on, read by {@link
+ * StripeWebhookReader} without deserializing the full event.
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class StripeEventSummary {
+
+  private String id;
+  private String type;
+
+  /** When the event was created, in seconds since the epoch. */
+  private Long created;
+
+  /** The ID of the event's data object, e.g. the Checkout session or customer. */
+  private String objectId;
+
+  private Long amountTotal;
+  private Long balance;
+  private Map<String, String> metadata;
+}
@@ -0,0 +1,230 @@
+package com.tollbooth.stripe;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.services.gmail.Gmail;
+import com.google.common.util.concurrent.RateLimiter;
+import com.stripe.StripeClient;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Event;
+import com.stripe.model.StripeCollection;
+import com.stripe.param.EventListParams;
+import com.tollbooth.config.GmailConfig;
+import com.tollbooth.config.StripeConfig;
+import com.tollbooth.config.TollProperties;
+import com.tollbooth.toll.TollEmailMetaDao;
+import com.tollbooth.toll.TollService;
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+public class StripeEventSyncTask {
+
+  private static final Logger logger = LogManager.getLogger(StripeEventSyncTask.class);
+
+  static final String CURSOR_NAME = "stripe-checkout-events";
+
+  private static final String EVENT_TYPE = "checkout.session.completed";
+
+  // Stripe's maximum page size
+  private static final long PAGE_SIZE = 100;
+
+  // Events can become visible in the listing slightly after their creation time
+  private static final Duration OVERLAP = Duration.ofMinutes(5);
+
+  @Autowired private StripeClient stripeClient;
+
+  @Autowired private StripeCircuitBreaker stripeCircuitBreaker;
+
+  @Autowired private StripeEventInboxDao stripeEventInboxDao;
+
+  @Autowired private SyncCursorDao syncCursorDao;
+
+  @Autowired private TollEmailMetaDao tollEmailMetaDao;
+
+  @Autowired private TollService tollService;
+
+  @Autowired private GmailConfig gmailConfig;
+
+  @Autowired private StripeConfig stripeConfig;
+
+  @Autowired private TollProperties tollProperties;
+
+  @Autowired private ObjectMapper objectMapper;
+
+  private RateLimiter rateLimiter;
+
+  @PostConstruct
+  public void init() {
+    rateLimiter = RateLimiter.create(stripeConfig.getEventSyncRequestsPerSecond());
+  }
+
+  /**
+   * Lists the top-up checkouts completed since the last sync and catches up on any the webhook
+   * missed. Events that never reached the inbox are added to it, so the inbox worker credits the
+   * sender and releases their held messages as usual. Senders whose event was received but who
+   * still have held messages, e.g. because releasing them failed after the credit, are processed
+   * again. The cursor only advances once a sync completes, so a failed sync is repeated in full.
+   */
+  @Scheduled(
+      initialDelayString = "${stripe.event-sync-interval-ms:900000}",
+      fixedDelayString = "${stripe.event-sync-interval-ms:900000}")
+  public void sync() {
+    if (tollProperties.isDryRun()) {
+      return;
+    }
+    if (stripeCircuitBreaker.isOpen()) {
+      logger.warn("Stripe is unavailable, deferring Stripe event sync");
+      return;
+    }
+
+    long start = System.currentTimeMillis();
+    Instant syncStart = Instant.now();
+    Instant since =
+        syncCursorDao
+            .find(CURSOR_NAME)
+            .map(cursor -> cursor.getCursorAt().minus(OVERLAP))
+            .orElse(syncStart.minus(Duration.ofHours(stripeConfig.getEventSyncLookbackHours())));
+
+    try {
+      int listed = 0;
+      int missed = 0;
+      int released = 0;
+      String startingAfter = null;
+      boolean hasMore = true;
+      while (hasMore) {
+        StripeCollection<Event> page = listEvents(since, startingAfter);
+        List<StripeEventSummary> topUps = new ArrayList<>();
+        for (Event event : page.getData()) {
+          StripeEventSummary summary = StripeWebhookReader.summarize(event);
+          if (summary.getMetadata() != null
+              && "inbox_toll_topup".equals(summary.getMetadata().get("sessionType"))) {
+            topUps.add(summary);
+          }
+        }
+        Set<String> received =
+            stripeEventInboxDao.findExistingIds(
+                topUps.stream().map(StripeEventSummary::getId).toList());
+        listed += page.getData().size();
+        missed += enqueueMissed(topUps, received, syncStart);
+        released +=
+            releaseHeld(topUps.stream().filter(topUp -> received.contains(topUp.getId())).toList());
+
+        hasMore = Boolean.TRUE.equals(page.getHasMore()) && !page.getData().isEmpty();
+        if (hasMore) {
+          startingAfter = page.getData().get(page.getData().size() - 1).getId();
+        }
+      }
+
+      syncCursorDao.upsert(
+          SyncCursor.builder()
+              .name(CURSOR_NAME)
+              .cursorAt(syncStart)
+              .updatedAt(Instant.now())
+              .build());
+
+      logger.info(
+          "Synced {} Stripe events since {} in {} ms: {} missed top-ups queued, {} held messages"
+              + " released",
+          listed,
+          since,
+          System.currentTimeMillis() - start,
+          missed,
+          released);
+    } catch (Exception e) {
+      logger.error("Stripe event sync failed: {}", e.getMessage(), e);
+    }
+  }
+
+  private StripeCollection<Event> listEvents(Instant since, String startingAfter)
+      throws StripeException {
+    EventListParams.Builder params =
+        EventListParams.builder()
+            .addType(EVENT_TYPE)
+            .setCreated(EventListParams.Created.builder().setGte(since.getEpochSecond()).build())
+            .setLimit(PAGE_SIZE);
+    if (startingAfter != null) {
+      params.setStartingAfter(startingAfter);
+    }
+    rateLimiter.acquire();
+    return stripeClient.events().list(params.build());
+  }
+
+  /**
+   * Adds the top-ups the inbox has never seen to it in one batch.
+   *
+   * @return The number of events added
+   */
+  private int enqueueMissed(List<StripeEventSummary> topUps, Set<String> received, Instant now)
+      throws IOException {
+    List<StripeEventInboxEntry> missed = new ArrayList<>();
+    for (StripeEventSummary topUp : topUps) {
+      if (received.contains(topUp.getId())) {
+        continue;
+      }
+      logger.warn(
+          "Stripe event {} for session {} was never received by the webhook, queueing it",
+          topUp.getId(),
+          topUp.getObjectId());
+      missed.add(
+          StripeEventInboxEntry.builder()
+              .eventId(topUp.getId())
+              .eventType(topUp.getType())
+              .payload(objectMapper.writeValueAsString(topUp))
+              .attempts(0)
+              .nextAttemptAt(now)
+              .createdAt(now)
+              .build());
+    }
+    stripeEventInboxDao.createAllIfAbsent(missed);
+    return missed.size();
+  }
+
+  /**
+   * Processes the held messages of senders whose top-up was received but who still have unpaid
+   * messages. Each sender is processed once, at the toll amount of their latest top-up. A sender
+   * whose release fails is retried on the next run.
+   *
+   * @return The number of messages released
+   */
+  private int releaseHeld(List<StripeEventSummary> topUps) throws IOException {
+    Map<String, Double> tollAmounts = new HashMap<>();
+    for (StripeEventSummary topUp : topUps) {
+      String customerId = topUp.getMetadata().get("senderCustomerId");
+      String tollAmount = topUp.getMetadata().get("tollAmountAtTopUp");
+      if (customerId != null && tollAmount != null) {
+        // Events are listed newest first
+        tollAmounts.putIfAbsent(customerId, Double.parseDouble(tollAmount));
+      }
+    }
+    Set<String> withUnpaid = tollEmailMetaDao.findCustomersWithUnpaid(tollAmounts.keySet());
+    if (withUnpaid.isEmpty()) {
+      return 0;
+    }
+
+    int released = 0;
+    Gmail gmailClient = gmailConfig.getGmailClient();
+    for (String customerId : withUnpaid) {
+      try {
+        released +=
+            tollService.processTollPaymentsAfterTopUp(
+                gmailClient, customerId, tollAmounts.get(customerId));
+      } catch (Exception e) {
+        logger.error(
+            "Error releasing held messages for customer {}: {}", customerId, e.getMessage(), e);
+      }
+    }
+    return released;
+  }
+}
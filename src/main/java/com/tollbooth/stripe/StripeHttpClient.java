@@ -0,0 +1,125 @@
+package com.tollbooth.stripe;
+
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.exception.StripeException;
+import com.stripe.net.HttpClient;
+import com.stripe.net.HttpContent;
+import com.stripe.net.HttpHeaders;
+import com.stripe.net.StripeRequest;
+import com.stripe.net.StripeResponse;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stripe transport backed by a shared {@link java.net.http.HttpClient}, which keeps connections to
+ * Stripe alive between requests instead of opening one per call. At most a fixed number of requests
+ * are in flight at once, and every request is gated by the {@link StripeCircuitBreaker}.
+ */
+public class StripeHttpClient extends HttpClient {
+
+  private final java.net.http.HttpClient httpClient;
+  private final StripeCircuitBreaker circuitBreaker;
+  private final Semaphore permits;
+  private final Duration readTimeout;
+
+  public StripeHttpClient(
+      StripeCircuitBreaker circuitBreaker,
+      int maxConcurrentRequests,
+      Duration connectTimeout,
+      Duration readTimeout) {
+    this.httpClient =
+        java.net.http.HttpClient.newBuilder()
+            .version(java.net.http.HttpClient.Version.HTTP_1_1)
+            .connectTimeout(connectTimeout)
+            .build();
+    this.circuitBreaker = circuitBreaker;
+    this.permits = new Semaphore(maxConcurrentRequests, true);
+    this.readTimeout = readTimeout;
+  }
+
+  @Override
+  public StripeResponse request(StripeRequest request) throws StripeException {
+    HttpRequest httpRequest = toHttpRequest(request);
+    if (!circuitBreaker.allowRequest()) {
+      throw new ApiConnectionException("Stripe circuit breaker is open, request not sent");
+    }
+
+    try {
+      // Waiting longer than a request could take means Stripe is backed up; fail instead
+      if (!permits.tryAcquire(readTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+        circuitBreaker.recordFailure();
+        throw new ApiConnectionException("Timed out waiting for a Stripe request slot");
+      }
+    } catch (InterruptedException e) {
+      circuitBreaker.recordFailure();
+      Thread.currentThread().interrupt();
+      throw new ApiConnectionException("Interrupted waiting for a Stripe request slot", e);
+    }
+
+    try {
+      HttpResponse<String> response =
+          httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofString());
+      if (response.statusCode() >= 500) {
+        circuitBreaker.recordFailure();
+      } else {
+        circuitBreaker.recordSuccess();
+      }
+      return new StripeResponse(
+          response.statusCode(), HttpHeaders.of(response.headers().map()), response.body());
+    } catch (HttpTimeoutException e) {
+      circuitBreaker.recordFailure();
+      // The SDK only retries socket timeouts and connection failures
+      SocketTimeoutException cause = new SocketTimeoutException(e.getMessage());
+      cause.initCause(e);
+      throw new ApiConnectionException("Stripe request timed out: " + request.url(), cause);
+    } catch (IOException e) {
+      circuitBreaker.recordFailure();
+      throw new ApiConnectionException(
+          String.format("IOException during API request to Stripe (%s): %s", request.url(), e), e);
+    } catch (InterruptedException e) {
+      circuitBreaker.recordFailure();
+      Thread.currentThread().interrupt();
+      throw new ApiConnectionException("Interrupted during API request to Stripe", e);
+    } finally {
+      permits.release();
+    }
+  }
+
+  private HttpRequest toHttpRequest(StripeRequest request) throws ApiConnectionException {
+    HttpRequest.Builder builder;
+    try {
+      builder = HttpRequest.newBuilder(request.url().toURI());
+    } catch (URISyntaxException e) {
+      throw new ApiConnectionException("Invalid Stripe request URL: " + request.url(), e);
+    }
+
+    Integer requestReadTimeout = request.options().getReadTimeout();
+    builder.timeout(
+        requestReadTimeout != null ? Duration.ofMillis(requestReadTimeout) : readTimeout);
+
+    request
+        .headers()
+        .map()
+        .forEach((name, values) -> values.forEach(value -> builder.header(name, value)));
+    builder.setHeader("User-Agent", buildUserAgentString(request));
+    builder.setHeader("X-Stripe-Client-User-Agent", buildXStripeClientUserAgentString());
+
+    HttpContent content = request.content();
+    if (content == null) {
+      builder.method(request.method().name(), HttpRequest.BodyPublishers.noBody());
+    } else {
+      builder.setHeader("Content-Type", content.contentType());
+      builder.method(
+          request.method().name(),
+          HttpRequest.BodyPublishers.ofByteArray(content.byteArrayContent()));
+    }
+    return builder.build();
+  }
+}
@@ -1,16 +1,32 @@
 package com.tollbooth.stripe;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.stripe.StripeClient;
 import com.stripe.exception.StripeException;
 import com.stripe.model.Customer;
 import com.stripe.model.CustomerBalanceTransaction;
 import com.stripe.model.checkout.Session;
-import com.stripe.param.CustomerBalanceTransactionCollectionCreateParams;
+import com.stripe.net.RequestOptions;
+import com.stripe.param.CustomerBalanceTransactionCreateParams;
 import com.stripe.param.CustomerCreateParams;
 import com.stripe.param.CustomerListParams;
 import com.stripe.param.checkout.SessionCreateParams;
+import com.tollbooth.config.StripeConfig;
 import com.tollbooth.config.TollProperties;
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Collectors;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -21,22 +37,94 @@ public class StripeService {
 
   private static final Logger logger = LogManager.getLogger(StripeService.class);
 
+  /** Sessions closer than this to expiry are not shared; the sender may not get to them in time. */
+  private static final Duration MIN_TOPUP_SESSION_REMAINING = Duration.ofHours(1);
+
+  /** 13 comma-separated UUIDs fit in one 500 character metadata value. */
+  private static final int EMAIL_META_IDS_PER_METADATA_VALUE = 13;
+
+  /** The most emails one settlement can list in Stripe's 50 metadata keys, with room to spare. */
+  public static final int MAX_SETTLEMENT_EMAILS = 40 * EMAIL_META_IDS_PER_METADATA_VALUE;
+
   @Autowired private TollProperties tollProperties;
 
+  @Autowired private StripeConfig stripeConfig;
+
+  @Autowired private SenderCustomerDao senderCustomerDao;
+
+  @Autowired private PendingTopupSessionDao pendingTopupSessionDao;
+
+  @Autowired private StripeClient stripeClient;
+
+  private LoadingCache<String, String> senderCustomerIds;
+
+  @PostConstruct
+  public void init() {
+    senderCustomerIds =
+        CacheBuilder.newBuilder()
+            .maximumSize(stripeConfig.getCustomerCacheSize())
+            .build(CacheLoader.from(this::loadSenderCustomer));
+  }
+
   /**
    * Gets or creates a Stripe customer for an email sender. This is used for balance-based toll
-   * payments.
+   * payments. Lookups are served from an in-memory cache backed by the sender_customer table, so
+   * Stripe is only contacted for senders that have never been mapped.
    *
-   * @param senderEmail The sender's email address
+   * @param senderEmail The sender's canonical email address
    * @return The Stripe customer ID
    */
   public String getOrCreateSenderCustomer(String senderEmail) {
+    try {
+      return senderCustomerIds.getUnchecked(senderEmail);
+    } catch (UncheckedExecutionException e) {
+      throw e.getCause() instanceof RuntimeException runtimeException ? runtimeException : e;
+    }
+  }
+
+  /**
+   * Loads the customer ID for a sender from the sender_customer table, falling back to Stripe and
+   * recording the result. If another worker maps the sender concurrently, its mapping wins.
+   *
+   * @param senderEmail The sender's canonical email address
+   * @return The Stripe customer ID
+   */
+  private String loadSenderCustomer(String senderEmail) {
+    Optional<SenderCustomer> mapped = senderCustomerDao.findBySenderEmail(senderEmail);
+    if (mapped.isPresent()) {
+      return mapped.get().getStripeCustomerId();
+    }
+
+    String customerId = findOrCreateStripeCustomer(senderEmail);
+    SenderCustomer senderCustomer =
+        SenderCustomer.builder()
+            .id(UUID.randomUUID())
+            .senderEmail(senderEmail)
+            .stripeCustomerId(customerId)
+            .createdAt(Instant.now())
+            .build();
+    if (senderCustomerDao.createIfAbsent(senderCustomer)) {
+      return customerId;
+    }
+    return senderCustomerDao
+        .findBySenderEmail(senderEmail)
+        .map(SenderCustomer::getStripeCustomerId)
+        .orElse(customerId);
+  }
+
+  /**
+   * Finds a Stripe customer by email, creating one if none exists.
+   *
+   * @param senderEmail The sender's canonical email address
+   * @return The Stripe customer ID
+   */
+  private String findOrCreateStripeCustomer(String senderEmail) {
     try {
       // First try to find existing customer by email
       CustomerListParams listParams =
           CustomerListParams.builder().setEmail(senderEmail).setLimit(1L).build();
 
-      var customers = Customer.list(listParams);
+      var customers = stripeClient.customers().list(listParams);
 
       if (customers.getData().size() > 0) {
         String customerId = customers.getData().get(0).getId();
@@ -52,7 +140,11 @@ public class StripeService {
               .setMetadata(Map.of("inbox_toll_customer", "true"))
               .build();
 
-      Customer customer = Customer.create(createParams);
+      // Keyed by a hash, since an address can be longer than Stripe allows idempotency keys to be
+      String emailHash =
+          Hashing.sha256().hashString(senderEmail, StandardCharsets.UTF_8).toString();
+      Customer customer =
+          stripeClient.customers().create(createParams, idempotent("customer-create-" + emailHash));
       logger.info("Created new customer {} for sender {}", customer.getId(), senderEmail);
 
       return customer.getId();
@@ -65,38 +157,15 @@ public class StripeService {
   }
 
   /**
-   * Checks if a sender has sufficient balance for a toll payment.
+   * Retrieves a sender's current balance from Stripe.
    *
    * @param senderCustomerId The sender's Stripe customer ID
-   * @param tollAmount The toll amount to check (in dollars)
-   * @return True if sender has sufficient balance, false otherwise
+   * @return The balance in cents (negative means the sender has credit)
+   * @throws StripeException if the customer cannot be retrieved
    */
-  public boolean checkSenderBalance(String senderCustomerId, double tollAmount) {
-    try {
-      Customer customer = Customer.retrieve(senderCustomerId);
-
-      // Convert toll amount to cents for comparison
-      long tollAmountCents = Math.round(tollAmount * 100);
-
-      // Check if customer balance is sufficient (balance is in cents, negative means they
-      // have
-      // credit)
-      boolean sufficient = customer.getBalance() <= -tollAmountCents;
-
-      logger.debug(
-          "Sender {} balance: {} cents, toll: {} cents, sufficient: {}",
-          senderCustomerId,
-          customer.getBalance(),
-          tollAmountCents,
-          sufficient);
-
-      return sufficient;
-
-    } catch (StripeException e) {
-      logger.error(
-          "Failed to check balance for customer {}: {}", senderCustomerId, e.getMessage(), e);
-      return false;
-    }
+  public long retrieveSenderBalance(String senderCustomerId) throws StripeException {
+    Customer customer = stripeClient.customers().retrieve(senderCustomerId);
+    return customer.getBalance() != null ? customer.getBalance() : 0L;
   }
 
   /**
@@ -105,23 +174,26 @@ public class StripeService {
    * @param senderCustomerId The sender's Stripe customer ID
    * @param creditAmountCents The amount to credit to the balance in cents
    * @param description Description for the transaction
-   * @return True if credit was successful, false otherwise
+   * @param reference A unique reference for the credit (e.g. "topup:{sessionId}"), used to derive
+   *     the idempotency key
+   * @return The balance transaction, or null if the credit failed
    */
-  public boolean creditSenderBalance(
-      String senderCustomerId, long creditAmountCents, String description) {
+  public CustomerBalanceTransaction creditSenderBalance(
+      String senderCustomerId, long creditAmountCents, String description, String reference) {
     try {
       // Create balance transaction to credit the amount (negative amount credits the balance)
-      CustomerBalanceTransactionCollectionCreateParams params =
-          CustomerBalanceTransactionCollectionCreateParams.builder()
+      CustomerBalanceTransactionCreateParams params =
+          CustomerBalanceTransactionCreateParams.builder()
               .setAmount(creditAmountCents * -1) // Negative amount credits the balance
               .setCurrency("usd")
               .setDescription(description)
               .build();
 
-      Customer customer = Customer.retrieve(senderCustomerId);
-
-      // Use the Customer service to create balance transaction
-      CustomerBalanceTransaction transaction = customer.balanceTransactions().create(params);
+      CustomerBalanceTransaction transaction =
+          stripeClient
+              .customers()
+              .balanceTransactions()
+              .create(senderCustomerId, params, idempotent("balance-credit-" + reference));
       var creditAmountDollars = creditAmountCents / 100.0;
       logger.info(
           "Successfully credited ${} to customer {} balance (transaction: {})",
@@ -129,41 +201,45 @@ public class StripeService {
           senderCustomerId,
           transaction.getId());
 
-      return true;
+      return transaction;
 
     } catch (StripeException e) {
       logger.error(
           "Failed to credit balance for customer {}: {}", senderCustomerId, e.getMessage(), e);
-      return false;
+      return null;
     }
   }
 
   /**
    * Debits the toll amount from sender's balance. Simplified version - no PendingTollTransfer
-   * needed since payments go directly to user's Stripe account.
+   * needed since payments go directly to user's Stripe account. The idempotency key is derived from
+   * the email meta ID, so retrying a debit for the same email never charges the sender twice.
    *
    * @param senderCustomerId The sender's Stripe customer ID
    * @param tollAmount The toll amount to debit (in dollars)
    * @param emailMetaId The ID of the email meta record this toll is for
-   * @return True if debit was successful, false otherwise
+   * @return The balance transaction, or null if the debit failed
    */
-  public boolean debitSenderBalance(String senderCustomerId, double tollAmount, UUID emailMetaId) {
+  public CustomerBalanceTransaction debitSenderBalance(
+      String senderCustomerId, double tollAmount, UUID emailMetaId) {
     try {
       // Convert toll amount to cents (positive amount debits the balance)
       long tollAmountCents = Math.round(tollAmount * 100);
 
       // Create balance transaction to debit the amount
-      CustomerBalanceTransactionCollectionCreateParams params =
-          CustomerBalanceTransactionCollectionCreateParams.builder()
+      CustomerBalanceTransactionCreateParams params =
+          CustomerBalanceTransactionCreateParams.builder()
               .setAmount(tollAmountCents) // Positive amount debits the balance
               .setCurrency("usd")
               .setDescription("Inbox toll payment: " + emailMetaId.toString())
+              .putMetadata("emailMetaId", emailMetaId.toString())
               .build();
 
-      Customer customer = Customer.retrieve(senderCustomerId);
-
-      // Use the Customer service to create balance transaction
-      CustomerBalanceTransaction transaction = customer.balanceTransactions().create(params);
+      CustomerBalanceTransaction transaction =
+          stripeClient
+              .customers()
+              .balanceTransactions()
+              .create(senderCustomerId, params, idempotent("toll-debit-" + emailMetaId));
 
       logger.info(
           "Successfully debited ${} from customer {} balance (transaction: {})",
@@ -171,35 +247,102 @@ public class StripeService {
           senderCustomerId,
           transaction.getId());
 
-      return true;
+      return transaction;
 
     } catch (StripeException e) {
       logger.error(
           "Failed to debit balance for customer {}: {}", senderCustomerId, e.getMessage(), e);
-      return false;
+      return null;
+    }
+  }
+
+  /**
+   * Posts a settlement of locally debited tolls to the sender's balance as one balance transaction.
+   * The covered email meta IDs are listed in the transaction metadata, split across keys to stay
+   * within Stripe's 500 character limit per value. The idempotency key is derived from the
+   * settlement ID, so retrying a settlement never charges the sender twice.
+   *
+   * @param senderCustomerId The sender's Stripe customer ID
+   * @param settlementId The settlement ID
+   * @param amountCents The total amount to debit (in cents)
+   * @param emailMetaIds The IDs of the email meta records the tolls are for, at most {@link
+   *     #MAX_SETTLEMENT_EMAILS}
+   * @return The balance transaction, or null if the debit failed
+   */
+  public CustomerBalanceTransaction settleSenderBalance(
+      String senderCustomerId, String settlementId, long amountCents, List<UUID> emailMetaIds) {
+    Map<String, String> metadata = new LinkedHashMap<>();
+    metadata.put("settlementId", settlementId);
+    for (int i = 0; i < emailMetaIds.size(); i += EMAIL_META_IDS_PER_METADATA_VALUE) {
+      metadata.put(
+          "emailMetaIds" + (i / EMAIL_META_IDS_PER_METADATA_VALUE),
+          emailMetaIds
+              .subList(i, Math.min(i + EMAIL_META_IDS_PER_METADATA_VALUE, emailMetaIds.size()))
+              .stream()
+              .map(UUID::toString)
+              .collect(Collectors.joining(",")));
+    }
+    try {
+      CustomerBalanceTransactionCreateParams params =
+          CustomerBalanceTransactionCreateParams.builder()
+              .setAmount(amountCents) // Positive amount debits the balance
+              .setCurrency("usd")
+              .setDescription(
+                  "Inbox toll settlement " + settlementId + ": " + emailMetaIds.size() + " emails")
+              .putAllMetadata(metadata)
+              .build();
+
+      CustomerBalanceTransaction transaction =
+          stripeClient
+              .customers()
+              .balanceTransactions()
+              .create(senderCustomerId, params, idempotent("toll-settlement-" + settlementId));
+
+      logger.info(
+          "Settled ${} for {} emails from customer {} balance (transaction: {})",
+          amountCents / 100.0,
+          emailMetaIds.size(),
+          senderCustomerId,
+          transaction.getId());
+
+      return transaction;
+
+    } catch (StripeException e) {
+      logger.error(
+          "Failed to settle balance for customer {}: {}", senderCustomerId, e.getMessage(), e);
+      return null;
     }
   }
 
   /**
-   * Creates a Stripe Checkout session for topping up sender's balance.
+   * Finds the sender's open top-up session, if it stays open long enough to be worth sharing.
+   *
+   * @param senderEmail The sender's canonical email address
+   * @return Optional of PendingTopupSession if the sender has an open session
+   */
+  public Optional<PendingTopupSession> findOpenTopUpSession(String senderEmail) {
+    return pendingTopupSessionDao.findOpen(
+        senderEmail, Instant.now().plus(MIN_TOPUP_SESSION_REMAINING));
+  }
+
+  /**
+   * Creates a Stripe Checkout session for topping up sender's balance and records it as the
+   * sender's open session. The session covers every message the sender has waiting, so its metadata
+   * identifies the sender rather than a single message.
    *
    * @param senderEmail The sender's email address
    * @param senderCustomerId The sender's Stripe customer ID
-   * @param messageId The Gmail message ID
-   * @param emailMetaId The email meta ID
-   * @return The Checkout session URL, or null if creation failed
+   * @param emailMetaId The email meta ID of the message that triggered the session, used to derive
+   *     the idempotency key
+   * @return The session, or null if creation failed
    */
-  public String createTopUpCheckoutSession(
-      String senderEmail, String senderCustomerId, String messageId, UUID emailMetaId) {
+  public PendingTopupSession createTopUpCheckoutSession(
+      String senderEmail, String senderCustomerId, UUID emailMetaId) {
     try {
       Map<String, String> metadata =
           Map.of(
               "sessionType",
               "inbox_toll_topup",
-              "emailMetaId",
-              emailMetaId.toString(),
-              "messageId",
-              messageId,
               "senderEmail",
               senderEmail,
               "senderCustomerId",
@@ -254,25 +397,59 @@ public class StripeService {
               .putAllMetadata(metadata)
               .build();
 
-      Session session = Session.create(params);
+      Session session =
+          stripeClient
+              .checkout()
+              .sessions()
+              .create(params, idempotent("topup-session-" + emailMetaId));
+
+      PendingTopupSession pendingSession =
+          PendingTopupSession.builder()
+              .senderEmail(senderEmail)
+              .stripeCustomerId(senderCustomerId)
+              .sessionId(session.getId())
+              .sessionUrl(session.getUrl())
+              .expiresAt(Instant.ofEpochSecond(session.getExpiresAt()))
+              .createdAt(Instant.now())
+              .build();
+      pendingTopupSessionDao.upsert(pendingSession);
 
       logger.info(
-          "Created toll balance top-up link for message {} with session ID {} for sender"
-              + " {} (min toll: ${})",
-          messageId,
+          "Created toll balance top-up link with session ID {} for sender {} (min toll: ${})",
           session.getId(),
           senderEmail,
           netAmount);
-      return session.getUrl();
+      return pendingSession;
 
     } catch (StripeException e) {
       logger.error(
-          "Failed to create toll payment link for message {}: {}", messageId, e.getMessage(), e);
+          "Failed to create toll payment link for sender {}: {}", senderEmail, e.getMessage(), e);
       return null;
     } catch (Exception e) {
       logger.error(
-          "Failed to create toll payment link for message {}: {}", messageId, e.getMessage(), e);
+          "Failed to create toll payment link for sender {}: {}", senderEmail, e.getMessage(), e);
       return null;
     }
   }
+
+  /**
+   * Forgets the sender's open top-up session once it has completed or expired.
+   *
+   * @param senderEmail The sender's canonical email address
+   * @param sessionId The Checkout session ID
+   */
+  public void closeTopUpSession(String senderEmail, String sessionId) {
+    pendingTopupSessionDao.deleteSession(senderEmail, sessionId);
+  }
+
+  /**
+   * Builds request options carrying a deterministic idempotency key. Stripe replays the original
+   * response for a repeated key, so retries (by the SDK or by reprocessing) apply at most once.
+   *
+   * @param idempotencyKey The idempotency key
+   * @return The request options
+   */
+  private static RequestOptions idempotent(String idempotencyKey) {
+    return RequestOptions.builder().setIdempotencyKey(idempotencyKey).build();
+  }
 }
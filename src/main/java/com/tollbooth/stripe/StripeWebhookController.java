@@ -1,17 +1,10 @@
 package com.tollbooth.stripe;
 
-import com.google.api.services.gmail.Gmail;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.stripe.exception.SignatureVerificationException;
-import com.stripe.model.Event;
-import com.stripe.model.StripeObject;
-import com.stripe.model.checkout.Session;
-import com.stripe.net.Webhook;
-import com.tollbooth.config.GmailConfig;
-import com.tollbooth.config.StripeConfig;
-import com.tollbooth.config.TollProperties;
-import com.tollbooth.toll.TollService;
 import jakarta.servlet.http.HttpServletRequest;
-import java.util.Map;
+import java.time.Instant;
+import java.util.Optional;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -30,136 +23,58 @@ public class StripeWebhookController {
 
   @Autowired private HttpServletRequest httpServletRequest;
 
-  @Autowired private StripeConfig stripeConfig;
+  @Autowired private StripeWebhookReader stripeWebhookReader;
 
-  @Autowired private StripeService stripeService;
+  @Autowired private StripeEventInboxDao stripeEventInboxDao;
 
-  @Autowired private TollService tollService;
-
-  @Autowired private GmailConfig gmailConfig;
-
-  @Autowired private TollProperties tollProperties;
+  @Autowired private ObjectMapper objectMapper;
 
   /**
-   * Webhook endpoint for Stripe events. Handles checkout.session.completed for toll top-ups.
+   * Webhook endpoint for Stripe events. Verifies the signature, stores the fields of the event that
+   * matter in the event inbox and acknowledges it straight away; {@link StripeEventInboxWorker}
+   * processes it in the background. Event types without a handler, and redeliveries of an event
+   * that is already stored, are acknowledged and ignored.
    *
-   * @param payload The raw webhook payload
+   * @param payload The raw webhook payload; the signature covers these exact bytes
    * @return HTTP response
    */
   @PostMapping
-  public ResponseEntity<String> handleStripeWebhook(@RequestBody String payload) {
+  public ResponseEntity<String> handleStripeWebhook(@RequestBody byte[] payload) {
     try {
       String sigHeader = httpServletRequest.getHeader("Stripe-Signature");
-      Event event = Webhook.constructEvent(payload, sigHeader, stripeConfig.getWebhookSecret());
-
-      logger.info("Processing Stripe webhook event: {} ({})", event.getType(), event.getId());
+      Optional<StripeEventSummary> summary = stripeWebhookReader.read(payload, sigHeader);
+      if (summary.isEmpty()) {
+        return ResponseEntity.ok("Webhook ignored");
+      }
 
-      if ("checkout.session.completed".equals(event.getType())) {
-        handleCheckoutSessionCompleted(event);
+      StripeEventSummary event = summary.get();
+      Instant now = Instant.now();
+      boolean stored =
+          stripeEventInboxDao.createIfAbsent(
+              StripeEventInboxEntry.builder()
+                  .eventId(event.getId())
+                  .eventType(event.getType())
+                  .payload(objectMapper.writeValueAsString(event))
+                  .attempts(0)
+                  .nextAttemptAt(now)
+                  .createdAt(now)
+                  .build());
+      if (stored) {
+        logger.info("Received Stripe webhook event: {} ({})", event.getType(), event.getId());
       } else {
-        logger.debug("Unhandled Stripe event type: {}", event.getType());
+        logger.debug("Ignoring redelivered Stripe webhook event {}", event.getId());
       }
 
-      return ResponseEntity.ok("Webhook processed successfully");
+      return ResponseEntity.ok("Webhook received");
 
     } catch (SignatureVerificationException e) {
       logger.error("Stripe webhook signature verification failed: {}", e.getMessage());
       return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Invalid signature");
     } catch (Exception e) {
-      logger.error("Error processing Stripe webhook: {}", e.getMessage(), e);
-      return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Webhook error: " + e.getMessage());
-    }
-  }
-
-  /**
-   * Handles checkout session completed events for toll top-ups.
-   *
-   * @param event The Stripe event
-   */
-  private void handleCheckoutSessionCompleted(Event event) {
-    StripeObject stripeObject = event.getDataObjectDeserializer().getObject().orElse(null);
-
-    if (!(stripeObject instanceof Session)) {
-      logger.error(
-          "Expected Session object for checkout.session.completed event but got {}",
-          stripeObject != null ? stripeObject.getClass().getName() : "null");
-      return;
-    }
-
-    Session session = (Session) stripeObject;
-    Map<String, String> metadata = session.getMetadata();
-
-    if (metadata == null) {
-      logger.warn("No metadata found in checkout session for session {}", session.getId());
-      return;
-    }
-
-    // Check if this is a balance top-up
-    if (!"inbox_toll_topup".equals(metadata.get("sessionType"))) {
-      logger.debug("Not a toll top-up session, skipping");
-      return;
-    }
-
-    try {
-      String senderCustomerId = metadata.get("senderCustomerId");
-      String senderEmail = metadata.get("senderEmail");
-      String messageId = metadata.get("messageId");
-      String tollAmountAtTopUp = metadata.get("tollAmountAtTopUp");
-
-      if (senderCustomerId == null || messageId == null || tollAmountAtTopUp == null) {
-        logger.warn("Missing required metadata for balance top-up session {}", session.getId());
-        return;
-      }
-
-      if (tollProperties.isDryRun()) {
-        long grossAmountCentsDry = session.getAmountTotal();
-        long feeDry = Math.round(grossAmountCentsDry * 0.029) + 30;
-        long netAmountCentsDry = grossAmountCentsDry - feeDry;
-        double netAmountDollarsDry = netAmountCentsDry / 100.0;
-        logger.info(
-            "DRY RUN: skipped live webhook processing for session {} (would credit ${} to sender {}, "
-                + "then process toll for message {})",
-            session.getId(),
-            netAmountDollarsDry,
-            senderEmail,
-            messageId);
-        return;
-      }
-
-      // Get the top-up amount from the session (in cents)
-      long grossAmountCents = session.getAmountTotal();
-
-      // Calculate Stripe fee (2.9% + $0.30)
-      long fee = Math.round(grossAmountCents * 0.029) + 30;
-
-      // Calculate net amount in cents
-      long netAmountCents = grossAmountCents - fee;
-
-      // Credit the sender's balance with the net amount
-      boolean creditSuccessful =
-          stripeService.creditSenderBalance(
-              senderCustomerId, netAmountCents, "Balance top-up from session " + session.getId());
-
-      if (creditSuccessful) {
-        double netAmountDollars = netAmountCents / 100.0;
-        logger.info(
-            "Successfully credited ${} (net) to sender {} balance from session {}",
-            netAmountDollars,
-            senderEmail,
-            session.getId());
-
-        // Now try to process the original toll payment
-        double tollAmount = Double.parseDouble(tollAmountAtTopUp);
-        Gmail gmailClient = gmailConfig.getGmailClient();
-        tollService.processTollPaymentAfterTopUp(gmailClient, messageId, tollAmount);
-
-      } else {
-        logger.error(
-            "Failed to credit balance for sender {} from session {}", senderEmail, session.getId());
-      }
-
-    } catch (Exception e) {
-      logger.error("Error processing balance top-up completion: {}", e.getMessage(), e);
+      // Not acknowledged, so Stripe delivers the event again later
+      logger.error("Error storing Stripe webhook: {}", e.getMessage(), e);
+      return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+          .body("Webhook error: " + e.getMessage());
     }
   }
 }
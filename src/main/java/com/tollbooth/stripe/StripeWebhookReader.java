@@ -0,0 +1,240 @@
+package com.tollbooth.stripe;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.stripe.exception.SignatureVerificationException;
+import com.stripe.model.Event;
+import com.stripe.net.Webhook;
+import com.tollbooth.config.StripeConfig;
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Verifies and reads Stripe webhook payloads straight from the request bytes. The signature is
+ * checked the same way as {@link Webhook#constructEvent}, but the payload is then streamed for the
+ * handful of fields {@link StripeEventProcessor} needs instead of being deserialized into a full
+ * {@link com.stripe.model.Event}.
+ */
+@Component
+public class StripeWebhookReader {
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+  @Autowired private StripeConfig stripeConfig;
+
+  private ThreadLocal<Mac> macs;
+
+  @PostConstruct
+  public void init() {
+    SecretKeySpec key =
+        new SecretKeySpec(
+            stripeConfig.getWebhookSecret().getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+    macs =
+        ThreadLocal.withInitial(
+            () -> {
+              try {
+                Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+                mac.init(key);
+                return mac;
+              } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HMAC-SHA256 is unavailable", e);
+              }
+            });
+  }
+
+  /**
+   * Verifies the payload's signature and reads the event, if it is one Inbox Toll handles.
+   *
+   * @param payload The raw request body
+   * @param sigHeader The Stripe-Signature header
+   * @return The event summary, or empty if the event type is not handled
+   * @throws SignatureVerificationException If the signature is missing, wrong or too old
+   * @throws IOException If the payload is not valid JSON
+   */
+  public Optional<StripeEventSummary> read(byte[] payload, String sigHeader)
+      throws SignatureVerificationException, IOException {
+    verify(payload, sigHeader);
+    return summarize(payload);
+  }
+
+  /**
+   * Checks the {@code v1} signatures in the header against an HMAC of the timestamp and payload,
+   * and rejects timestamps outside Stripe's default tolerance to prevent replays.
+   *
+   * @param payload The raw request body
+   * @param sigHeader The Stripe-Signature header
+   * @throws SignatureVerificationException If no signature matches or the timestamp is too old
+   */
+  void verify(byte[] payload, String sigHeader) throws SignatureVerificationException {
+    if (sigHeader == null) {
+      throw new SignatureVerificationException("Missing Stripe-Signature header", null);
+    }
+
+    long timestamp = -1;
+    List<byte[]> signatures = new ArrayList<>();
+    for (String item : sigHeader.split(",")) {
+      int separator = item.indexOf('=');
+      if (separator < 0) {
+        continue;
+      }
+      String name = item.substring(0, separator).trim();
+      String value = item.substring(separator + 1).trim();
+      try {
+        if ("t".equals(name)) {
+          timestamp = Long.parseLong(value);
+        } else if (Webhook.Signature.EXPECTED_SCHEME.equals(name)) {
+          signatures.add(HexFormat.of().parseHex(value));
+        }
+      } catch (IllegalArgumentException e) {
+        // Malformed items are ignored, as they are by the Stripe SDK
+      }
+    }
+    if (timestamp < 0 || signatures.isEmpty()) {
+      throw new SignatureVerificationException(
+          "Unable to extract timestamp and signatures from header", sigHeader);
+    }
+
+    Mac mac = macs.get();
+    mac.update(Long.toString(timestamp).getBytes(StandardCharsets.US_ASCII));
+    mac.update((byte) '.');
+    byte[] expected = mac.doFinal(payload);
+    if (signatures.stream().noneMatch(signature -> MessageDigest.isEqual(expected, signature))) {
+      throw new SignatureVerificationException(
+          "No signatures found matching the expected signature for payload", sigHeader);
+    }
+
+    if (Math.abs(Instant.now().getEpochSecond() - timestamp) > Webhook.DEFAULT_TOLERANCE) {
+      throw new SignatureVerificationException("Timestamp outside the tolerance zone", sigHeader);
+    }
+  }
+
+  /**
+   * Streams the payload for the fields in {@link StripeEventSummary}, skipping everything else.
+   * Stripe writes {@code type} after {@code data}, so unhandled events are usually only recognised
+   * at the end, but nothing beyond the summary fields is materialized along the way.
+   *
+   * @param payload The raw request body
+   * @return The event summary, or empty if the event type is not handled
+   * @throws IOException If the payload is not valid JSON
+   */
+  static Optional<StripeEventSummary> summarize(byte[] payload) throws IOException {
+    Set<String> handledTypes = StripeEventProcessor.HANDLED_TYPES;
+    StripeEventSummary summary = new StripeEventSummary();
+    try (JsonParser parser = JSON_FACTORY.createParser(payload)) {
+      expect(parser, JsonToken.START_OBJECT);
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.currentName();
+        parser.nextToken();
+        switch (field) {
+          case "id" -> summary.setId(parser.getValueAsString());
+          case "created" -> summary.setCreated(parser.getValueAsLong());
+          case "data" -> readData(parser, summary);
+          case "type" -> {
+            if (!handledTypes.contains(parser.getValueAsString())) {
+              return Optional.empty();
+            }
+            summary.setType(parser.getValueAsString());
+          }
+          default -> parser.skipChildren();
+        }
+      }
+    }
+    return summary.getType() != null ? Optional.of(summary) : Optional.empty();
+  }
+
+  /**
+   * Reads the summary fields of an event fetched from the Stripe API, e.g. by {@link
+   * StripeEventSyncTask}, rather than delivered to the webhook.
+   *
+   * @param event The event
+   * @return The event summary
+   * @throws IOException If the event's data object is not valid JSON
+   */
+  static StripeEventSummary summarize(Event event) throws IOException {
+    StripeEventSummary summary =
+        StripeEventSummary.builder()
+            .id(event.getId())
+            .type(event.getType())
+            .created(event.getCreated())
+            .build();
+    try (JsonParser parser =
+        JSON_FACTORY.createParser(event.getDataObjectDeserializer().getRawJson())) {
+      expect(parser, JsonToken.START_OBJECT);
+      readObject(parser, summary);
+    }
+    return summary;
+  }
+
+  private static void readData(JsonParser parser, StripeEventSummary summary) throws IOException {
+    if (parser.currentToken() != JsonToken.START_OBJECT) {
+      parser.skipChildren();
+      return;
+    }
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.currentName();
+      parser.nextToken();
+      if ("object".equals(field) && parser.currentToken() == JsonToken.START_OBJECT) {
+        readObject(parser, summary);
+      } else {
+        parser.skipChildren();
+      }
+    }
+  }
+
+  private static void readObject(JsonParser parser, StripeEventSummary summary) throws IOException {
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.currentName();
+      JsonToken value = parser.nextToken();
+      switch (field) {
+        case "id" -> summary.setObjectId(parser.getValueAsString());
+        case "amount_total" -> summary.setAmountTotal(longOrNull(parser, value));
+        case "balance" -> summary.setBalance(longOrNull(parser, value));
+        case "metadata" -> summary.setMetadata(readMetadata(parser));
+        default -> parser.skipChildren();
+      }
+    }
+  }
+
+  private static Map<String, String> readMetadata(JsonParser parser) throws IOException {
+    if (parser.currentToken() != JsonToken.START_OBJECT) {
+      parser.skipChildren();
+      return null;
+    }
+    Map<String, String> metadata = new HashMap<>();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String key = parser.currentName();
+      parser.nextToken();
+      metadata.put(key, parser.getValueAsString());
+      parser.skipChildren();
+    }
+    return metadata;
+  }
+
+  private static Long longOrNull(JsonParser parser, JsonToken value) throws IOException {
+    return value == JsonToken.VALUE_NUMBER_INT ? parser.getLongValue() : null;
+  }
+
+  private static void expect(JsonParser parser, JsonToken token) throws IOException {
+    if (parser.nextToken() != token) {
+      throw new IOException("Expected " + token + " in Stripe webhook payload");
+    }
+  }
+}
@@ -0,0 +1,37 @@
+package com.tollbooth.stripe;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.tollbooth.dto.Copyable;
+import com.tollbooth.dto.Identifiable;
+import java.time.Instant;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+/** The point an incremental sync from Stripe has reached. */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode(exclude = {"updatedAt"})
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties({"updatedAt"})
+public class SyncCursor implements Identifiable<String>, Copyable<SyncCursor> {
+
+  private String name;
+  private Instant cursorAt;
+  private Instant updatedAt;
+
+  @Override
+  public String getId() {
+    return name;
+  }
+
+  @Override
+  public SyncCursor deepCopy() {
+    return this.toBuilder().build();
+  }
+}
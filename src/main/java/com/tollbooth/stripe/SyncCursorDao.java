@@ -0,0 +1,71 @@
+package com.tollbooth.stripe;
+
+import com.tollbooth.persistence.AbstractCrudDao;
+import com.tollbooth.query.CompiledStatement;
+import com.tollbooth.query.Dao;
+import com.tollbooth.query.Parameters;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.stereotype.Component;
+
+@Component
+@Dao
+public class SyncCursorDao extends AbstractCrudDao<SyncCursor, String> {
+
+  private final Supplier<CompiledStatement> upsert =
+      compiled(
+          () ->
+              insert()
+                  .onConflict("name")
+                  .doUpdate("cursor_at = EXCLUDED.cursor_at, updated_at = EXCLUDED.updated_at"));
+
+  @Override
+  protected String tableName() {
+    return "sync_cursor";
+  }
+
+  @Override
+  protected String tableAlias() {
+    return null;
+  }
+
+  @Override
+  protected String selectColumns() {
+    return "name, cursor_at, updated_at";
+  }
+
+  @Override
+  protected List<Pair<String, String>> updateCols() {
+    return List.of(Pair.of("cursor_at", ":cursorAt"), Pair.of("updated_at", ":updatedAt"));
+  }
+
+  @Override
+  protected List<Pair<String, String>> insertCols() {
+    return List.of(
+        Pair.of("name", ":name"),
+        Pair.of("cursor_at", ":cursorAt"),
+        Pair.of("updated_at", ":updatedAt"));
+  }
+
+  @Override
+  protected Pair<String, Map<String, Object>> keyCondition(String key) {
+    return Pair.of("name = :name", Map.of("name", key));
+  }
+
+  @Override
+  protected Pair<String, Map<String, Object>> keysCondition(Collection<String> keys) {
+    return Pair.of("name = ANY(:names)", Map.of("names", Parameters.array("text", keys)));
+  }
+
+  /**
+   * Records the cursor, replacing its previous position.
+   *
+   * @param cursor The cursor
+   */
+  public void upsert(SyncCursor cursor) {
+    upsert.get().update(new Parameters(cursor));
+  }
+}
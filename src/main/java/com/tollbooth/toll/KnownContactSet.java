@@ -0,0 +1,345 @@
+package com.tollbooth.toll;
+
+import com.tollbooth.config.TollProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * A persistent set of 64-bit address fingerprints for senders the user is known to have
+ * corresponded with. The set lives in a memory-mapped file laid out as a fixed header, a bloom
+ * filter and an open-addressing (linear probing) table of fingerprints, so it is available
+ * immediately on startup without rebuilding it from Gmail and costs next to nothing on the heap.
+ *
+ * <p>The set is append-only: fingerprints are written straight into the mapped table and are never
+ * removed. The table is grown in place when it becomes too full, and {@link #compact()}
+ * periodically rewrites it at a lower load factor and flushes it to disk. Lookups consult the bloom
+ * filter first so that unknown senders are usually rejected without probing the table, and never
+ * allocate.
+ */
+@Component
+public class KnownContactSet {
+
+  private static final Logger logger = LogManager.getLogger(KnownContactSet.class);
+
+  private static final long MAGIC = 0x544F4C4C4B4E4F57L; // "TOLLKNOW"
+  private static final int VERSION = 1;
+
+  private static final int HEADER_BYTES = 64;
+  private static final int MAGIC_OFFSET = 0;
+  private static final int VERSION_OFFSET = 8;
+  private static final int CAPACITY_OFFSET = 12;
+  private static final int SIZE_OFFSET = 16;
+
+  private static final int MIN_CAPACITY = 1 << 10;
+  private static final int BLOOM_HASHES = 3;
+  private static final double MAX_LOAD_FACTOR = 0.75;
+  private static final double COMPACT_LOAD_FACTOR = 0.5;
+
+  private static final long EMPTY = 0L;
+
+  @Autowired private TollProperties tollProperties;
+
+  private Path path;
+  private volatile Region region;
+
+  @PostConstruct
+  public void open() {
+    path = Paths.get(tollProperties.getKnownContactsPath());
+    long start = System.nanoTime();
+    try {
+      if (path.getParent() != null) {
+        Files.createDirectories(path.getParent());
+      }
+      region = Files.exists(path) ? Region.open(path) : null;
+      if (region == null) {
+        region = Region.create(path, capacityFor(tollProperties.getKnownContactsInitialSize()));
+      }
+      logger.info(
+          "Loaded {} known contact fingerprints from {} in {} ms",
+          region.size(),
+          path,
+          (System.nanoTime() - start) / 1_000_000);
+    } catch (IOException e) {
+      logger.error(
+          "Failed to open known contact set at {}, known sender checks will fall back to Gmail: {}",
+          path,
+          e.getMessage(),
+          e);
+      region = null;
+    }
+  }
+
+  @PreDestroy
+  public synchronized void close() {
+    if (region != null) {
+      region.force();
+    }
+  }
+
+  /**
+   * Checks whether the given address is in the set.
+   *
+   * @param address The email address
+   * @return True if the address has been added, false otherwise (subject to fingerprint collisions)
+   */
+  public boolean contains(String address) {
+    Region current = region;
+    if (current == null || address == null || address.isEmpty()) {
+      return false;
+    }
+    return current.contains(fingerprint(address));
+  }
+
+  /**
+   * Adds the given address to the set. Adding an address that is already present is a no-op.
+   *
+   * @param address The email address
+   */
+  public synchronized void add(String address) {
+    if (region == null || address == null || address.isEmpty()) {
+      return;
+    }
+    long fingerprint = fingerprint(address);
+    if (region.contains(fingerprint)) {
+      return;
+    }
+    try {
+      if (region.size() + 1 > region.capacity() * MAX_LOAD_FACTOR) {
+        rebuild(region.capacity() * 2);
+      }
+      region.insert(fingerprint);
+    } catch (IOException e) {
+      logger.error("Failed to grow known contact set at {}: {}", path, e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Returns the number of fingerprints in the set.
+   *
+   * @return The size
+   */
+  public int size() {
+    Region current = region;
+    return current == null ? 0 : current.size();
+  }
+
+  /**
+   * Periodically flushes the mapped file and, if the table has grown past the compaction load
+   * factor, rewrites it into a larger table so probe sequences stay short.
+   */
+  @Scheduled(
+      fixedDelayString = "${toll.known-contacts-compaction-interval-ms:300000}",
+      initialDelayString = "${toll.known-contacts-compaction-interval-ms:300000}")
+  public synchronized void compact() {
+    if (region == null) {
+      return;
+    }
+    try {
+      if (region.size() > region.capacity() * COMPACT_LOAD_FACTOR) {
+        rebuild(capacityFor(region.size()));
+        logger.info(
+            "Compacted known contact set to {} slots ({} fingerprints)",
+            region.capacity(),
+            region.size());
+      } else {
+        region.force();
+      }
+    } catch (IOException e) {
+      logger.error("Failed to compact known contact set at {}: {}", path, e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Rewrites the current contents into a new file with the given capacity and atomically swaps it
+   * into place. Readers holding the old region keep using it until they next read {@link #region}.
+   */
+  private void rebuild(int capacity) throws IOException {
+    Path tmp = path.resolveSibling(path.getFileName() + ".compact");
+    Files.deleteIfExists(tmp);
+    Region rebuilt = Region.create(tmp, capacity);
+    region.copyTo(rebuilt);
+    rebuilt.force();
+    rebuilt.close();
+    Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    Region previous = region;
+    region = Region.open(path);
+    previous.close();
+  }
+
+  /** Return the smallest power-of-two capacity that holds {@code size} entries at half load. */
+  private static int capacityFor(int size) {
+    int capacity = MIN_CAPACITY;
+    while (capacity * COMPACT_LOAD_FACTOR < size) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+  /**
+   * Computes a case-insensitive 64-bit fingerprint of the address without allocating: FNV-1a over
+   * the lower-cased characters, followed by the MurmurHash3 finalizer. Zero marks an empty slot, so
+   * it is remapped.
+   */
+  static long fingerprint(String address) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < address.length(); i++) {
+      hash ^= Character.toLowerCase(address.charAt(i));
+      hash *= 0x100000001b3L;
+    }
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash == EMPTY ? 1L : hash;
+  }
+
+  /** A mapped file holding the header, bloom filter and table. */
+  private static final class Region {
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final long bloomBitMask;
+    private final int bloomOffset;
+    private final int tableOffset;
+
+    private Region(FileChannel channel, MappedByteBuffer buffer, int capacity) {
+      this.channel = channel;
+      this.buffer = buffer;
+      this.capacity = capacity;
+      // Eight bloom bits per table slot, i.e. at least sixteen per entry at the compaction load
+      this.bloomBitMask = (long) capacity * 8 - 1;
+      this.bloomOffset = HEADER_BYTES;
+      this.tableOffset = HEADER_BYTES + capacity;
+    }
+
+    static Region create(Path path, int capacity) throws IOException {
+      FileChannel channel =
+          FileChannel.open(
+              path,
+              StandardOpenOption.CREATE,
+              StandardOpenOption.READ,
+              StandardOpenOption.WRITE,
+              StandardOpenOption.TRUNCATE_EXISTING);
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileBytes(capacity));
+      buffer.putLong(MAGIC_OFFSET, MAGIC);
+      buffer.putInt(VERSION_OFFSET, VERSION);
+      buffer.putInt(CAPACITY_OFFSET, capacity);
+      buffer.putInt(SIZE_OFFSET, 0);
+      return new Region(channel, buffer, capacity);
+    }
+
+    /** Open an existing file, returning null if it is not a valid known contact set. */
+    static Region open(Path path) throws IOException {
+      FileChannel channel =
+          FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      if (channel.size() >= HEADER_BYTES) {
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+        int capacity = header.getInt(CAPACITY_OFFSET);
+        if (header.getLong(MAGIC_OFFSET) == MAGIC
+            && header.getInt(VERSION_OFFSET) == VERSION
+            && Integer.bitCount(capacity) == 1
+            && channel.size() == fileBytes(capacity)) {
+          return new Region(
+              channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()), capacity);
+        }
+      }
+      logger.warn("Known contact set at {} is missing or corrupt, recreating it", path);
+      channel.close();
+      return null;
+    }
+
+    private static long fileBytes(int capacity) {
+      return HEADER_BYTES + (long) capacity + (long) capacity * Long.BYTES;
+    }
+
+    int capacity() {
+      return capacity;
+    }
+
+    int size() {
+      return buffer.getInt(SIZE_OFFSET);
+    }
+
+    boolean contains(long fingerprint) {
+      if (!mightContain(fingerprint)) {
+        return false;
+      }
+      int mask = capacity - 1;
+      for (int slot = (int) fingerprint & mask; ; slot = (slot + 1) & mask) {
+        long value = buffer.getLong(tableOffset + slot * Long.BYTES);
+        if (value == fingerprint) {
+          return true;
+        }
+        if (value == EMPTY) {
+          return false;
+        }
+      }
+    }
+
+    /** Insert a fingerprint known to be absent. The caller guarantees a free slot exists. */
+    void insert(long fingerprint) {
+      int mask = capacity - 1;
+      int slot = (int) fingerprint & mask;
+      while (buffer.getLong(tableOffset + slot * Long.BYTES) != EMPTY) {
+        slot = (slot + 1) & mask;
+      }
+      buffer.putLong(tableOffset + slot * Long.BYTES, fingerprint);
+      for (int i = 0; i < BLOOM_HASHES; i++) {
+        long bit = bloomBit(fingerprint, i);
+        int index = bloomOffset + (int) (bit >>> 6) * Long.BYTES;
+        buffer.putLong(index, buffer.getLong(index) | (1L << (bit & 63)));
+      }
+      buffer.putInt(SIZE_OFFSET, size() + 1);
+    }
+
+    private boolean mightContain(long fingerprint) {
+      for (int i = 0; i < BLOOM_HASHES; i++) {
+        long bit = bloomBit(fingerprint, i);
+        long word = buffer.getLong(bloomOffset + (int) (bit >>> 6) * Long.BYTES);
+        if ((word & (1L << (bit & 63))) == 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /** Kirsch-Mitzenmacher double hashing over the two halves of the fingerprint. */
+    private long bloomBit(long fingerprint, int i) {
+      long h1 = Long.rotateLeft(fingerprint, 21);
+      long h2 = (fingerprint >>> 32) | 1L;
+      return (h1 + i * h2) & bloomBitMask;
+    }
+
+    void copyTo(Region target) {
+      for (int slot = 0; slot < capacity; slot++) {
+        long value = buffer.getLong(tableOffset + slot * Long.BYTES);
+        if (value != EMPTY) {
+          target.insert(value);
+        }
+      }
+    }
+
+    void force() {
+      buffer.force();
+    }
+
+    void close() throws IOException {
+      channel.close();
+    }
+  }
+}
@@ -0,0 +1,154 @@
+package com.tollbooth.toll;
+
+import com.tollbooth.config.TollProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Buffers the records of messages processed without a claim and inserts them behind, in batches, so
+ * that recording them costs the processing thread no database round trip. A batch is written once
+ * it holds {@code toll.processed-batch-size} records or its oldest record is {@code
+ * toll.processed-flush-ms} old, whichever comes first, and whatever is left is written on shutdown.
+ *
+ * <p>A buffered record is lost if the instance dies and the message is processed again when it is
+ * next polled, so only messages whose processing is safe to repeat may be buffered. Records already
+ * present are left as they are. Callers that move a watermark past buffered messages must {@link
+ * #flush()} first.
+ *
+ * <p>Publishes {@code toll.processed.pending} and {@code toll.processed.flush}.
+ */
+@Component
+public class ProcessedEmailBuffer {
+
+  private static final Logger logger = LogManager.getLogger(ProcessedEmailBuffer.class);
+
+  @Autowired private TollEmailMetaDao tollEmailMetaDao;
+
+  @Autowired private TollProperties tollProperties;
+
+  @Autowired private MeterRegistry meterRegistry;
+
+  private final Object lock = new Object();
+
+  // Guarded by lock
+  private List<TollEmailMeta> pending = new ArrayList<>();
+
+  // Serializes flushes, so a failed batch is put back before the next one is taken
+  private final ReentrantLock flushLock = new ReentrantLock();
+
+  private ScheduledExecutorService flusher;
+
+  private Timer flushTimer;
+
+  @PostConstruct
+  public void start() {
+    flusher =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "processed-email-flusher");
+              thread.setDaemon(true);
+              return thread;
+            });
+    flushTimer =
+        Timer.builder("toll.processed.flush")
+            .description("Time spent writing a batch of processed message records")
+            .register(meterRegistry);
+    Gauge.builder("toll.processed.pending", this, ProcessedEmailBuffer::size)
+        .description("Processed message records waiting to be written")
+        .register(meterRegistry);
+  }
+
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    flusher.shutdown();
+    flusher.awaitTermination(30, TimeUnit.SECONDS);
+    flush();
+  }
+
+  /**
+   * Buffers the record of a processed message, to be inserted with the next batch.
+   *
+   * @param processed The record, complete with its processing time
+   */
+  public void record(TollEmailMeta processed) {
+    synchronized (lock) {
+      pending.add(processed);
+      // A flush that finds the buffer already emptied is a no-op, so these need no cancelling. Once
+      // stopped, the shutdown flush writes what is left
+      if (flusher.isShutdown()) {
+        return;
+      }
+      if (pending.size() >= tollProperties.getProcessedBatchSize()) {
+        flusher.execute(this::flushQuietly);
+      } else if (pending.size() == 1) {
+        flusher.schedule(
+            this::flushQuietly, tollProperties.getProcessedFlushMs(), TimeUnit.MILLISECONDS);
+      }
+    }
+  }
+
+  /**
+   * Writes every buffered record, blocking until they are committed. Records that fail to be
+   * written stay buffered.
+   *
+   * @throws RuntimeException If the write fails
+   */
+  public void flush() {
+    flushLock.lock();
+    try {
+      List<TollEmailMeta> batch;
+      synchronized (lock) {
+        batch = pending;
+        pending = new ArrayList<>();
+      }
+      if (batch.isEmpty()) {
+        return;
+      }
+      try {
+        flushTimer.record(() -> tollEmailMetaDao.createAllProcessed(batch));
+        logger.debug("Recorded {} processed messages", batch.size());
+      } catch (RuntimeException e) {
+        synchronized (lock) {
+          batch.addAll(pending);
+          pending = batch;
+        }
+        throw e;
+      }
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  /**
+   * Returns the number of buffered records.
+   *
+   * @return The number of records not yet written
+   */
+  public int size() {
+    synchronized (lock) {
+      return pending.size();
+    }
+  }
+
+  private void flushQuietly() {
+    try {
+      flush();
+    } catch (Exception e) {
+      // Retried once the batch fills or by the poller's flush, whichever comes first
+      logger.error("Error recording processed messages: {}", e.getMessage(), e);
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package com.tollbooth.toll;
+
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.Striped;
+import com.tollbooth.config.TollProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import javax.sql.DataSource;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Serializes toll operations per sender, so e.g. a new message and a top-up release for the same
+ * sender cannot interleave, while different senders proceed in parallel. Locks are striped within
+ * the instance by default; in {@link SenderLockMode#ADVISORY advisory} mode a Postgres advisory
+ * lock on a hash of the sender also excludes other instances.
+ *
+ * <p>The time spent waiting for a lock is published as {@code toll.sender_lock.wait}.
+ */
+@Component
+public class SenderLock {
+
+  private static final Logger logger = LogManager.getLogger(SenderLock.class);
+
+  /** A held lock, released by {@link #close()}. */
+  public interface Held extends AutoCloseable {
+    @Override
+    void close();
+  }
+
+  @Autowired private TollProperties tollProperties;
+
+  @Autowired private DataSource dataSource;
+
+  @Autowired private MeterRegistry meterRegistry;
+
+  private Striped<Lock> stripes;
+
+  private Timer waitTimer;
+
+  @PostConstruct
+  public void init() {
+    stripes = Striped.lock(tollProperties.getSenderLockStripes());
+    waitTimer =
+        Timer.builder("toll.sender_lock.wait")
+            .description("Time spent waiting for a per-sender toll lock")
+            .tag("mode", tollProperties.getSenderLockMode().name())
+            .register(meterRegistry);
+  }
+
+  /**
+   * Blocks until the sender's lock is free and takes it. In advisory mode a pooled connection is
+   * held until the lock is released.
+   *
+   * @param senderKey Identifies the sender, e.g. their Stripe customer ID
+   * @return The held lock
+   * @throws SQLException If the advisory lock cannot be taken
+   */
+  public Held acquire(String senderKey) throws SQLException {
+    long start = System.nanoTime();
+    Held held =
+        tollProperties.getSenderLockMode() == SenderLockMode.ADVISORY
+            ? acquireAdvisory(senderKey)
+            : acquireLocal(senderKey);
+    waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    return held;
+  }
+
+  private Held acquireLocal(String senderKey) {
+    Lock lock = stripes.get(senderKey);
+    lock.lock();
+    return lock::unlock;
+  }
+
+  // Session-level rather than transaction-level, so the lock does not pull the work it guards into
+  // one transaction; it lives on a connection of its own until released
+  private Held acquireAdvisory(String senderKey) throws SQLException {
+    long key = Hashing.murmur3_128().hashString(senderKey, StandardCharsets.UTF_8).asLong();
+    Connection connection = dataSource.getConnection();
+    try {
+      execute(connection, "SELECT pg_advisory_lock(?)", key);
+    } catch (SQLException e) {
+      connection.close();
+      throw e;
+    }
+    return () -> {
+      try (connection) {
+        execute(connection, "SELECT pg_advisory_unlock(?)", key);
+      } catch (SQLException e) {
+        // The unlock only fails on a broken connection, whose session and lock are gone with it
+        logger.warn("Failed to release advisory lock for sender {}: {}", senderKey, e.getMessage());
+      }
+    };
+  }
+
+  private static void execute(Connection connection, String sql, long key) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+      statement.setLong(1, key);
+      statement.execute();
+    }
+  }
+}
@@ -0,0 +1,11 @@
+package com.tollbooth.toll;
+
+public enum SenderLockMode {
+  /** Toll operations are serialized per sender within this instance only. */
+  LOCAL,
+  /**
+   * Toll operations are serialized per sender across every instance sharing the database, using a
+   * Postgres advisory lock.
+   */
+  ADVISORY
+}
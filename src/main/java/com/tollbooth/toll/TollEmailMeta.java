@@ -4,6 +4,7 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.tollbooth.dto.Copyable;
 import com.tollbooth.dto.Identifiable;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.UUID;
 import lombok.AllArgsConstructor;
@@ -26,8 +27,21 @@ public class TollEmailMeta implements Identifiable<UUID>, Copyable<TollEmailMeta
   private String senderEmail;
   private boolean tollPaid;
   private String stripeCustomerId;
+  private Instant processedAt;
+  private Instant receivedAt;
   private Instant createdAt;
 
+  /**
+   * Derives the record ID for a Gmail message. The ID is stable across retries, so it can key
+   * idempotent Stripe operations for the message.
+   *
+   * @param gmailId The Gmail message ID
+   * @return The record ID
+   */
+  public static UUID idFor(String gmailId) {
+    return UUID.nameUUIDFromBytes(("toll:" + gmailId).getBytes(StandardCharsets.UTF_8));
+  }
+
   @Override
   public TollEmailMeta deepCopy() {
     return this.toBuilder().build();
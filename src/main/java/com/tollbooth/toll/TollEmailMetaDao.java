@@ -1,20 +1,104 @@
 package com.tollbooth.toll;
 
 import com.tollbooth.persistence.AbstractCrudDao;
-import com.tollbooth.query.AbstractRowMapper;
+import com.tollbooth.query.CompiledStatement;
 import com.tollbooth.query.Dao;
+import com.tollbooth.query.Parameters;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 import org.apache.commons.lang3.tuple.Pair;
-import org.springframework.jdbc.core.RowMapper;
-import org.springframework.jdbc.support.rowset.SqlRowSet;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.postgresql.PGConnection;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.stereotype.Component;
 
 @Component
 @Dao
 public class TollEmailMetaDao extends AbstractCrudDao<TollEmailMeta, UUID> {
 
+  private static final Logger logger = LogManager.getLogger(TollEmailMetaDao.class);
+
+  // Raised for a row that no partition accepts, as well as for failed CHECK constraints, of which
+  // toll_email_meta has none
+  private static final String NO_PARTITION_SQL_STATE = "23514";
+
+  private static final String FIND_PARTITIONS =
+      "SELECT c.relname AS name, pg_get_expr(c.relpartbound, c.oid) AS bound,"
+          + " i.inhdetachpending AS detach_pending\n"
+          + "FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid\n"
+          + "WHERE i.inhparent = to_regclass(:table)";
+
+  private static final Pattern UPPER_BOUND = Pattern.compile("TO \\('([^']+)'\\)");
+
+  private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+
+  // Run for every polled message, so compiled once
+
+  private final Supplier<CompiledStatement> claim =
+      compiled(
+          () ->
+              insert()
+                  .onConflict("gmail_id, received_at")
+                  .doUpdate(
+                      "sender_email = EXCLUDED.sender_email, created_at = EXCLUDED.created_at")
+                  .where("toll_email_meta.processed_at IS NULL")
+                  .and("toll_email_meta.created_at < :staleBefore")
+                  .returning("id, (xmax = 0) AS inserted"));
+
+  private final Supplier<CompiledStatement> release =
+      compiled(
+          () ->
+              deleteFrom(tableName())
+                  .where("gmail_id = :gmailId")
+                  .and("received_at = :receivedAt")
+                  .and("processed_at IS NULL"));
+
+  private final Supplier<CompiledStatement> markProcessed =
+      compiled(
+          () ->
+              update(tableName())
+                  .set(
+                      "stripe_customer_id = :stripeCustomerId, toll_paid = :tollPaid,"
+                          + " processed_at = :processedAt")
+                  .where("gmail_id = :gmailId")
+                  .and("received_at = :receivedAt"));
+
+  private final Supplier<CompiledStatement> findByGmailId =
+      compiled(() -> select(selectColumns()).from(tableName()).where("gmail_id = :gmailId"));
+
+  private final Supplier<CompiledStatement> findByGmailIdReceivedAt =
+      compiled(
+          () ->
+              select(selectColumns())
+                  .from(tableName())
+                  .where("gmail_id = :gmailId")
+                  .and("received_at = :receivedAt"));
+
+  private final Supplier<CompiledStatement> findByGmailIds =
+      compiled(() -> select(selectColumns()).from(tableName()).where("gmail_id = ANY(:gmailIds)"));
+
   @Override
   protected String tableName() {
     return "toll_email_meta";
@@ -27,26 +111,8 @@ public class TollEmailMetaDao extends AbstractCrudDao<TollEmailMeta, UUID> {
 
   @Override
   protected String selectColumns() {
-    return "id, gmail_id, sender_email, toll_paid, stripe_customer_id, created_at";
-  }
-
-  @Override
-  protected RowMapper<TollEmailMeta> rowMapper() {
-    return new Mapper();
-  }
-
-  static class Mapper extends AbstractRowMapper<TollEmailMeta> {
-    @Override
-    public TollEmailMeta mapRow(SqlRowSet rs) {
-      return TollEmailMeta.builder()
-          .id(getUuid(rs, "id"))
-          .gmailId(rs.getString("gmail_id"))
-          .senderEmail(rs.getString("sender_email"))
-          .tollPaid(rs.getBoolean("toll_paid"))
-          .stripeCustomerId(rs.getString("stripe_customer_id"))
-          .createdAt(getInstant(rs, "created_at"))
-          .build();
-    }
+    return "id, gmail_id, sender_email, toll_paid, stripe_customer_id, processed_at, received_at,"
+        + " created_at";
   }
 
   @Override
@@ -56,6 +122,8 @@ public class TollEmailMetaDao extends AbstractCrudDao<TollEmailMeta, UUID> {
         Pair.of("sender_email", ":senderEmail"),
         Pair.of("toll_paid", ":tollPaid"),
         Pair.of("stripe_customer_id", ":stripeCustomerId"),
+        Pair.of("processed_at", ":processedAt"),
+        Pair.of("received_at", ":receivedAt"),
         Pair.of("created_at", ":createdAt"));
   }
 
@@ -67,37 +135,382 @@ public class TollEmailMetaDao extends AbstractCrudDao<TollEmailMeta, UUID> {
         Pair.of("sender_email", ":senderEmail"),
         Pair.of("toll_paid", ":tollPaid"),
         Pair.of("stripe_customer_id", ":stripeCustomerId"),
+        Pair.of("processed_at", ":processedAt"),
+        Pair.of("received_at", ":receivedAt"),
         Pair.of("created_at", ":createdAt"));
   }
 
+  @Override
+  protected Map<String, Function<TollEmailMeta, ?>> cacheIndexes() {
+    return Map.of("gmailId", TollEmailMeta::getGmailId);
+  }
+
+  /**
+   * Claims a message for processing by inserting its record, which doubles as the check whether it
+   * was already processed. A claim that was never finished, e.g. because its worker died, can be
+   * taken over once it is older than {@code staleBefore}. The record's receipt time picks its
+   * partition, so the check only looks at one month. A message received outside every partition,
+   * e.g. while partition maintenance has been failing for months, is logged and not claimed, so it
+   * is skipped rather than retried until it is dead-lettered.
+   *
+   * @param meta The unprocessed record to insert, with the message's receipt time
+   * @param staleBefore Unfinished claims made before this are taken over
+   * @return True if the message was claimed, false if it is processed or claimed by another worker
+   */
+  public boolean claim(TollEmailMeta meta, Instant staleBefore) {
+    Optional<Boolean> inserted;
+    try {
+      inserted =
+          claim
+              .get()
+              .queryForSingle(
+                  new Parameters(meta).add("staleBefore", staleBefore),
+                  (rs, rowNum) -> rs.getBoolean("inserted"));
+    } catch (DuplicateKeyException e) {
+      // Recorded before partitioning, under its claim time rather than its receipt time
+      return false;
+    } catch (DataIntegrityViolationException e) {
+      if (!isNoPartition(e)) {
+        throw e;
+      }
+      logger.error(
+          "No toll_email_meta partition for message {} received at {}, skipping it",
+          meta.getGmailId(),
+          meta.getReceivedAt());
+      return false;
+    }
+    // A fresh insert leaves nothing stale, since absent records are never cached; only a stale
+    // claim that was taken over may be cached elsewhere
+    if (inserted.isPresent() && !inserted.get()) {
+      invalidateBy("gmailId", List.of(meta.getGmailId()));
+    }
+    return inserted.isPresent();
+  }
+
+  /**
+   * Gives up a claim whose processing failed, so the message can be claimed again by a retry.
+   *
+   * @param gmailId The Gmail message ID
+   * @param receivedAt When Gmail received the message, as claimed
+   */
+  public void release(String gmailId, Instant receivedAt) {
+    release.get().update(new Parameters("gmailId", gmailId, "receivedAt", receivedAt));
+    invalidateBy("gmailId", List.of(gmailId));
+  }
+
   /**
-   * Checks if an email has already been processed by looking up its Gmail ID.
+   * Finishes a claim, recording how the message was processed.
+   *
+   * @param gmailId The Gmail message ID
+   * @param receivedAt When Gmail received the message, as claimed
+   * @param stripeCustomerId The sender's Stripe customer ID (may be null)
+   * @param tollPaid Whether the toll was paid
+   * @param processedAt When processing finished
+   */
+  public void markProcessed(
+      String gmailId,
+      Instant receivedAt,
+      String stripeCustomerId,
+      boolean tollPaid,
+      Instant processedAt) {
+    markProcessed
+        .get()
+        .update(
+            new Parameters("gmailId", gmailId, "tollPaid", tollPaid, "processedAt", processedAt)
+                .add("receivedAt", receivedAt)
+                .add("stripeCustomerId", stripeCustomerId));
+    invalidateBy("gmailId", List.of(gmailId));
+  }
+
+  /**
+   * Inserts the records of messages processed without a claim in JDBC batches, skipping those
+   * already recorded. A batch holding a message received outside every partition is inserted one
+   * record at a time instead, and that message is logged and left unrecorded, as {@link
+   * #claim(TollEmailMeta, Instant)} leaves it unclaimed.
+   *
+   * @param processed The processed records
+   */
+  public void createAllProcessed(List<TollEmailMeta> processed) {
+    try {
+      createAllIfAbsent(processed);
+    } catch (DataIntegrityViolationException e) {
+      if (!isNoPartition(e)) {
+        throw e;
+      }
+      for (TollEmailMeta meta : processed) {
+        try {
+          createIfAbsent(meta);
+        } catch (DataIntegrityViolationException rowException) {
+          if (!isNoPartition(rowException)) {
+            throw rowException;
+          }
+          logger.error(
+              "No toll_email_meta partition for message {} received at {}, not recording it",
+              meta.getGmailId(),
+              meta.getReceivedAt());
+        }
+      }
+    }
+  }
+
+  /**
+   * Checks if an email has already been processed, or claimed for processing, by looking up its
+   * Gmail ID. Read-only, unlike {@link #claim(TollEmailMeta, Instant)}, and so meant for dry runs,
+   * which claim nothing; like {@link #findByGmailId(String)} it looks in every partition.
    *
    * @param gmailId The Gmail message ID
    * @return True if the email has been processed, false otherwise
    */
   public boolean isEmailAlreadyProcessed(String gmailId) {
-    Optional<TollEmailMeta> existing =
-        select(selectColumns())
-            .from(tableName())
-            .where("gmail_id = :gmailId")
-            .parameters("gmailId", gmailId)
-            .queryForSingle(rowMapper());
-
-    return existing.isPresent();
+    return findByGmailId(gmailId).isPresent();
   }
 
   /**
-   * Finds an email meta record by Gmail ID.
+   * Finds an email meta record by Gmail ID. Without the receipt time every partition is probed, so
+   * lookups on the toll path use {@link #findByGmailId(String, Instant)} instead.
    *
    * @param gmailId The Gmail message ID
    * @return Optional of TollEmailMeta if found
    */
   public Optional<TollEmailMeta> findByGmailId(String gmailId) {
+    return findCached(
+        "gmailId",
+        gmailId,
+        () -> findByGmailId.get().queryForSingle(new Parameters("gmailId", gmailId), rowMapper()));
+  }
+
+  /**
+   * Finds an email meta record by Gmail ID in the partition for the message's receipt time only.
+   * Records from before partitioning are kept under their claim time and are not found this way.
+   *
+   * @param gmailId The Gmail message ID
+   * @param receivedAt When Gmail received the message
+   * @return Optional of TollEmailMeta if found
+   */
+  public Optional<TollEmailMeta> findByGmailId(String gmailId, Instant receivedAt) {
+    return findCached(
+        "gmailId",
+        gmailId,
+        () ->
+            findByGmailIdReceivedAt
+                .get()
+                .queryForSingle(
+                    new Parameters("gmailId", gmailId, "receivedAt", receivedAt), rowMapper()));
+  }
+
+  /**
+   * Finds the records of the given Gmail messages in a single query. Looks in every partition, as
+   * {@link #findByGmailId(String)} does.
+   *
+   * @param gmailIds The Gmail message IDs
+   * @return The records found, in no particular order
+   */
+  public List<TollEmailMeta> findByGmailIds(Collection<String> gmailIds) {
+    if (gmailIds.isEmpty()) {
+      return List.of();
+    }
+    return findByGmailIds
+        .get()
+        .queryForList(new Parameters("gmailIds", Parameters.array("text", gmailIds)), rowMapper());
+  }
+
+  /**
+   * Finds the customer's messages that are held awaiting a toll, oldest first. A message stays held
+   * until its sender tops up, however long that takes, so the lookup cannot be bounded by receipt
+   * time and probes every partition; each answers from its partial index over held messages alone.
+   *
+   * @param stripeCustomerId The sender's Stripe customer ID
+   * @return The unpaid email meta records
+   */
+  public List<TollEmailMeta> findUnpaidByCustomer(String stripeCustomerId) {
+    return select(selectColumns())
+        .from(tableName())
+        .where("stripe_customer_id = :stripeCustomerId")
+        .and("NOT toll_paid")
+        .orderBy("created_at")
+        .parameters("stripeCustomerId", stripeCustomerId)
+        .queryForList(rowMapper());
+  }
+
+  /**
+   * Marks the given email meta records as paid in a single statement, touching only the partitions
+   * spanned by their receipt times.
+   *
+   * @param paid The records, with their IDs and receipt times
+   */
+  public void markPaid(Collection<TollEmailMeta> paid) {
+    if (paid.isEmpty()) {
+      return;
+    }
+    List<UUID> ids = paid.stream().map(TollEmailMeta::getId).toList();
+    update(tableName())
+        .set("toll_paid = TRUE")
+        .where("id = ANY(:ids)")
+        .and("received_at BETWEEN :receivedFrom AND :receivedTo")
+        .parameters(
+            "ids",
+            Parameters.array("uuid", ids),
+            "receivedFrom",
+            paid.stream().map(TollEmailMeta::getReceivedAt).min(Instant::compareTo).get(),
+            "receivedTo",
+            paid.stream().map(TollEmailMeta::getReceivedAt).max(Instant::compareTo).get())
+        .run();
+    invalidate(ids);
+  }
+
+  /**
+   * Returns which of the given customers have messages held for an unpaid toll.
+   *
+   * @param stripeCustomerIds The Stripe customer IDs to look up
+   * @return The subset of customer IDs with unpaid messages
+   */
+  public Set<String> findCustomersWithUnpaid(Collection<String> stripeCustomerIds) {
+    if (stripeCustomerIds.isEmpty()) {
+      return Set.of();
+    }
+    return new HashSet<>(
+        select("DISTINCT stripe_customer_id")
+            .from(tableName())
+            .where("stripe_customer_id = ANY(:stripeCustomerIds)")
+            .and("NOT toll_paid")
+            .parameters("stripeCustomerIds", Parameters.array("text", stripeCustomerIds))
+            .queryForList((rs, rowNum) -> rs.getString("stripe_customer_id")));
+  }
+
+  /**
+   * Returns a page of records in creation order, paged by keyset so that later pages cost no more
+   * than the first.
+   *
+   * @param after The last record of the previous page, or null for the first page
+   * @param limit The page size
+   * @return The records created after {@code after}, oldest first
+   */
+  public List<TollEmailMeta> findPage(TollEmailMeta after, int limit) {
+    var select = select(selectColumns()).from(tableName());
+    if (after == null) {
+      select.after("created_at, id");
+    } else {
+      select.after("created_at, id", after.getCreatedAt(), after.getId());
+    }
+    return select.limit(limit).queryForList(rowMapper());
+  }
+
+  /**
+   * Streams the records created before the given time, oldest first, without loading them all into
+   * memory. The stream must be closed.
+   *
+   * @param createdBefore The cutoff
+   * @return The records
+   */
+  public Stream<TollEmailMeta> streamCreatedBefore(Instant createdBefore) {
     return select(selectColumns())
         .from(tableName())
-        .where("gmail_id = :gmailId")
-        .parameters("gmailId", gmailId)
-        .queryForSingle(rowMapper());
+        .where("created_at < :createdBefore")
+        .orderBy("created_at, id")
+        .parameters("createdBefore", createdBefore)
+        .queryForStream(rowMapper());
+  }
+
+  /**
+   * Lists the table's partitions.
+   *
+   * @return The partitions, in no particular order
+   */
+  public List<TollEmailMetaPartition> findPartitions() {
+    return jdbcTemplate.query(
+        FIND_PARTITIONS,
+        new Parameters("table", tableName()),
+        (rs, rowNum) ->
+            TollEmailMetaPartition.builder()
+                .name(rs.getString("name"))
+                .receivedBefore(upperBound(rs.getString("bound")))
+                .detachPending(rs.getBoolean("detach_pending"))
+                .build());
+  }
+
+  /**
+   * Creates the partition for the records received from {@code from} until {@code to}, unless it
+   * exists. It is named after the month it starts in.
+   *
+   * @param from The inclusive lower bound on receipt times
+   * @param to The exclusive upper bound on receipt times
+   */
+  public void createPartition(LocalDate from, LocalDate to) {
+    String name = tableName() + "_" + from.format(PARTITION_SUFFIX);
+    jdbcTemplate
+        .getJdbcOperations()
+        .execute(
+            String.format(
+                "CREATE TABLE IF NOT EXISTS %s PARTITION OF %s FOR VALUES FROM ('%s') TO ('%s')",
+                name, tableName(), from, to));
+  }
+
+  /**
+   * Returns whether a partition holds messages waiting for their sender to top up, which are lost
+   * if it is dropped.
+   *
+   * @param partition The partition name
+   * @return True if it holds unpaid messages with a sender customer
+   */
+  public boolean hasHeldMessages(String partition) {
+    return Boolean.TRUE.equals(
+        jdbcTemplate
+            .getJdbcOperations()
+            .queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM "
+                    + partition
+                    + " WHERE NOT toll_paid AND stripe_customer_id IS NOT NULL)",
+                Boolean.class));
+  }
+
+  /**
+   * Writes a partition's records to the given stream as CSV with a header row.
+   *
+   * @param partition The partition name
+   * @param out The stream to write to
+   * @return The number of records written
+   */
+  public long exportPartition(String partition, OutputStream out) {
+    String copy = "COPY " + partition + " TO STDOUT WITH (FORMAT csv, HEADER)";
+    return jdbcTemplate
+        .getJdbcOperations()
+        .execute(
+            (ConnectionCallback<Long>)
+                connection -> {
+                  try {
+                    return connection.unwrap(PGConnection.class).getCopyAPI().copyOut(copy, out);
+                  } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                  }
+                });
+  }
+
+  /**
+   * Detaches a partition from the table and drops it. The detach runs concurrently, so neither
+   * reads nor writes of the table wait on it; one that was interrupted is finalized instead.
+   *
+   * @param partition The partition
+   */
+  public void dropPartition(TollEmailMetaPartition partition) {
+    jdbcTemplate
+        .getJdbcOperations()
+        .execute(
+            String.format(
+                "ALTER TABLE %s DETACH PARTITION %s %s",
+                tableName(),
+                partition.getName(),
+                partition.isDetachPending() ? "FINALIZE" : "CONCURRENTLY"));
+    jdbcTemplate.getJdbcOperations().execute("DROP TABLE " + partition.getName());
+  }
+
+  // E.g. "FOR VALUES FROM ('2026-01-01 00:00:00') TO ('2026-02-01 00:00:00')"
+  private static LocalDateTime upperBound(String bound) {
+    Matcher matcher = UPPER_BOUND.matcher(bound);
+    return matcher.find() ? Timestamp.valueOf(matcher.group(1)).toLocalDateTime() : null;
+  }
+
+  private static boolean isNoPartition(DataIntegrityViolationException e) {
+    return e.getMostSpecificCause() instanceof SQLException sqlException
+        && NO_PARTITION_SQL_STATE.equals(sqlException.getSQLState());
   }
 }
@@ -0,0 +1,23 @@
+package com.tollbooth.toll;
+
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** A monthly partition of {@code toll_email_meta}, as listed by {@link TollEmailMetaDao}. */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class TollEmailMetaPartition {
+
+  private String name;
+
+  /** The exclusive upper bound on the receipt times of its records. */
+  private LocalDateTime receivedBefore;
+
+  /** Whether a concurrent detach was interrupted, leaving it to be finalized. */
+  private boolean detachPending;
+}
@@ -0,0 +1,122 @@
+package com.tollbooth.toll;
+
+import com.tollbooth.config.TollProperties;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.GZIPOutputStream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the monthly partitions of {@code toll_email_meta} ahead of the messages being received, and
+ * drops those past retention. Retention is counted in whole months after a partition's last month,
+ * and a partition still holding messages that wait for their sender to top up is kept until they
+ * are paid. With an archive directory set, each partition is exported to a gzipped CSV file there
+ * before it is dropped.
+ */
+@Component
+public class TollEmailMetaPartitionTask {
+
+  private static final Logger logger = LogManager.getLogger(TollEmailMetaPartitionTask.class);
+
+  @Autowired private TollEmailMetaDao tollEmailMetaDao;
+
+  @Autowired private TollProperties tollProperties;
+
+  /**
+   * Creates the partitions for the coming months, then drops the expired ones. Runs on startup too,
+   * so a partition exists before the first message of its month. Safe to run on several instances
+   * at once: creation is idempotent, and a drop that loses a race fails and is logged.
+   */
+  @Scheduled(fixedDelayString = "${toll.email-meta-partition-interval-ms:3600000}")
+  public void maintainPartitions() {
+    if (tollProperties.isDryRun()) {
+      return;
+    }
+
+    try {
+      List<TollEmailMetaPartition> partitions = tollEmailMetaDao.findPartitions();
+      createAhead(partitions);
+      if (tollProperties.getEmailMetaRetentionMonths() > 0) {
+        dropExpired(partitions);
+      }
+    } catch (Exception e) {
+      logger.error("Unable to maintain toll_email_meta partitions: {}", e.getMessage(), e);
+    }
+  }
+
+  private void createAhead(List<TollEmailMetaPartition> partitions) {
+    LocalDate until =
+        LocalDate.now()
+            .withDayOfMonth(1)
+            .plusMonths(tollProperties.getEmailMetaPartitionsAhead() + 1L);
+    LocalDate from =
+        partitions.stream()
+            .map(TollEmailMetaPartition::getReceivedBefore)
+            .filter(Objects::nonNull)
+            .map(LocalDateTime::toLocalDate)
+            .max(LocalDate::compareTo)
+            .orElse(LocalDate.now().withDayOfMonth(1));
+    while (from.isBefore(until)) {
+      LocalDate to = from.withDayOfMonth(1).plusMonths(1);
+      tollEmailMetaDao.createPartition(from, to);
+      logger.info("Created toll_email_meta partition for {} until {}", from, to);
+      from = to;
+    }
+  }
+
+  private void dropExpired(List<TollEmailMetaPartition> partitions) {
+    LocalDateTime expiredBefore =
+        LocalDate.now()
+            .withDayOfMonth(1)
+            .minusMonths(tollProperties.getEmailMetaRetentionMonths())
+            .atStartOfDay();
+    for (TollEmailMetaPartition partition : partitions) {
+      if (partition.getReceivedBefore() == null
+          || partition.getReceivedBefore().isAfter(expiredBefore)) {
+        continue;
+      }
+      String name = partition.getName();
+      try {
+        if (!partition.isDetachPending() && tollEmailMetaDao.hasHeldMessages(name)) {
+          logger.warn("Keeping expired partition {}: it holds messages awaiting a toll", name);
+          continue;
+        }
+        if (!partition.isDetachPending()) {
+          archive(name);
+        }
+        tollEmailMetaDao.dropPartition(partition);
+        logger.info("Dropped expired toll_email_meta partition {}", name);
+      } catch (Exception e) {
+        logger.error("Error dropping partition {}: {}", name, e.getMessage(), e);
+      }
+    }
+  }
+
+  private void archive(String partition) throws IOException {
+    String archiveDir = tollProperties.getEmailMetaArchiveDir();
+    if (archiveDir == null || archiveDir.isBlank()) {
+      return;
+    }
+    Path dir = Path.of(archiveDir);
+    Files.createDirectories(dir);
+    // Written under a temporary name, so a file with the final name is always complete
+    Path target = dir.resolve(partition + ".csv.gz");
+    Path partial = dir.resolve(partition + ".csv.gz.partial");
+    try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(partial))) {
+      long rows = tollEmailMetaDao.exportPartition(partition, out);
+      logger.info("Archived {} records of partition {} to {}", rows, partition, target);
+    }
+    Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
+  }
+}
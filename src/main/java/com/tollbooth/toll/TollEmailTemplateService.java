@@ -1,8 +1,10 @@
 package com.tollbooth.toll;
 
 import com.tollbooth.config.TollProperties;
+import java.util.List;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.web.util.HtmlUtils;
 
 @Service
 public class TollEmailTemplateService {
@@ -52,6 +54,45 @@ public class TollEmailTemplateService {
     return body;
   }
 
+  /**
+   * Renders the top-up digest for a sender with several held messages. Uses the body template, with
+   * the list of held subjects in place of {@code {heldSubjects}}; the default template lists them
+   * under the payment link.
+   *
+   * @param tollAmount The toll amount per message
+   * @param paymentLink The Stripe payment link
+   * @param senderEmail The sender's email address
+   * @param heldSubjects The subjects of the sender's held messages, oldest first
+   * @return The rendered body (HTML)
+   */
+  public String renderDigestBody(
+      double tollAmount, String paymentLink, String senderEmail, List<String> heldSubjects) {
+    StringBuilder list = new StringBuilder("<ul>");
+    for (String subject : heldSubjects) {
+      list.append("<li>")
+          .append(
+              HtmlUtils.htmlEscape(subject == null || subject.isBlank() ? "(no subject)" : subject))
+          .append("</li>");
+    }
+    list.append("</ul>");
+
+    String body = tollProperties.getEmailBody();
+    if (body == null || body.isEmpty()) {
+      return "<p>A $"
+          + String.format("%.2f", tollAmount)
+          + " fee per message is required to deliver your messages to my inbox.</p>"
+          + "<p><a href=\""
+          + paymentLink
+          + "\">Add funds</a> to deliver "
+          + (heldSubjects.size() == 1
+              ? "this message"
+              : "these " + heldSubjects.size() + " messages")
+          + ":</p>"
+          + list;
+    }
+    return renderBody(tollAmount, paymentLink, senderEmail).replace("{heldSubjects}", list);
+  }
+
   /**
    * Gets the display name for sent emails.
    *
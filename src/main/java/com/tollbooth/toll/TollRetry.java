@@ -0,0 +1,41 @@
+package com.tollbooth.toll;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.tollbooth.dto.Copyable;
+import com.tollbooth.dto.Identifiable;
+import java.time.Instant;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+/** A message whose toll processing failed, waiting to be retried or given up on. */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode(exclude = {"createdAt"})
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties({"createdAt"})
+public class TollRetry implements Identifiable<String>, Copyable<TollRetry> {
+
+  private String gmailId;
+  private TollStage stage;
+  private int attempts;
+  private Instant nextAttemptAt;
+  private String lastError;
+  private Instant deadLetteredAt;
+  private Instant createdAt;
+
+  @Override
+  public String getId() {
+    return gmailId;
+  }
+
+  @Override
+  public TollRetry deepCopy() {
+    return this.toBuilder().build();
+  }
+}
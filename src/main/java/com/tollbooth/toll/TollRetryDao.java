@@ -0,0 +1,170 @@
+package com.tollbooth.toll;
+
+import com.tollbooth.persistence.AbstractCrudDao;
+import com.tollbooth.query.CompiledStatement;
+import com.tollbooth.query.Dao;
+import com.tollbooth.query.Parameters;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.stereotype.Component;
+
+@Component
+@Dao
+public class TollRetryDao extends AbstractCrudDao<TollRetry, String> {
+
+  // Leased like the Stripe event inbox, so a retry whose worker dies is picked up again later
+  private static final String CLAIM_DUE =
+      "UPDATE toll_retry SET attempts = attempts + 1, next_attempt_at = :leaseUntil\n"
+          + "WHERE gmail_id IN (\n"
+          + "  SELECT gmail_id FROM toll_retry\n"
+          + "  WHERE dead_lettered_at IS NULL AND next_attempt_at <= :now\n"
+          + "  ORDER BY next_attempt_at\n"
+          + "  LIMIT :limit\n"
+          + "  FOR UPDATE SKIP LOCKED)\n"
+          + "RETURNING gmail_id, stage, attempts, next_attempt_at, last_error, dead_lettered_at,"
+          + " created_at";
+
+  // A message that fails again keeps its attempt count; attempts are counted when retries are
+  // claimed. A dead-lettered message that fails again, e.g. when the poller sees it, stays dead.
+  private final Supplier<CompiledStatement> recordFailure =
+      compiled(
+          () ->
+              insert()
+                  .onConflict("gmail_id")
+                  .doUpdate("stage = EXCLUDED.stage, last_error = EXCLUDED.last_error")
+                  .returning("attempts"));
+
+  @Override
+  protected String tableName() {
+    return "toll_retry";
+  }
+
+  @Override
+  protected String tableAlias() {
+    return null;
+  }
+
+  @Override
+  protected String selectColumns() {
+    return "gmail_id, stage, attempts, next_attempt_at, last_error, dead_lettered_at, created_at";
+  }
+
+  @Override
+  protected List<Pair<String, String>> updateCols() {
+    return List.of(
+        Pair.of("stage", ":stage"),
+        Pair.of("attempts", ":attempts"),
+        Pair.of("next_attempt_at", ":nextAttemptAt"),
+        Pair.of("last_error", ":lastError"),
+        Pair.of("dead_lettered_at", ":deadLetteredAt"),
+        Pair.of("created_at", ":createdAt"));
+  }
+
+  @Override
+  protected List<Pair<String, String>> insertCols() {
+    return List.of(
+        Pair.of("gmail_id", ":gmailId"),
+        Pair.of("stage", ":stage"),
+        Pair.of("attempts", ":attempts"),
+        Pair.of("next_attempt_at", ":nextAttemptAt"),
+        Pair.of("last_error", ":lastError"),
+        Pair.of("dead_lettered_at", ":deadLetteredAt"),
+        Pair.of("created_at", ":createdAt"));
+  }
+
+  @Override
+  protected Pair<String, Map<String, Object>> keyCondition(String key) {
+    return Pair.of("gmail_id = :gmailId", Map.of("gmailId", key));
+  }
+
+  @Override
+  protected Pair<String, Map<String, Object>> keysCondition(Collection<String> keys) {
+    return Pair.of("gmail_id = ANY(:gmailIds)", Map.of("gmailIds", Parameters.array("text", keys)));
+  }
+
+  /**
+   * Records a failure, queueing the message for its first retry at {@code nextAttemptAt} if it is
+   * not queued already.
+   *
+   * @param retry The message, failure stage and error
+   * @return The number of retries already attempted for the message
+   */
+  public int recordFailure(TollRetry retry) {
+    return recordFailure
+        .get()
+        .queryForSingle(new Parameters(retry), (rs, rowNum) -> rs.getInt("attempts"))
+        .orElseThrow();
+  }
+
+  /**
+   * Claims up to {@code limit} due retries, counting an attempt and leasing each until {@code
+   * leaseUntil}. Retries claimed by another worker are skipped rather than waited on.
+   *
+   * @param limit The maximum number of retries to claim
+   * @param now The current time
+   * @param leaseUntil When the claim lapses if the retry is neither completed nor rescheduled
+   * @return The claimed retries
+   */
+  public List<TollRetry> claimDue(int limit, Instant now, Instant leaseUntil) {
+    return jdbcTemplate.query(
+        CLAIM_DUE,
+        new Parameters("limit", limit, "now", now, "leaseUntil", leaseUntil),
+        rowMapper());
+  }
+
+  /**
+   * Schedules the next retry of a message.
+   *
+   * @param gmailId The Gmail message ID
+   * @param nextAttemptAt When to try again
+   */
+  public void reschedule(String gmailId, Instant nextAttemptAt) {
+    update(tableName())
+        .set("next_attempt_at = :nextAttemptAt")
+        .where("gmail_id = :gmailId")
+        .parameters("gmailId", gmailId, "nextAttemptAt", nextAttemptAt)
+        .run();
+  }
+
+  /**
+   * Gives up on a message; it is not retried again.
+   *
+   * @param gmailId The Gmail message ID
+   * @param deadLetteredAt When the message was given up on
+   */
+  public void markDeadLettered(String gmailId, Instant deadLetteredAt) {
+    update(tableName())
+        .set("dead_lettered_at = :deadLetteredAt")
+        .where("gmail_id = :gmailId")
+        .parameters("gmailId", gmailId, "deadLetteredAt", deadLetteredAt)
+        .run();
+  }
+
+  /**
+   * Counts the messages waiting to be retried.
+   *
+   * @return The queue depth
+   */
+  public int countPending() {
+    return select(selectColumns())
+        .from(tableName())
+        .where("dead_lettered_at IS NULL")
+        .queryForCount();
+  }
+
+  /**
+   * Counts the messages that were given up on.
+   *
+   * @return The number of dead-lettered messages
+   */
+  public int countDeadLettered() {
+    return select(selectColumns())
+        .from(tableName())
+        .where("dead_lettered_at IS NOT NULL")
+        .queryForCount();
+  }
+}
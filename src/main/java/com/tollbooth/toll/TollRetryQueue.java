@@ -0,0 +1,141 @@
+package com.tollbooth.toll;
+
+import com.tollbooth.config.TollProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Queues messages whose toll processing failed for a retry, backed by the {@code toll_retry} table
+ * so failures survive restarts and outlast the poller's lookback window. Retries back off
+ * exponentially with jitter, and a message is dead-lettered once it has used up its attempts.
+ *
+ * <p>Publishes {@code toll.failures} (tagged by stage), {@code toll.retry.pending} and {@code
+ * toll.retry.dead_lettered}.
+ */
+@Component
+public class TollRetryQueue {
+
+  private static final Logger logger = LogManager.getLogger(TollRetryQueue.class);
+
+  private static final Duration BASE_BACKOFF = Duration.ofSeconds(30);
+
+  private static final Duration MAX_BACKOFF = Duration.ofHours(6);
+
+  @Autowired private TollRetryDao tollRetryDao;
+
+  @Autowired private TollProperties tollProperties;
+
+  @Autowired private MeterRegistry meterRegistry;
+
+  @PostConstruct
+  public void registerMetrics() {
+    Gauge.builder("toll.retry.pending", tollRetryDao, TollRetryDao::countPending)
+        .description("Messages waiting for a toll processing retry")
+        .register(meterRegistry);
+    Gauge.builder("toll.retry.dead_lettered", tollRetryDao, TollRetryDao::countDeadLettered)
+        .description("Messages whose toll processing was given up on")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Records a failure and schedules the message's next retry, or dead-letters it once it has used
+   * up its attempts.
+   *
+   * @param messageId The Gmail message ID
+   * @param stage Where processing failed
+   * @param error What went wrong
+   */
+  public void park(String messageId, TollStage stage, String error) {
+    Counter.builder("toll.failures")
+        .description("Toll processing failures")
+        .tag("stage", stage.name())
+        .register(meterRegistry)
+        .increment();
+
+    Instant now = Instant.now();
+    int attempts =
+        tollRetryDao.recordFailure(
+            TollRetry.builder()
+                .gmailId(messageId)
+                .stage(stage)
+                .nextAttemptAt(now.plus(backoff(1)))
+                .lastError(error)
+                .createdAt(now)
+                .build());
+    if (attempts == 0) {
+      logger.info("Parked message {} for retry after failing at {}", messageId, stage);
+    } else if (attempts >= tollProperties.getRetryMaxAttempts()) {
+      logger.error(
+          "Giving up on message {} after {} attempts, last failed at {}: {}",
+          messageId,
+          attempts,
+          stage,
+          error);
+      tollRetryDao.markDeadLettered(messageId, now);
+    } else {
+      Duration backoff = backoff(attempts);
+      logger.warn(
+          "Retry {} of message {} failed at {}; retrying in {}s",
+          attempts,
+          messageId,
+          stage,
+          backoff.toSeconds());
+      tollRetryDao.reschedule(messageId, now.plus(backoff));
+    }
+  }
+
+  /**
+   * Claims the next batch of due retries. Each claim counts as an attempt and is leased, so a retry
+   * that is neither completed nor parked again comes back once the lease runs out.
+   *
+   * @return The claimed retries
+   */
+  public List<TollRetry> claimDue() {
+    Instant now = Instant.now();
+    return tollRetryDao.claimDue(
+        tollProperties.getRetryBatchSize(),
+        now,
+        now.plusSeconds(tollProperties.getRetryLeaseSeconds()));
+  }
+
+  /**
+   * Removes a message that has been processed.
+   *
+   * @param messageId The Gmail message ID
+   */
+  public void complete(String messageId) {
+    tollRetryDao.delete(messageId);
+  }
+
+  /**
+   * Gives up on a claimed message that has used up its attempts without being parked again, e.g.
+   * because processing it keeps being skipped.
+   *
+   * @param messageId The Gmail message ID
+   */
+  public void deadLetter(String messageId) {
+    tollRetryDao.markDeadLettered(messageId, Instant.now());
+  }
+
+  /**
+   * Exponential backoff with jitter, capped at {@link #MAX_BACKOFF}.
+   *
+   * @param attempts The number of attempts made so far
+   * @return The delay before the next attempt
+   */
+  static Duration backoff(int attempts) {
+    long ceiling =
+        Math.min(MAX_BACKOFF.toMillis(), BASE_BACKOFF.toMillis() << Math.min(attempts - 1, 20));
+    return Duration.ofMillis(ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1));
+  }
+}
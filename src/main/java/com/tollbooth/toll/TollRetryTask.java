@@ -0,0 +1,102 @@
+package com.tollbooth.toll;
+
+import com.google.api.services.gmail.Gmail;
+import com.google.api.services.gmail.model.Message;
+import com.tollbooth.config.GmailConfig;
+import com.tollbooth.config.TollProperties;
+import com.tollbooth.gmail.GmailService;
+import com.tollbooth.stripe.StripeCircuitBreaker;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+public class TollRetryTask {
+
+  private static final Logger logger = LogManager.getLogger(TollRetryTask.class);
+
+  @Autowired private TollRetryQueue tollRetryQueue;
+
+  @Autowired private StripeCircuitBreaker stripeCircuitBreaker;
+
+  @Autowired private GmailConfig gmailConfig;
+
+  @Autowired private GmailService gmailService;
+
+  @Autowired private TollService tollService;
+
+  @Autowired private TollProperties tollProperties;
+
+  @Autowired private ProcessedEmailBuffer processedEmailBuffer;
+
+  /**
+   * Reprocesses a batch of messages whose retry is due. Does nothing while the circuit breaker is
+   * open, since most failures are Stripe's; messages that fail again are parked again by {@link
+   * TollService} with a longer backoff.
+   */
+  @Scheduled(fixedDelayString = "${toll.retry-interval-ms:30000}")
+  public void retryParkedMessages() {
+    if (tollProperties.isDryRun() || stripeCircuitBreaker.isOpen()) {
+      return;
+    }
+
+    List<TollRetry> retries;
+    Gmail gmailClient;
+    try {
+      retries = tollRetryQueue.claimDue();
+      if (retries.isEmpty()) {
+        return;
+      }
+      gmailClient = gmailConfig.getGmailClient();
+    } catch (Exception e) {
+      // Claimed retries come back once their lease runs out
+      logger.error("Unable to retry parked messages: {}", e.getMessage(), e);
+      return;
+    }
+
+    logger.info("Retrying {} messages whose toll processing failed", retries.size());
+    List<String> succeeded = new ArrayList<>();
+    for (TollRetry retry : retries) {
+      String messageId = retry.getGmailId();
+      if (retry.getAttempts() > tollProperties.getRetryMaxAttempts()) {
+        logger.error("Giving up on message {} after {} attempts", messageId, retry.getAttempts());
+        tollRetryQueue.deadLetter(messageId);
+        continue;
+      }
+      try {
+        Message fullMessage;
+        try {
+          fullMessage = gmailService.getMessage(gmailClient, messageId);
+        } catch (Exception e) {
+          tollRetryQueue.park(messageId, TollStage.FETCH, e.getMessage());
+          continue;
+        }
+        if (tollService.processEmail(gmailClient, messageId, fullMessage)) {
+          succeeded.add(messageId);
+        }
+      } catch (Exception e) {
+        logger.error("Error retrying message {}: {}", messageId, e.getMessage(), e);
+      }
+    }
+
+    // A retry is only completed once its message is recorded; until then it comes back once its
+    // lease runs out
+    try {
+      processedEmailBuffer.flush();
+    } catch (Exception e) {
+      logger.error("Unable to record retried messages: {}", e.getMessage(), e);
+      return;
+    }
+    for (String messageId : succeeded) {
+      try {
+        tollRetryQueue.complete(messageId);
+      } catch (Exception e) {
+        logger.error("Error completing retry of message {}: {}", messageId, e.getMessage(), e);
+      }
+    }
+  }
+}
@@ -4,9 +4,19 @@ import com.google.api.services.gmail.Gmail;
 import com.google.api.services.gmail.model.Message;
 import com.tollbooth.config.TollProperties;
 import com.tollbooth.gmail.GmailService;
+import com.tollbooth.ledger.LedgerSettlementTask;
+import com.tollbooth.ledger.SenderBalanceLedger;
+import com.tollbooth.ledger.SettlementMode;
+import com.tollbooth.stripe.StripeCircuitBreaker;
 import com.tollbooth.stripe.StripeService;
+import com.tollbooth.validation.ErrorCode;
+import com.tollbooth.validation.Validation;
 import jakarta.annotation.PostConstruct;
+import java.sql.SQLException;
 import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -24,11 +34,23 @@ public class TollService {
 
   @Autowired private StripeService stripeService;
 
+  @Autowired private SenderBalanceLedger senderBalanceLedger;
+
+  @Autowired private LedgerSettlementTask ledgerSettlementTask;
+
+  @Autowired private StripeCircuitBreaker stripeCircuitBreaker;
+
+  @Autowired private TollRetryQueue tollRetryQueue;
+
   @Autowired private TollEmailMetaDao tollEmailMetaDao;
 
   @Autowired private TollProperties tollProperties;
 
-  @Autowired private TollEmailTemplateService emailTemplateService;
+  @Autowired private TopupNoticeDao topupNoticeDao;
+
+  @Autowired private SenderLock senderLock;
+
+  @Autowired private ProcessedEmailBuffer processedEmailBuffer;
 
   @PostConstruct
   public void logDryRunStatus() {
@@ -41,7 +63,7 @@ public class TollService {
 
   /**
    * Processes an email for toll payment. Checks whitelist, balance, and either debits immediately
-   * or creates a top-up link.
+   * or holds the message and queues a top-up notice for the sender.
    *
    * @param gmailClient The Gmail client instance
    * @param messageId The Gmail message ID
@@ -49,22 +71,28 @@ public class TollService {
    * @return True if toll was processed successfully, false otherwise
    */
   public boolean processEmail(Gmail gmailClient, String messageId, Message fullMessage) {
+    TollStage stage = TollStage.LOOKUP;
+    boolean claimed = false;
+    Instant receivedAt = null;
     try {
-      // Check if email has already been processed
-      if (tollEmailMetaDao.isEmailAlreadyProcessed(messageId)) {
-        logger.debug("Email {} already processed, skipping", messageId);
-        return true;
-      }
-
       // Extract sender email
       String senderEmail = gmailService.extractSenderEmail(fullMessage);
+      String senderAddress = gmailService.extractSenderAddress(fullMessage);
       if (senderEmail == null || senderEmail.isEmpty()) {
         logger.warn("Could not extract sender email from message {}, skipping", messageId);
         return false;
       }
+      receivedAt = receivedAt(fullMessage);
+
+      if (tollProperties.isDryRun() && tollEmailMetaDao.isEmailAlreadyProcessed(messageId)) {
+        logger.debug("Email {} already processed, skipping", messageId);
+        return true;
+      }
 
-      // Check if sender is whitelisted
-      if (whitelistService.isSenderWhitelisted(gmailClient, senderEmail, fullMessage)) {
+      // Check if sender is whitelisted. Skipping the toll has no side effects that doing it twice
+      // would repeat, so the message is not claimed: its record is inserted behind unless present
+      if (whitelistService.isSenderWhitelisted(
+          gmailClient, senderEmail, senderAddress, fullMessage)) {
         logger.debug(
             "Sender {} is whitelisted, skipping toll for message {}", senderEmail, messageId);
         if (tollProperties.isDryRun()) {
@@ -74,7 +102,18 @@ public class TollService {
               senderEmail);
           return true;
         }
-        recordEmailProcessed(messageId, senderEmail, null, false);
+        stage = TollStage.RECORD;
+        Instant now = Instant.now();
+        processedEmailBuffer.record(
+            TollEmailMeta.builder()
+                .id(TollEmailMeta.idFor(messageId))
+                .gmailId(messageId)
+                .senderEmail(senderEmail)
+                .tollPaid(false)
+                .processedAt(now)
+                .receivedAt(receivedAt)
+                .createdAt(now)
+                .build());
         return true;
       }
 
@@ -89,30 +128,48 @@ public class TollService {
         return true;
       }
 
+      // Claim the message; the claim fails if it is processed or being processed elsewhere
+      if (!claim(messageId, senderEmail, receivedAt)) {
+        return skipClaimed(messageId, receivedAt);
+      }
+      claimed = true;
+
       // Ensure "Awaiting Toll" label exists
+      stage = TollStage.LABEL;
       String awaitingTollLabelId = gmailService.ensureAwaitingTollLabelExists(gmailClient);
       if (awaitingTollLabelId == null) {
         logger.error("Failed to create Awaiting Toll label, skipping toll processing");
+        releaseClaim(messageId, receivedAt);
+        tollRetryQueue.park(messageId, stage, "Awaiting Toll label unavailable");
+        return false;
+      }
+
+      // Don't burn a thread on Stripe calls that are bound to fail
+      if (parkIfStripeUnavailable(messageId)) {
+        releaseClaim(messageId, receivedAt);
         return false;
       }
 
       // Get or create sender Stripe customer
+      stage = TollStage.CUSTOMER;
       String senderCustomerId = stripeService.getOrCreateSenderCustomer(senderEmail);
 
-      // Check sender balance
-      double tollAmount = tollProperties.getTollAmount();
-      boolean hasSufficientBalance = stripeService.checkSenderBalance(senderCustomerId, tollAmount);
-
-      if (hasSufficientBalance) {
-        // Debit immediately and move email to inbox
-        UUID emailMetaId = UUID.randomUUID();
+      // Serialize with other toll operations for the sender, e.g. a top-up release
+      stage = TollStage.LOCK;
+      try (SenderLock.Held ignored = senderLock.acquire(senderCustomerId)) {
+        // Debit immediately if the sender's local balance covers the toll
+        double tollAmount = tollProperties.getTollAmount();
+        UUID emailMetaId = TollEmailMeta.idFor(messageId);
+        stage = TollStage.DEBIT;
         boolean debitSuccessful =
-            stripeService.debitSenderBalance(senderCustomerId, tollAmount, emailMetaId);
+            senderBalanceLedger.debitIfSufficient(senderCustomerId, tollAmount, emailMetaId);
 
         if (debitSuccessful) {
           // Move email to inbox and label as "Toll Paid"
+          stage = TollStage.GMAIL;
           gmailService.moveAndUnlabelMessage(gmailClient, messageId, awaitingTollLabelId);
-          recordEmailProcessed(messageId, senderEmail, senderCustomerId, true);
+          stage = TollStage.RECORD;
+          recordEmailProcessed(messageId, receivedAt, senderCustomerId, true);
 
           logger.info(
               "Successfully processed toll payment (${}) for message {} from {} using" + " balance",
@@ -121,137 +178,236 @@ public class TollService {
               senderEmail);
           return true;
         } else {
-          logger.error("Failed to debit sender balance for message {}", messageId);
-          return false;
-        }
-      } else {
-        // Insufficient balance - create top-up link and archive email
-        UUID emailMetaId = UUID.randomUUID();
-        String topUpLink =
-            stripeService.createTopUpCheckoutSession(
-                senderEmail, senderCustomerId, messageId, emailMetaId);
-
-        if (topUpLink != null) {
-          // Archive and label the message
+          // Insufficient balance - hold the message; TopupNoticeTask sends the sender one top-up
+          // link for everything they have waiting
+          stage = TollStage.GMAIL;
           gmailService.archiveAndLabelMessage(gmailClient, messageId, awaitingTollLabelId);
-
-          // Send top-up email to sender
-          String subject = emailTemplateService.renderSubject(tollAmount);
-          String body = emailTemplateService.renderBody(tollAmount, topUpLink, senderEmail);
-          gmailService.sendEmail(gmailClient, senderEmail, subject, body);
-
-          // Record email as processed but not paid
-          recordEmailProcessed(messageId, senderEmail, senderCustomerId, false);
+          stage = TollStage.RECORD;
+          topupNoticeDao.createIfAbsent(
+              TopupNotice.builder()
+                  .id(emailMetaId)
+                  .senderEmail(senderEmail)
+                  .senderAddress(senderAddress)
+                  .stripeCustomerId(senderCustomerId)
+                  .subject(gmailService.extractSubject(fullMessage))
+                  .createdAt(Instant.now())
+                  .build());
+          recordEmailProcessed(messageId, receivedAt, senderCustomerId, false);
 
           logger.info(
-              "Insufficient balance for sender {}, sent top-up link for message {}",
+              "Insufficient balance for sender {}, holding message {} until they top up",
               senderEmail,
               messageId);
           return true;
-        } else {
-          logger.error("Failed to create top-up link for sender {}", senderEmail);
-          return false;
         }
       }
 
     } catch (Exception e) {
-      logger.error("Error processing toll for message {}: {}", messageId, e.getMessage(), e);
+      logger.error(
+          "Error processing toll for message {} at {}: {}", messageId, stage, e.getMessage(), e);
+      if (claimed) {
+        releaseClaim(messageId, receivedAt);
+      }
+      if (!parkIfStripeUnavailable(messageId)) {
+        tollRetryQueue.park(messageId, stage, e.getClass().getSimpleName() + ": " + e.getMessage());
+      }
       return false;
     }
   }
 
   /**
-   * Processes toll payment after a balance top-up has been completed. Called from webhook handler.
+   * Releases a sender's held messages after a balance top-up has been completed. Messages are paid
+   * oldest first, as many as the balance covers, with one Stripe debit, one Gmail batchModify and
+   * one database update for the whole batch. The debits are committed locally before Stripe is
+   * called; in immediate settlement mode they are settled right away, and a settlement that fails
+   * is retried by {@link LedgerSettlementTask} under the same idempotency key. Called from webhook
+   * handler, whose retries redo a failed release without charging twice.
    *
    * @param gmailClient The Gmail client instance
-   * @param messageId The Gmail message ID
-   * @param tollAmount The toll amount to process
-   * @return True if payment was processed successfully, false otherwise
+   * @param senderCustomerId The sender's Stripe customer ID
+   * @param tollAmount The toll amount to process per message
+   * @return The number of messages released
+   * @throws com.tollbooth.validation.ServiceException if the messages cannot be released
    */
-  public boolean processTollPaymentAfterTopUp(
-      Gmail gmailClient, String messageId, double tollAmount) {
-    try {
-      if (tollProperties.isDryRun()) {
+  public int processTollPaymentsAfterTopUp(
+      Gmail gmailClient, String senderCustomerId, double tollAmount) {
+    if (tollProperties.isDryRun()) {
+      logger.info(
+          "DRY RUN: would process toll payments after top-up for customer {} (amount ${}); "
+              + "skipping credit, debit, and Gmail move",
+          senderCustomerId,
+          tollAmount);
+      return 0;
+    }
+
+    // Serialize with other toll operations for the sender, e.g. their newly arriving messages
+    try (SenderLock.Held ignored = senderLock.acquire(senderCustomerId)) {
+      List<TollEmailMeta> heldMessages = tollEmailMetaDao.findUnpaidByCustomer(senderCustomerId);
+      if (heldMessages.isEmpty()) {
         logger.info(
-            "DRY RUN: would process toll payment after top-up for message {} (amount ${}); "
-                + "skipping credit, debit, and Gmail move",
-            messageId,
-            tollAmount);
-        return true;
+            "No held messages found for customer {} during post-topup processing",
+            senderCustomerId);
+        return 0;
       }
 
-      // Get the email meta record
-      java.util.Optional<TollEmailMeta> emailMetaOpt = tollEmailMetaDao.findByGmailId(messageId);
-      if (emailMetaOpt.isEmpty()) {
-        logger.warn("No email meta found for message {} during post-topup processing", messageId);
-        return false;
+      // Debit as many tolls as the balance covers, to be posted as one balance transaction
+      List<UUID> paidIds =
+          senderBalanceLedger.debitAllIfSufficient(
+              senderCustomerId,
+              tollAmount,
+              heldMessages.stream().map(TollEmailMeta::getId).toList());
+      if (paidIds.size() < heldMessages.size()) {
+        logger.warn(
+            "Customer {} has insufficient balance after top-up, releasing {} of {} held messages",
+            senderCustomerId,
+            paidIds.size(),
+            heldMessages.size());
       }
-
-      TollEmailMeta emailMeta = emailMetaOpt.get();
-      String senderCustomerId = emailMeta.getStripeCustomerId();
-
-      if (senderCustomerId == null) {
-        logger.warn("No Stripe customer ID found for message {}", messageId);
-        return false;
+      if (paidIds.isEmpty()) {
+        return 0;
+      }
+      if (tollProperties.getSettlementMode() == SettlementMode.IMMEDIATE) {
+        try {
+          ledgerSettlementTask.settle(senderCustomerId);
+        } catch (Exception e) {
+          logger.error(
+              "Failed to settle debits for customer {}, leaving them for the settlement task: {}",
+              senderCustomerId,
+              e.getMessage(),
+              e);
+        }
       }
 
-      // Check if sender now has sufficient balance
-      boolean hasSufficientBalance = stripeService.checkSenderBalance(senderCustomerId, tollAmount);
+      // Move emails to inbox before marking them paid: only unpaid rows are ever released again,
+      // and the debits are keyed per email, so a release redone after a failure charges nothing
+      Set<UUID> paid = new HashSet<>(paidIds);
+      List<TollEmailMeta> paidMessages =
+          heldMessages.stream().filter(emailMeta -> paid.contains(emailMeta.getId())).toList();
+      List<String> messageIds = paidMessages.stream().map(TollEmailMeta::getGmailId).toList();
+      String awaitingTollLabelId = gmailService.ensureAwaitingTollLabelExists(gmailClient);
+      Validation.check(
+          awaitingTollLabelId != null
+              && gmailService.moveAndUnlabelMessages(gmailClient, messageIds, awaitingTollLabelId),
+          ErrorCode.INTERNAL_SERVER_ERROR,
+          "Failed to move %s paid messages to the inbox for customer %s",
+          messageIds.size(),
+          senderCustomerId);
+      tollEmailMetaDao.markPaid(paidMessages);
+
+      logger.info(
+          "Successfully processed {} toll payments after top-up for customer {}",
+          messageIds.size(),
+          senderCustomerId);
+      return messageIds.size();
+    } catch (SQLException e) {
+      throw Validation.unexpectedException(
+          e, "Failed to lock sender %s for post-topup processing", senderCustomerId);
+    }
+  }
 
-      if (hasSufficientBalance) {
-        // Process the toll payment
-        boolean debitSuccessful =
-            stripeService.debitSenderBalance(senderCustomerId, tollAmount, emailMeta.getId());
+  /**
+   * Parks the message in the retry queue if the Stripe circuit breaker is open.
+   *
+   * @param messageId The Gmail message ID
+   * @return True if the message was parked
+   */
+  private boolean parkIfStripeUnavailable(String messageId) {
+    if (!stripeCircuitBreaker.isOpen()) {
+      return false;
+    }
+    logger.warn("Stripe is unavailable, parking message {} for retry", messageId);
+    tollRetryQueue.park(messageId, TollStage.STRIPE_UNAVAILABLE, "Stripe circuit breaker open");
+    return true;
+  }
 
-        if (debitSuccessful) {
-          // Move email to inbox
-          String awaitingTollLabelId = gmailService.ensureAwaitingTollLabelExists(gmailClient);
-          if (awaitingTollLabelId != null) {
-            gmailService.moveAndUnlabelMessage(gmailClient, messageId, awaitingTollLabelId);
-          }
+  /**
+   * Claims a message for processing. Claims left unfinished for longer than the retry lease, e.g.
+   * by a worker that died, are taken over.
+   *
+   * @param gmailId The Gmail message ID
+   * @param senderEmail The sender's email address
+   * @param receivedAt When Gmail received the message
+   * @return True if the message was claimed
+   */
+  private boolean claim(String gmailId, String senderEmail, Instant receivedAt) {
+    Instant now = Instant.now();
+    return tollEmailMetaDao.claim(
+        TollEmailMeta.builder()
+            .id(TollEmailMeta.idFor(gmailId))
+            .gmailId(gmailId)
+            .senderEmail(senderEmail)
+            .receivedAt(receivedAt)
+            .createdAt(now)
+            .build(),
+        now.minusSeconds(tollProperties.getRetryLeaseSeconds()));
+  }
 
-          // Update email meta to mark as paid
-          emailMeta.setTollPaid(true);
-          tollEmailMetaDao.update(emailMeta);
+  /**
+   * Returns when Gmail received a message. Its record is keyed by this as well as the message ID,
+   * so it must be the same every time the message is processed.
+   *
+   * @param fullMessage The full message object
+   * @return The receipt time
+   */
+  private static Instant receivedAt(Message fullMessage) {
+    Long internalDate = fullMessage.getInternalDate();
+    if (internalDate == null) {
+      throw new IllegalStateException("Message " + fullMessage.getId() + " has no internal date");
+    }
+    return Instant.ofEpochMilli(internalDate);
+  }
 
-          logger.info("Successfully processed toll payment after top-up for message {}", messageId);
-          return true;
-        } else {
-          logger.error("Failed to debit sender balance after top-up for message {}", messageId);
-          return false;
-        }
-      } else {
-        logger.warn("Sender still has insufficient balance after top-up for message {}", messageId);
-        return false;
-      }
+  /**
+   * Skips a message that could not be claimed. A message still being processed elsewhere is parked
+   * for a retry, so it is not lost if that worker fails. The record is looked up in the partition
+   * for the message's receipt time only. Finding none there means the message was recorded, and
+   * processed, before partitioning, or has no partition to be recorded in, or was released by a
+   * worker that parked it itself; either way it is not parked again.
+   *
+   * @param gmailId The Gmail message ID
+   * @param receivedAt When Gmail received the message
+   * @return True if the message has been processed
+   */
+  private boolean skipClaimed(String gmailId, Instant receivedAt) {
+    boolean processed =
+        tollEmailMetaDao
+            .findByGmailId(gmailId, receivedAt)
+            .map(existing -> existing.getProcessedAt() != null)
+            .orElse(true);
+    if (processed) {
+      logger.debug("Email {} already processed, skipping", gmailId);
+      return true;
+    }
+    logger.debug("Email {} is being processed by another worker, parking it", gmailId);
+    tollRetryQueue.park(gmailId, TollStage.LOOKUP, "Claimed by another worker");
+    return false;
+  }
 
+  /**
+   * Gives up the claim on a message that is parked for a retry, so the retry can claim it. If that
+   * fails too, the claim is taken over once it goes stale.
+   *
+   * @param gmailId The Gmail message ID
+   * @param receivedAt When Gmail received the message
+   */
+  private void releaseClaim(String gmailId, Instant receivedAt) {
+    try {
+      tollEmailMetaDao.release(gmailId, receivedAt);
     } catch (Exception e) {
-      logger.error(
-          "Error processing toll payment after top-up for message {}: {}",
-          messageId,
-          e.getMessage(),
-          e);
-      return false;
+      logger.error("Error releasing claim on message {}: {}", gmailId, e.getMessage(), e);
     }
   }
 
   /**
-   * Records that an email has been processed.
+   * Finishes the claim on an email, recording how it was processed.
    *
    * @param gmailId The Gmail message ID
-   * @param senderEmail The sender's email address
+   * @param receivedAt When Gmail received the message
    * @param stripeCustomerId The sender's Stripe customer ID (may be null)
    * @param tollPaid Whether the toll was paid
    */
   private void recordEmailProcessed(
-      String gmailId, String senderEmail, String stripeCustomerId, boolean tollPaid) {
-    TollEmailMeta meta = new TollEmailMeta();
-    meta.setId(UUID.randomUUID());
-    meta.setGmailId(gmailId);
-    meta.setSenderEmail(senderEmail);
-    meta.setStripeCustomerId(stripeCustomerId);
-    meta.setTollPaid(tollPaid);
-    meta.setCreatedAt(Instant.now());
-    tollEmailMetaDao.create(meta);
+      String gmailId, Instant receivedAt, String stripeCustomerId, boolean tollPaid) {
+    tollEmailMetaDao.markProcessed(gmailId, receivedAt, stripeCustomerId, tollPaid, Instant.now());
   }
 }
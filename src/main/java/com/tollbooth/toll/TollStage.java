@@ -0,0 +1,23 @@
+package com.tollbooth.toll;
+
+/** The step of toll processing a message failed at, recorded with its retry. */
+public enum TollStage {
+  /** Fetching the message from Gmail. */
+  FETCH,
+  /** Checking whether the message was already processed and who sent it. */
+  LOOKUP,
+  /** Ensuring the Awaiting Toll label exists. */
+  LABEL,
+  /** Skipped because Stripe's circuit breaker was open. */
+  STRIPE_UNAVAILABLE,
+  /** Getting or creating the sender's Stripe customer. */
+  CUSTOMER,
+  /** Taking the per-sender lock. */
+  LOCK,
+  /** Debiting the toll from the sender's balance. */
+  DEBIT,
+  /** Moving or archiving the message in Gmail. */
+  GMAIL,
+  /** Recording the outcome and queueing the top-up notice. */
+  RECORD
+}
@@ -0,0 +1,43 @@
+package com.tollbooth.toll;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.tollbooth.dto.Copyable;
+import com.tollbooth.dto.Identifiable;
+import java.time.Instant;
+import java.util.UUID;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+/**
+ * A held message to be listed in the sender's next top-up digest. The ID is the message's {@link
+ * TollEmailMeta} ID.
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode(exclude = {"createdAt"})
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties({"createdAt"})
+public class TopupNotice implements Identifiable<UUID>, Copyable<TopupNotice> {
+
+  private UUID id;
+  private String senderEmail;
+
+  /** The address the sender wrote from, which the digest is sent to. */
+  private String senderAddress;
+
+  private String stripeCustomerId;
+  private String subject;
+  private Instant sentAt;
+  private Instant createdAt;
+
+  @Override
+  public TopupNotice deepCopy() {
+    return this.toBuilder().build();
+  }
+}
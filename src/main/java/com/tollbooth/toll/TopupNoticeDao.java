@@ -0,0 +1,123 @@
+package com.tollbooth.toll;
+
+import com.tollbooth.persistence.AbstractCrudDao;
+import com.tollbooth.query.Dao;
+import com.tollbooth.query.Parameters;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.stereotype.Component;
+
+@Component
+@Dao
+public class TopupNoticeDao extends AbstractCrudDao<TopupNotice, UUID> {
+
+  // A sender is due once their oldest unsent notice has waited out the window and their last
+  // digest is older than the rate limit
+  private static final String FIND_DUE_SENDERS =
+      "SELECT sender_email FROM topup_notice\n"
+          + "GROUP BY sender_email\n"
+          + "HAVING MIN(created_at) FILTER (WHERE sent_at IS NULL) <= :queuedBefore\n"
+          + "  AND (MAX(sent_at) IS NULL OR MAX(sent_at) <= :sentBefore)";
+
+  @Override
+  protected String tableName() {
+    return "topup_notice";
+  }
+
+  @Override
+  protected String tableAlias() {
+    return null;
+  }
+
+  @Override
+  protected String selectColumns() {
+    return "id, sender_email, sender_address, stripe_customer_id, subject, sent_at, created_at";
+  }
+
+  @Override
+  protected List<Pair<String, String>> updateCols() {
+    return List.of(
+        Pair.of("sender_email", ":senderEmail"),
+        Pair.of("sender_address", ":senderAddress"),
+        Pair.of("stripe_customer_id", ":stripeCustomerId"),
+        Pair.of("subject", ":subject"),
+        Pair.of("sent_at", ":sentAt"),
+        Pair.of("created_at", ":createdAt"));
+  }
+
+  @Override
+  protected List<Pair<String, String>> insertCols() {
+    return List.of(
+        Pair.of("id", ":id"),
+        Pair.of("sender_email", ":senderEmail"),
+        Pair.of("sender_address", ":senderAddress"),
+        Pair.of("stripe_customer_id", ":stripeCustomerId"),
+        Pair.of("subject", ":subject"),
+        Pair.of("sent_at", ":sentAt"),
+        Pair.of("created_at", ":createdAt"));
+  }
+
+  /**
+   * Finds the senders whose digest is due.
+   *
+   * @param queuedBefore Senders whose oldest unsent notice was queued after this are still
+   *     collecting notices
+   * @param sentBefore Senders who were last sent a digest after this are rate limited
+   * @return The senders' email addresses
+   */
+  public List<String> findDueSenders(Instant queuedBefore, Instant sentBefore) {
+    return jdbcTemplate.queryForList(
+        FIND_DUE_SENDERS,
+        new Parameters("queuedBefore", queuedBefore, "sentBefore", sentBefore),
+        String.class);
+  }
+
+  /**
+   * Finds the sender's unsent notices.
+   *
+   * @param senderEmail The sender's email address
+   * @return The notices, oldest first
+   */
+  public List<TopupNotice> findUnsent(String senderEmail) {
+    return select(selectColumns())
+        .from(tableName())
+        .where("sender_email = :senderEmail")
+        .and("sent_at IS NULL")
+        .orderBy("created_at")
+        .parameters("senderEmail", senderEmail)
+        .queryForList(rowMapper());
+  }
+
+  /**
+   * Marks notices as sent.
+   *
+   * @param ids The notice IDs
+   * @param sentAt When the digest listing them was sent
+   */
+  public void markSent(Collection<UUID> ids, Instant sentAt) {
+    if (ids.isEmpty()) {
+      return;
+    }
+    update(tableName())
+        .set("sent_at = :sentAt")
+        .where("id = ANY(:ids)")
+        .parameters("ids", Parameters.array("uuid", ids), "sentAt", sentAt)
+        .run();
+  }
+
+  /**
+   * Deletes notices sent before the given time. The most recent sent notice per sender must be kept
+   * for as long as it rate limits the sender.
+   *
+   * @param sentBefore The cutoff
+   */
+  public void deleteSentBefore(Instant sentBefore) {
+    deleteFrom(tableName())
+        .where("sent_at < :sentBefore")
+        .parameters("sentBefore", sentBefore)
+        .run();
+  }
+}
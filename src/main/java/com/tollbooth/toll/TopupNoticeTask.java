@@ -0,0 +1,128 @@
+package com.tollbooth.toll;
+
+import com.google.api.services.gmail.Gmail;
+import com.tollbooth.config.GmailConfig;
+import com.tollbooth.config.TollProperties;
+import com.tollbooth.gmail.GmailService;
+import com.tollbooth.stripe.PendingTopupSession;
+import com.tollbooth.stripe.StripeCircuitBreaker;
+import com.tollbooth.stripe.StripeService;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+public class TopupNoticeTask {
+
+  private static final Logger logger = LogManager.getLogger(TopupNoticeTask.class);
+
+  @Autowired private TopupNoticeDao topupNoticeDao;
+
+  @Autowired private TollEmailMetaDao tollEmailMetaDao;
+
+  @Autowired private StripeService stripeService;
+
+  @Autowired private StripeCircuitBreaker stripeCircuitBreaker;
+
+  @Autowired private GmailConfig gmailConfig;
+
+  @Autowired private GmailService gmailService;
+
+  @Autowired private TollEmailTemplateService emailTemplateService;
+
+  @Autowired private TollProperties tollProperties;
+
+  /**
+   * Sends each sender with held messages one digest listing them all under a single payment link.
+   * Notices are collected for the notice window after a sender's first held message, and a sender
+   * is sent at most one digest per minimum interval; messages held in between go out in the next
+   * digest. Senders whose digest fails are retried on the next run.
+   */
+  @Scheduled(fixedDelayString = "${toll.notice-poll-interval-ms:60000}")
+  public void sendDigests() {
+    if (tollProperties.isDryRun()) {
+      return;
+    }
+
+    Instant now = Instant.now();
+    Duration minInterval = Duration.ofSeconds(tollProperties.getNoticeMinIntervalSeconds());
+    topupNoticeDao.deleteSentBefore(now.minus(minInterval));
+    List<String> senderEmails =
+        topupNoticeDao.findDueSenders(
+            now.minusSeconds(tollProperties.getNoticeWindowSeconds()), now.minus(minInterval));
+    if (senderEmails.isEmpty() || stripeCircuitBreaker.isOpen()) {
+      return;
+    }
+
+    try {
+      Gmail gmailClient = gmailConfig.getGmailClient();
+      for (String senderEmail : senderEmails) {
+        try {
+          sendDigest(gmailClient, senderEmail);
+        } catch (Exception e) {
+          logger.error(
+              "Error sending top-up digest to sender {}: {}", senderEmail, e.getMessage(), e);
+        }
+      }
+    } catch (Exception e) {
+      logger.error("Unable to send top-up digests: {}", e.getMessage(), e);
+    }
+  }
+
+  private void sendDigest(Gmail gmailClient, String senderEmail) throws IOException {
+    List<TopupNotice> notices = topupNoticeDao.findUnsent(senderEmail);
+    if (notices.isEmpty()) {
+      return;
+    }
+
+    // Messages paid for since they were held, e.g. by a top-up from an earlier link, need no notice
+    TopupNotice newest = notices.get(notices.size() - 1);
+    Set<UUID> unpaidIds =
+        tollEmailMetaDao.findUnpaidByCustomer(newest.getStripeCustomerId()).stream()
+            .map(TollEmailMeta::getId)
+            .collect(Collectors.toSet());
+    List<TopupNotice> held =
+        notices.stream().filter(notice -> unpaidIds.contains(notice.getId())).toList();
+    if (held.isEmpty()) {
+      topupNoticeDao.deleteAll(notices.stream().map(TopupNotice::getId).toList());
+      return;
+    }
+
+    PendingTopupSession session =
+        stripeService
+            .findOpenTopUpSession(senderEmail)
+            .orElseGet(
+                () ->
+                    stripeService.createTopUpCheckoutSession(
+                        senderEmail, newest.getStripeCustomerId(), newest.getId()));
+    if (session == null) {
+      logger.error("Failed to create top-up link for sender {}", senderEmail);
+      return;
+    }
+
+    // Sent to where the sender last wrote from; their canonical address need not be deliverable
+    String senderAddress =
+        newest.getSenderAddress() != null ? newest.getSenderAddress() : senderEmail;
+    double tollAmount = tollProperties.getTollAmount();
+    String subject = emailTemplateService.renderSubject(tollAmount);
+    String body =
+        emailTemplateService.renderDigestBody(
+            tollAmount,
+            session.getSessionUrl(),
+            senderAddress,
+            held.stream().map(TopupNotice::getSubject).toList());
+    gmailService.sendEmail(gmailClient, senderAddress, subject, body);
+    topupNoticeDao.markSent(notices.stream().map(TopupNotice::getId).toList(), Instant.now());
+
+    logger.info("Sent top-up digest for {} held messages to sender {}", held.size(), senderEmail);
+  }
+}
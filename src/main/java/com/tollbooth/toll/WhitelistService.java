@@ -6,6 +6,7 @@ import com.google.api.services.gmail.model.Message;
 import com.google.api.services.gmail.model.MessagePartHeader;
 import com.tollbooth.config.GmailConfig;
 import com.tollbooth.config.TollProperties;
+import com.tollbooth.gmail.EmailAddressCanonicalizer;
 import java.io.IOException;
 import java.util.List;
 import org.apache.commons.lang3.StringUtils;
@@ -23,17 +24,23 @@ public class WhitelistService {
 
   @Autowired private TollProperties tollProperties;
 
+  @Autowired private KnownContactSet knownContactSet;
+
+  @Autowired private EmailAddressCanonicalizer emailAddressCanonicalizer;
+
   /**
    * Checks if a sender is whitelisted based on four exemption rules: 1. Hosted domain match (same
    * Google Workspace domain) 2. Trusted domains list 3. CC'd recipients from trusted domains 4.
    * Known sender via sent-folder check
    *
    * @param gmailClient The Gmail client instance
-   * @param senderEmail The sender's email address
+   * @param senderEmail The sender's canonical email address
+   * @param senderAddress The sender's email address as they wrote it
    * @param fullMessage The full message object
    * @return True if sender is whitelisted, false otherwise
    */
-  public boolean isSenderWhitelisted(Gmail gmailClient, String senderEmail, Message fullMessage) {
+  public boolean isSenderWhitelisted(
+      Gmail gmailClient, String senderEmail, String senderAddress, Message fullMessage) {
     logger.debug("Checking if sender {} is whitelisted", senderEmail);
     try {
       // Rule 1: Check if the sender's domain matches the user's hosted domain
@@ -55,7 +62,7 @@ public class WhitelistService {
       }
 
       // Rule 4: Check if user has previously sent an email to this sender
-      if (isKnownSender(gmailClient, senderEmail)) {
+      if (isKnownSender(gmailClient, senderEmail, senderAddress)) {
         logger.debug("Sender {} is whitelisted (known sender)", senderEmail);
         return true;
       }
@@ -141,10 +148,11 @@ public class WhitelistService {
               int startIndex = address.indexOf('<') + 1;
               int endIndex = address.indexOf('>');
               if (startIndex > 0 && endIndex > startIndex) {
-                recipientEmail = address.substring(startIndex, endIndex).trim();
+                recipientEmail =
+                    emailAddressCanonicalizer.canonicalize(address.substring(startIndex, endIndex));
               }
             } else {
-              recipientEmail = address.trim();
+              recipientEmail = emailAddressCanonicalizer.canonicalize(address);
             }
 
             if (recipientEmail != null && isTrustedDomain(recipientEmail)) {
@@ -161,19 +169,28 @@ public class WhitelistService {
 
   /**
    * Rule 4: Checks if the user has previously sent an email to this sender by searching the sent
-   * folder. Excludes automated emails with "[jmc]" in the subject.
+   * folder. Excludes automated emails with "[jmc]" in the subject. Senders found this way are
+   * remembered in the {@link KnownContactSet} so later messages skip the Gmail query.
    *
    * @param gmailClient The Gmail client instance
-   * @param senderEmail The sender's email address
+   * @param senderEmail The sender's canonical email address
+   * @param senderAddress The sender's email address as they wrote it, which is what the user's sent
+   *     mail is addressed to
    * @return True if user has sent emails to this sender before, false otherwise
    * @throws IOException if there's an error querying Gmail
    */
-  private boolean isKnownSender(Gmail gmailClient, String senderEmail) throws IOException {
+  private boolean isKnownSender(Gmail gmailClient, String senderEmail, String senderAddress)
+      throws IOException {
+    if (knownContactSet.contains(senderEmail)) {
+      logger.debug("Sender {} is a known sender (known contact set)", senderEmail);
+      return true;
+    }
+
     String userEmail = gmailConfig.getGmailEmail();
 
     // Search for messages in the sent folder that were sent to the sender's email address
     // Exclude automated emails with "[jmc]" in the subject
-    String query = "in:sent to:" + senderEmail + " -subject:\"[jmc]\"";
+    String query = "in:sent to:" + senderAddress + " -subject:\"[jmc]\"";
 
     Gmail.Users.Messages.List request =
         gmailClient
@@ -187,6 +204,9 @@ public class WhitelistService {
 
     // If we find any messages, it means the user has sent emails to this sender before
     boolean hasContact = response.getMessages() != null && !response.getMessages().isEmpty();
+    if (hasContact) {
+      knownContactSet.add(senderEmail);
+    }
 
     logger.debug(
         "Checked if sender {} is a known sender (sent folder): {}", senderEmail, hasContact);
@@ -0,0 +1,15 @@
+-- Messages whose toll processing failed, retried with backoff until they succeed or are
+-- dead-lettered. Keyed by Gmail message ID so repeated failures update the same row.
+CREATE TABLE IF NOT EXISTS toll_retry (
+    gmail_id TEXT PRIMARY KEY,
+    stage TEXT NOT NULL,
+    attempts INTEGER NOT NULL DEFAULT 0,
+    next_attempt_at TIMESTAMP NOT NULL DEFAULT NOW(),
+    last_error TEXT,
+    dead_lettered_at TIMESTAMP,
+    created_at TIMESTAMP NOT NULL DEFAULT NOW()
+);
+
+CREATE INDEX IF NOT EXISTS idx_toll_retry_pending
+    ON toll_retry(next_attempt_at)
+    WHERE dead_lettered_at IS NULL;
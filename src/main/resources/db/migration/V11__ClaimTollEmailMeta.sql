@@ -0,0 +1,15 @@
+-- A message is claimed by inserting its row before it is processed, so the row needs to be unique
+-- per Gmail message. Duplicates left by concurrent workers are collapsed to the oldest row.
+DELETE FROM toll_email_meta a
+    USING toll_email_meta b
+    WHERE a.gmail_id = b.gmail_id
+      AND (a.created_at, a.id) > (b.created_at, b.id);
+
+DROP INDEX IF EXISTS idx_toll_email_meta_gmail_id;
+ALTER TABLE toll_email_meta
+    ADD CONSTRAINT uq_toll_email_meta_gmail_id UNIQUE (gmail_id);
+
+-- Set once processing finishes; a claimed row without it is still being processed, or its
+-- worker died and the claim can be taken over
+ALTER TABLE toll_email_meta ADD COLUMN IF NOT EXISTS processed_at TIMESTAMP;
+UPDATE toll_email_meta SET processed_at = created_at WHERE processed_at IS NULL;
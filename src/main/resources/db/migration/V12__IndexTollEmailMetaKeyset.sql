@@ -0,0 +1,4 @@
+-- Scans of toll_email_meta page by (created_at, id), which also serves the lookups by created_at
+-- alone that the old index did
+CREATE INDEX IF NOT EXISTS idx_toll_email_meta_created_at_id ON toll_email_meta(created_at, id);
+DROP INDEX IF EXISTS idx_toll_email_meta_created_at;
@@ -0,0 +1,51 @@
+-- toll_email_meta is range partitioned by month, so old months can be dropped whole and each
+-- month's indexes stay small. The partition key is when Gmail received the message rather than
+-- created_at, which is rewritten when a claim is taken over: every unique key must include the
+-- partition key, and only a time fixed per message keeps (gmail_id, received_at) unique per
+-- message. TollEmailMetaPartitionTask creates the months ahead and drops expired ones.
+ALTER TABLE toll_email_meta RENAME TO toll_email_meta_unpartitioned;
+ALTER TABLE toll_email_meta_unpartitioned DROP CONSTRAINT toll_email_meta_pkey;
+ALTER TABLE toll_email_meta_unpartitioned DROP CONSTRAINT uq_toll_email_meta_gmail_id;
+DROP INDEX IF EXISTS idx_toll_email_meta_sender_email;
+DROP INDEX IF EXISTS idx_toll_email_meta_unpaid_customer;
+DROP INDEX IF EXISTS idx_toll_email_meta_created_at_id;
+
+CREATE TABLE toll_email_meta (
+    id UUID NOT NULL,
+    gmail_id TEXT NOT NULL,
+    sender_email TEXT NOT NULL,
+    toll_paid BOOLEAN NOT NULL DEFAULT FALSE,
+    stripe_customer_id TEXT,
+    processed_at TIMESTAMP,
+    received_at TIMESTAMP NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT NOW(),
+    CONSTRAINT toll_email_meta_pkey PRIMARY KEY (id, received_at),
+    CONSTRAINT uq_toll_email_meta_gmail_id UNIQUE (gmail_id, received_at)
+) PARTITION BY RANGE (received_at);
+
+-- Nothing looks records up by sender, so idx_toll_email_meta_sender_email is not carried over
+CREATE INDEX idx_toll_email_meta_unpaid_customer
+    ON toll_email_meta(stripe_customer_id, created_at)
+    WHERE NOT toll_paid;
+CREATE INDEX idx_toll_email_meta_created_at_id ON toll_email_meta(created_at, id);
+
+-- Existing records never knew when their message was received, so they keep their claim time in
+-- one partition running to the end of this month. A message polled again after the migration is
+-- given its Gmail receipt time instead, so this partition alone stays unique on gmail_id for such
+-- claims to run into.
+CREATE TABLE toll_email_meta_legacy PARTITION OF toll_email_meta
+    FOR VALUES FROM (MINVALUE) TO (date_trunc('month', LOCALTIMESTAMP) + INTERVAL '1 month');
+ALTER TABLE toll_email_meta_legacy
+    ADD CONSTRAINT uq_toll_email_meta_legacy_gmail_id UNIQUE (gmail_id);
+
+-- Unfinished claims are left behind: one carried over could never be taken over, since its key
+-- holds its claim time, and the message is claimed afresh when it is polled or retried
+INSERT INTO toll_email_meta
+    (id, gmail_id, sender_email, toll_paid, stripe_customer_id, processed_at, received_at,
+     created_at)
+SELECT id, gmail_id, sender_email, toll_paid, stripe_customer_id, processed_at, created_at,
+       created_at
+FROM toll_email_meta_unpartitioned
+WHERE processed_at IS NOT NULL;
+
+DROP TABLE toll_email_meta_unpartitioned;
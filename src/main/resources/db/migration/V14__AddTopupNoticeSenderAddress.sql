@@ -0,0 +1,4 @@
+-- The address the sender wrote from, which their digest is sent to. sender_email is its canonical
+-- form, which identifies the sender but need not be a deliverable address. Notices queued before
+-- this fall back to sender_email.
+ALTER TABLE topup_notice ADD COLUMN IF NOT EXISTS sender_address TEXT;
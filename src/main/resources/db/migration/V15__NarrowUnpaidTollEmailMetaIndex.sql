@@ -0,0 +1,8 @@
+-- Held messages for a customer, oldest first, for releasing them after a top-up. Messages from
+-- whitelisted senders are recorded unpaid with no customer too, and they are most of the table, so
+-- the index is limited to messages charged to a customer to cover only the small unpaid tail.
+-- Lookups by customer imply the customer is set, so they still match the narrower predicate.
+DROP INDEX IF EXISTS idx_toll_email_meta_unpaid_customer;
+CREATE INDEX idx_toll_email_meta_unpaid_customer
+    ON toll_email_meta(stripe_customer_id, created_at)
+    WHERE NOT toll_paid AND stripe_customer_id IS NOT NULL;
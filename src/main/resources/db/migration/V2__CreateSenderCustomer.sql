@@ -0,0 +1,9 @@
+CREATE TABLE IF NOT EXISTS sender_customer (
+    id UUID PRIMARY KEY,
+    sender_email TEXT NOT NULL,
+    stripe_customer_id TEXT NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT NOW()
+);
+
+CREATE UNIQUE INDEX IF NOT EXISTS idx_sender_customer_sender_email ON sender_customer(sender_email);
+CREATE INDEX IF NOT EXISTS idx_sender_customer_stripe_customer_id ON sender_customer(stripe_customer_id);
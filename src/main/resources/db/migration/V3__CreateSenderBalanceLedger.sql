@@ -0,0 +1,22 @@
+-- Balances use Stripe's sign convention: positive amounts are owed by the sender, negative
+-- amounts are prepaid credit.
+CREATE TABLE IF NOT EXISTS sender_balance (
+    stripe_customer_id TEXT PRIMARY KEY,
+    balance_cents BIGINT NOT NULL,
+    stripe_balance_cents BIGINT,
+    reconciled_at TIMESTAMP,
+    updated_at TIMESTAMP NOT NULL DEFAULT NOW()
+);
+
+CREATE TABLE IF NOT EXISTS sender_balance_ledger (
+    id UUID PRIMARY KEY,
+    stripe_customer_id TEXT NOT NULL,
+    entry_type TEXT NOT NULL,
+    amount_cents BIGINT NOT NULL,
+    reference TEXT NOT NULL,
+    stripe_transaction_id TEXT,
+    created_at TIMESTAMP NOT NULL DEFAULT NOW()
+);
+
+CREATE UNIQUE INDEX IF NOT EXISTS idx_sender_balance_ledger_reference ON sender_balance_ledger(reference);
+CREATE INDEX IF NOT EXISTS idx_sender_balance_ledger_customer_created_at ON sender_balance_ledger(stripe_customer_id, created_at);
@@ -0,0 +1,11 @@
+-- At most one open Checkout session per sender; later held messages reuse its URL.
+CREATE TABLE IF NOT EXISTS pending_topup_session (
+    sender_email TEXT PRIMARY KEY,
+    stripe_customer_id TEXT NOT NULL,
+    session_id TEXT NOT NULL,
+    session_url TEXT NOT NULL,
+    expires_at TIMESTAMP NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT NOW()
+);
+
+CREATE INDEX IF NOT EXISTS idx_pending_topup_session_session_id ON pending_topup_session(session_id);
@@ -0,0 +1,5 @@
+-- Held messages for a customer, oldest first, for releasing them after a top-up. Partial, so
+-- it only covers the small unpaid tail of the table.
+CREATE INDEX IF NOT EXISTS idx_toll_email_meta_unpaid_customer
+    ON toll_email_meta(stripe_customer_id, created_at)
+    WHERE NOT toll_paid;
@@ -0,0 +1,17 @@
+-- Verified Stripe webhook events, stored on receipt and processed asynchronously. The event ID
+-- key makes Stripe's redeliveries no-ops.
+CREATE TABLE IF NOT EXISTS stripe_event_inbox (
+    event_id TEXT PRIMARY KEY,
+    event_type TEXT NOT NULL,
+    payload TEXT NOT NULL,
+    attempts INTEGER NOT NULL DEFAULT 0,
+    next_attempt_at TIMESTAMP NOT NULL DEFAULT NOW(),
+    last_error TEXT,
+    processed_at TIMESTAMP,
+    dead_lettered_at TIMESTAMP,
+    created_at TIMESTAMP NOT NULL DEFAULT NOW()
+);
+
+CREATE INDEX IF NOT EXISTS idx_stripe_event_inbox_pending
+    ON stripe_event_inbox(next_attempt_at)
+    WHERE processed_at IS NULL AND dead_lettered_at IS NULL;
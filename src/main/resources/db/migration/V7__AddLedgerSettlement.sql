@@ -0,0 +1,13 @@
+-- In batched settlement mode, tolls are debited locally and posted to Stripe later as one balance
+-- transaction per customer. A debit with no stripe_transaction_id is unsettled; settlement_id is
+-- set when a settlement claims it, before Stripe is called, so a retried settlement reuses the
+-- same idempotency key.
+ALTER TABLE sender_balance_ledger ADD COLUMN IF NOT EXISTS settlement_id TEXT;
+
+CREATE INDEX IF NOT EXISTS idx_sender_balance_ledger_unsettled
+    ON sender_balance_ledger(stripe_customer_id, created_at)
+    WHERE entry_type = 'DEBIT' AND stripe_transaction_id IS NULL;
+
+CREATE INDEX IF NOT EXISTS idx_sender_balance_ledger_settlement_id
+    ON sender_balance_ledger(settlement_id)
+    WHERE settlement_id IS NOT NULL;
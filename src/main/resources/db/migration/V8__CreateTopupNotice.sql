@@ -0,0 +1,13 @@
+-- Top-up notices waiting to go out in a sender's next digest, keyed by the held message's
+-- toll_email_meta ID. Sent notices are kept for a while so the last send time per sender is known
+-- for rate limiting.
+CREATE TABLE IF NOT EXISTS topup_notice (
+    id UUID PRIMARY KEY,
+    sender_email TEXT NOT NULL,
+    stripe_customer_id TEXT NOT NULL,
+    subject TEXT,
+    sent_at TIMESTAMP,
+    created_at TIMESTAMP NOT NULL DEFAULT NOW()
+);
+
+CREATE INDEX IF NOT EXISTS idx_topup_notice_sender_email ON topup_notice(sender_email, created_at);
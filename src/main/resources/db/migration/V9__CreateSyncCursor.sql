@@ -0,0 +1,6 @@
+-- How far each incremental sync from Stripe has got, so a restart resumes instead of rescanning.
+CREATE TABLE IF NOT EXISTS sync_cursor (
+    name TEXT PRIMARY KEY,
+    cursor_at TIMESTAMP NOT NULL,
+    updated_at TIMESTAMP NOT NULL DEFAULT NOW()
+);
@@ -1,6 +1,16 @@
 package com.tollbooth;
 
+import com.tollbooth.ledger.LedgerEntry;
+import com.tollbooth.ledger.LedgerEntryType;
+import com.tollbooth.ledger.SenderBalance;
+import com.tollbooth.stripe.PendingTopupSession;
+import com.tollbooth.stripe.SenderCustomer;
+import com.tollbooth.stripe.StripeEventInboxEntry;
+import com.tollbooth.stripe.SyncCursor;
 import com.tollbooth.toll.TollEmailMeta;
+import com.tollbooth.toll.TollRetry;
+import com.tollbooth.toll.TollStage;
+import com.tollbooth.toll.TopupNotice;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.UUID;
@@ -14,6 +24,99 @@ public class Faker extends net.datafaker.Faker {
         .senderEmail(this.internet().emailAddress())
         .tollPaid(this.bool().bool())
         .stripeCustomerId(this.internet().uuid())
+        .processedAt(Instant.now().truncatedTo(ChronoUnit.MILLIS))
+        .receivedAt(Instant.now().truncatedTo(ChronoUnit.MILLIS))
+        .createdAt(Instant.now().truncatedTo(ChronoUnit.MILLIS))
+        .build();
+  }
+
+  public SenderCustomer senderCustomer() {
+    return SenderCustomer.builder()
+        .id(UUID.randomUUID())
+        .senderEmail(this.internet().emailAddress())
+        .stripeCustomerId("cus_" + this.internet().uuid())
+        .createdAt(Instant.now().truncatedTo(ChronoUnit.MILLIS))
+        .build();
+  }
+
+  public SenderBalance senderBalance() {
+    long balanceCents = -this.number().numberBetween(0L, 10_000L);
+    return SenderBalance.builder()
+        .stripeCustomerId("cus_" + this.internet().uuid())
+        .balanceCents(balanceCents)
+        .stripeBalanceCents(balanceCents)
+        .reconciledAt(Instant.now().truncatedTo(ChronoUnit.MILLIS))
+        .updatedAt(Instant.now().truncatedTo(ChronoUnit.MILLIS))
+        .build();
+  }
+
+  public LedgerEntry ledgerEntry() {
+    return LedgerEntry.builder()
+        .id(UUID.randomUUID())
+        .stripeCustomerId("cus_" + this.internet().uuid())
+        .entryType(this.options().option(LedgerEntryType.class))
+        .amountCents(this.number().numberBetween(-10_000L, 10_000L))
+        .reference(this.internet().uuid())
+        .stripeTransactionId("cbtxn_" + this.internet().uuid())
+        .createdAt(Instant.now().truncatedTo(ChronoUnit.MILLIS))
+        .build();
+  }
+
+  public PendingTopupSession pendingTopupSession() {
+    String sessionId = "cs_" + this.internet().uuid();
+    return PendingTopupSession.builder()
+        .senderEmail(this.internet().emailAddress())
+        .stripeCustomerId("cus_" + this.internet().uuid())
+        .sessionId(sessionId)
+        .sessionUrl("https://checkout.stripe.com/c/pay/" + sessionId)
+        .expiresAt(Instant.now().plus(1, ChronoUnit.DAYS).truncatedTo(ChronoUnit.MILLIS))
+        .createdAt(Instant.now().truncatedTo(ChronoUnit.MILLIS))
+        .build();
+  }
+
+  public StripeEventInboxEntry stripeEventInboxEntry() {
+    String eventId = "evt_" + this.internet().uuid();
+    return StripeEventInboxEntry.builder()
+        .eventId(eventId)
+        .eventType("checkout.session.completed")
+        .payload(
+            "{\"id\":\""
+                + eventId
+                + "\",\"type\":\"checkout.session.completed\",\"objectId\":\"cs_"
+                + this.internet().uuid()
+                + "\"}")
+        .attempts(0)
+        .nextAttemptAt(Instant.now().truncatedTo(ChronoUnit.MILLIS))
+        .createdAt(Instant.now().truncatedTo(ChronoUnit.MILLIS))
+        .build();
+  }
+
+  public TopupNotice topupNotice() {
+    String senderEmail = this.internet().emailAddress();
+    return TopupNotice.builder()
+        .id(UUID.randomUUID())
+        .senderEmail(senderEmail)
+        .senderAddress(senderEmail)
+        .stripeCustomerId("cus_" + this.internet().uuid())
+        .subject(this.lorem().sentence())
+        .createdAt(Instant.now().truncatedTo(ChronoUnit.MILLIS))
+        .build();
+  }
+
+  public SyncCursor syncCursor() {
+    return SyncCursor.builder()
+        .name(this.internet().uuid())
+        .cursorAt(Instant.now().truncatedTo(ChronoUnit.MILLIS))
+        .updatedAt(Instant.now().truncatedTo(ChronoUnit.MILLIS))
+        .build();
+  }
+
+  public TollRetry tollRetry() {
+    return TollRetry.builder()
+        .gmailId(this.internet().uuid())
+        .stage(this.options().option(TollStage.class))
+        .nextAttemptAt(Instant.now().truncatedTo(ChronoUnit.MILLIS))
+        .lastError(this.lorem().sentence())
         .createdAt(Instant.now().truncatedTo(ChronoUnit.MILLIS))
         .build();
   }
@@ -0,0 +1,67 @@
+package com.tollbooth.gmail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.tollbooth.config.TollProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class EmailAddressCanonicalizerTest {
+
+  private TollProperties tollProperties;
+  private EmailAddressCanonicalizer canonicalizer;
+
+  @BeforeEach
+  void setup() {
+    tollProperties = new TollProperties();
+    canonicalizer = new EmailAddressCanonicalizer();
+    ReflectionTestUtils.setField(canonicalizer, "tollProperties", tollProperties);
+  }
+
+  @Test
+  public void canonicalize_CaseAndPlusAddressing() {
+    assertThat(canonicalizer.canonicalize("Alice@Outlook.com")).isEqualTo("alice@outlook.com");
+    assertThat(canonicalizer.canonicalize(" alice+news@outlook.com "))
+        .isEqualTo("alice@outlook.com");
+    assertThat(canonicalizer.canonicalize("Alice@Outlook.com"))
+        .isSameAs(canonicalizer.canonicalize("alice+news@outlook.com"));
+  }
+
+  @Test
+  public void canonicalize_PlusAddressingUnknownDomain() {
+    assertThat(canonicalizer.canonicalize("Alice+News@Example.com"))
+        .isEqualTo("alice+news@example.com");
+
+    tollProperties.setPlusAddressingDomains("example.com");
+    assertThat(canonicalizer.canonicalize("bob+news@example.com")).isEqualTo("bob@example.com");
+  }
+
+  @Test
+  public void canonicalize_GmailDots() {
+    assertThat(canonicalizer.canonicalize("First.Last@googlemail.com"))
+        .isEqualTo("firstlast@gmail.com");
+    assertThat(canonicalizer.canonicalize("first.last@example.com"))
+        .isEqualTo("first.last@example.com");
+  }
+
+  @Test
+  public void canonicalize_InternationalDomain() {
+    assertThat(canonicalizer.canonicalize("user@Bücher.example."))
+        .isEqualTo("user@xn--bcher-kva.example");
+  }
+
+  @Test
+  public void canonicalize_RulesDisabled() {
+    tollProperties.setStripPlusAddressing(false);
+    tollProperties.setNormalizeGmailDots(false);
+    assertThat(canonicalizer.canonicalize("first.last+tag@gmail.com"))
+        .isEqualTo("first.last+tag@gmail.com");
+  }
+
+  @Test
+  public void canonicalize_Blank() {
+    assertThat(canonicalizer.canonicalize(" ")).isNull();
+    assertThat(canonicalizer.canonicalize(null)).isNull();
+  }
+}
@@ -0,0 +1,87 @@
+package com.tollbooth.ledger;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+import com.tollbooth.persistence.AbstractCrudDaoTest;
+import com.tollbooth.query.CrudDao;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+public class LedgerEntryDaoTest extends AbstractCrudDaoTest<LedgerEntry, UUID> {
+
+  @Override
+  protected CrudDao<LedgerEntry, UUID> dao() {
+    return ledgerEntryDao;
+  }
+
+  @Override
+  protected LedgerEntry build() {
+    return FAKER.ledgerEntry();
+  }
+
+  @Override
+  protected void mutate(LedgerEntry entity) {
+    entity.setAmountCents(entity.getAmountCents() + 100);
+    entity.setStripeTransactionId("cbtxn_" + FAKER.internet().uuid());
+  }
+
+  @Test
+  public void findByReference_Valid() {
+    var entity = create(build());
+    var found = ledgerEntryDao.findByReference(entity.getReference());
+    assertThat(found.isPresent()).isTrue();
+    assertThat(found.get()).isEqualTo(entity);
+  }
+
+  @Test
+  public void createIfAbsent_Conflict() {
+    var entity = create(build());
+    var duplicate = build();
+    duplicate.setReference(entity.getReference());
+    cleanup(() -> ledgerEntryDao.delete(duplicate.getId()));
+
+    assertThat(ledgerEntryDao.createIfAbsent(duplicate)).isFalse();
+    assertThat(ledgerEntryDao.find(duplicate.getId()).isPresent()).isFalse();
+  }
+
+  @Test
+  public void settlement_ClaimsAndSettlesUnsettledDebits() {
+    var customerId = "cus_" + FAKER.internet().uuid();
+    var older = unsettledDebit(customerId, 25);
+    older.setCreatedAt(older.getCreatedAt().minusSeconds(60));
+    var newer = unsettledDebit(customerId, 50);
+    var settled = build();
+    settled.setStripeCustomerId(customerId);
+    settled.setEntryType(LedgerEntryType.DEBIT);
+    create(older);
+    create(newer);
+    create(settled);
+
+    assertThat(ledgerEntryDao.sumUnsettledDebits(customerId)).isEqualTo(75L);
+    assertThat(ledgerEntryDao.sumUnsettledDebitsByCustomer(List.of(customerId)).get(customerId))
+        .isEqualTo(75L);
+    assertThat(ledgerEntryDao.findCustomersWithUnsettledDebits().contains(customerId)).isTrue();
+
+    var settlementId = UUID.randomUUID().toString();
+    assertThat(ledgerEntryDao.claimUnsettledDebits(customerId, settlementId, 1)).isEqualTo(1);
+    assertThat(ledgerEntryDao.findOpenSettlementId(customerId)).contains(settlementId);
+    var claimed = ledgerEntryDao.findBySettlementId(settlementId);
+    assertThat(claimed.size()).isEqualTo(1);
+    assertThat(claimed.get(0).getId()).isEqualTo(older.getId());
+
+    ledgerEntryDao.markSettled(settlementId, "cbtxn_" + FAKER.internet().uuid());
+    assertThat(ledgerEntryDao.findOpenSettlementId(customerId)).isEmpty();
+    assertThat(ledgerEntryDao.sumUnsettledDebits(customerId)).isEqualTo(50L);
+  }
+
+  private LedgerEntry unsettledDebit(String customerId, long amountCents) {
+    var entry = build();
+    entry.setStripeCustomerId(customerId);
+    entry.setEntryType(LedgerEntryType.DEBIT);
+    entry.setAmountCents(amountCents);
+    entry.setReference("debit:" + UUID.randomUUID());
+    entry.setStripeTransactionId(null);
+    return entry;
+  }
+}
@@ -0,0 +1,67 @@
+package com.tollbooth.ledger;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+import com.tollbooth.persistence.AbstractCrudDaoTest;
+import com.tollbooth.query.CrudDao;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class SenderBalanceDaoTest extends AbstractCrudDaoTest<SenderBalance, String> {
+
+  @Override
+  protected CrudDao<SenderBalance, String> dao() {
+    return senderBalanceDao;
+  }
+
+  @Override
+  protected SenderBalance build() {
+    return FAKER.senderBalance();
+  }
+
+  @Override
+  protected void mutate(SenderBalance entity) {
+    entity.setBalanceCents(entity.getBalanceCents() - 100);
+    entity.setStripeBalanceCents(entity.getBalanceCents());
+  }
+
+  @Test
+  public void findForUpdate_Valid() {
+    var entity = create(build());
+    var found = senderBalanceDao.findForUpdate(entity.getStripeCustomerId());
+    assertThat(found.isPresent()).isTrue();
+    assertThat(found.get()).isEqualTo(entity);
+  }
+
+  @Test
+  public void createIfAbsent_Conflict() {
+    var entity = create(build());
+    var duplicate = build();
+    duplicate.setStripeCustomerId(entity.getStripeCustomerId());
+    duplicate.setBalanceCents(entity.getBalanceCents() - 100);
+
+    assertThat(senderBalanceDao.createIfAbsent(duplicate)).isFalse();
+    assertThat(senderBalanceDao.find(entity.getStripeCustomerId()).get()).isEqualTo(entity);
+  }
+
+  @Test
+  public void recordStripeBalances_KeepsBalance() {
+    var entity = create(build());
+    var reconciledAt = entity.getReconciledAt().plusSeconds(60);
+
+    senderBalanceDao.recordStripeBalances(
+        List.of(
+            SenderBalance.builder()
+                .stripeCustomerId(entity.getStripeCustomerId())
+                .stripeBalanceCents(entity.getBalanceCents() + 100)
+                .reconciledAt(reconciledAt)
+                .build()));
+
+    var expected =
+        entity.toBuilder()
+            .stripeBalanceCents(entity.getBalanceCents() + 100)
+            .reconciledAt(reconciledAt)
+            .build();
+    assertThat(senderBalanceDao.find(entity.getStripeCustomerId()).get()).isEqualTo(expected);
+  }
+}
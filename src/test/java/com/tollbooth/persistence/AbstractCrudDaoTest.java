@@ -6,7 +6,9 @@ import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import com.tollbooth.dto.Copyable;
 import com.tollbooth.dto.Identifiable;
 import com.tollbooth.query.CrudDao;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import org.junit.jupiter.api.Test;
 
 public abstract class AbstractCrudDaoTest<T extends Identifiable<K> & Copyable<T>, K>
@@ -81,4 +83,52 @@ public abstract class AbstractCrudDaoTest<T extends Identifiable<K> & Copyable<T
     dao().delete(entity.getId());
     assertThat(dao().find(entity.getId()).isPresent()).isFalse();
   }
+
+  @Test
+  public void createIfAbsent_Valid() {
+    var entity = build();
+    cleanup(() -> dao().delete(entity.getId()));
+
+    assertThat(dao().createIfAbsent(entity)).isTrue();
+    assertThat(dao().createIfAbsent(entity)).isFalse();
+    assertThat(dao().find(entity.getId())).isEqualTo(Optional.of(entity));
+  }
+
+  @Test
+  public void findAll_Valid() {
+    var first = create(build());
+    var second = create(build());
+    var absent = build();
+
+    var found = dao().findAll(List.of(first.getId(), second.getId(), absent.getId()));
+    assertThat(Set.copyOf(found)).isEqualTo(Set.of(first, second));
+    assertThat(dao().findAll(List.of())).isEqualTo(List.of());
+  }
+
+  @Test
+  public void crudAll_Valid() {
+    var entities = List.of(build(), build(), build());
+    entities.forEach(entity -> cleanup(() -> dao().delete(entity.getId())));
+
+    // Create and validate
+    dao().createAll(entities);
+    for (var entity : entities) {
+      assertThat(dao().find(entity.getId())).isEqualTo(Optional.of(entity));
+    }
+
+    if (updateEnabled()) {
+      // Mutate and validate
+      entities.forEach(this::mutate);
+      dao().updateAll(entities);
+      for (var entity : entities) {
+        assertThat(dao().find(entity.getId())).isEqualTo(Optional.of(entity));
+      }
+    }
+
+    // Delete and validate
+    dao().deleteAll(entities.stream().map(Identifiable::getId).toList());
+    for (var entity : entities) {
+      assertThat(dao().find(entity.getId()).isPresent()).isFalse();
+    }
+  }
 }
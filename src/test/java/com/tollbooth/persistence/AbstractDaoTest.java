@@ -1,7 +1,15 @@
 package com.tollbooth.persistence;
 
 import com.tollbooth.AbstractCleanupTest;
+import com.tollbooth.ledger.LedgerEntryDao;
+import com.tollbooth.ledger.SenderBalanceDao;
+import com.tollbooth.stripe.PendingTopupSessionDao;
+import com.tollbooth.stripe.SenderCustomerDao;
+import com.tollbooth.stripe.StripeEventInboxDao;
+import com.tollbooth.stripe.SyncCursorDao;
 import com.tollbooth.toll.TollEmailMetaDao;
+import com.tollbooth.toll.TollRetryDao;
+import com.tollbooth.toll.TopupNoticeDao;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
@@ -12,4 +20,20 @@ import org.springframework.test.context.junit.jupiter.SpringExtension;
 public abstract class AbstractDaoTest extends AbstractCleanupTest {
 
   @Autowired protected TollEmailMetaDao tollEmailMetaDao;
+
+  @Autowired protected SenderCustomerDao senderCustomerDao;
+
+  @Autowired protected SenderBalanceDao senderBalanceDao;
+
+  @Autowired protected LedgerEntryDao ledgerEntryDao;
+
+  @Autowired protected PendingTopupSessionDao pendingTopupSessionDao;
+
+  @Autowired protected StripeEventInboxDao stripeEventInboxDao;
+
+  @Autowired protected TopupNoticeDao topupNoticeDao;
+
+  @Autowired protected SyncCursorDao syncCursorDao;
+
+  @Autowired protected TollRetryDao tollRetryDao;
 }
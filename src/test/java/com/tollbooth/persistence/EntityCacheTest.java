@@ -0,0 +1,148 @@
+package com.tollbooth.persistence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.tollbooth.toll.TollEmailMeta;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class EntityCacheTest {
+
+  private final List<String> published = new ArrayList<>();
+  private final AtomicInteger loads = new AtomicInteger();
+  private EntityCache<TollEmailMeta, UUID> cache;
+  private TollEmailMeta meta;
+
+  @BeforeEach
+  void setup() {
+    cache =
+        new EntityCache<TollEmailMeta, UUID>(
+                "toll_email_meta",
+                2,
+                Duration.ofMinutes(5),
+                TollEmailMeta::deepCopy,
+                (name, index, values) -> published.add(index + ":" + values))
+            .index("gmailId", TollEmailMeta::getGmailId);
+    meta = meta("gmail-1");
+  }
+
+  @AfterEach
+  void tearDown() {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+  }
+
+  @Test
+  public void get_ReadThrough() {
+    var first = cache.get(meta.getId(), this::load);
+    var second = cache.get(meta.getId(), this::load);
+
+    assertThat(loads.get()).isEqualTo(1);
+    assertThat(second).isEqualTo(Optional.of(meta));
+    assertThat(second.get()).isNotSameAs(first.get());
+    assertThat(cache.getEntities().stats().hitCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void get_AbsentNotCached() {
+    cache.get(meta.getId(), Optional::empty);
+    cache.get(meta.getId(), this::load);
+
+    assertThat(loads.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void getBy_Index() {
+    cache.getBy("gmailId", "gmail-1", this::load);
+
+    assertThat(cache.get(meta.getId(), this::load)).isEqualTo(Optional.of(meta));
+    assertThat(cache.getBy("gmailId", "gmail-1", this::load)).isEqualTo(Optional.of(meta));
+    assertThat(loads.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void getAll_LoadsMisses() {
+    var other = meta("gmail-2");
+    cache.get(meta.getId(), this::load);
+
+    var found =
+        cache.getAll(
+            List.of(meta.getId(), other.getId()),
+            missing -> {
+              assertThat(missing).isEqualTo(List.of(other.getId()));
+              return List.of(other);
+            });
+
+    assertThat(found).containsExactlyInAnyOrder(meta, other);
+    assertThat(cache.get(other.getId(), Optional::empty)).isEqualTo(Optional.of(other));
+  }
+
+  @Test
+  public void invalidateBy_DropsAndPublishes() {
+    cache.get(meta.getId(), this::load);
+
+    cache.invalidateBy("gmailId", List.of("gmail-1"));
+
+    assertThat(published).isEqualTo(List.of("gmailId:[gmail-1]"));
+    cache.get(meta.getId(), this::load);
+    assertThat(loads.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void invalidate_DuringLoad_NotCached() {
+    cache.get(
+        meta.getId(),
+        () -> {
+          cache.invalidateLocally(null, List.of(meta.getId().toString()));
+          return load();
+        });
+    cache.get(meta.getId(), this::load);
+
+    assertThat(loads.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void put_AfterCommit() {
+    TransactionSynchronizationManager.initSynchronization();
+
+    cache.put(meta);
+    assertThat(cache.get(meta.getId(), Optional::empty)).isEmpty();
+
+    TransactionSynchronizationManager.getSynchronizations()
+        .forEach(TransactionSynchronization::afterCommit);
+    assertThat(cache.get(meta.getId(), Optional::empty)).isEqualTo(Optional.of(meta));
+  }
+
+  @Test
+  public void eviction_DropsIndex() {
+    cache.put(meta);
+    cache.put(meta("gmail-2"));
+    cache.put(meta("gmail-3"));
+
+    assertThat(cache.getEntities().stats().evictionCount()).isEqualTo(1);
+    assertThat(cache.getBy("gmailId", "gmail-1", Optional::empty)).isEmpty();
+  }
+
+  private Optional<TollEmailMeta> load() {
+    loads.incrementAndGet();
+    return Optional.of(meta.deepCopy());
+  }
+
+  private static TollEmailMeta meta(String gmailId) {
+    return TollEmailMeta.builder()
+        .id(TollEmailMeta.idFor(gmailId))
+        .gmailId(gmailId)
+        .senderEmail("sender@example.com")
+        .build();
+  }
+}
@@ -0,0 +1,72 @@
+package com.tollbooth.query;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.tollbooth.toll.TollRetry;
+import com.tollbooth.toll.TollStage;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.namedparam.BeanPropertySqlParameterSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class ParametersTest {
+
+  private final TollRetry retry =
+      TollRetry.builder()
+          .gmailId("gmail-1")
+          .stage(TollStage.DEBIT)
+          .attempts(3)
+          .nextAttemptAt(Instant.parse("2026-01-01T00:00:00Z"))
+          .build();
+
+  @Test
+  public void properties_MatchBeanProperties() {
+    var parameters = new Parameters(retry);
+    var beanParameters = new BeanPropertySqlParameterSource(retry);
+    for (String name :
+        List.of("gmailId", "stage", "attempts", "nextAttemptAt", "lastError", "createdAt")) {
+      assertThat(parameters.hasValue(name)).isTrue();
+      assertThat(parameters.getSqlType(name)).isEqualTo(beanParameters.getSqlType(name));
+    }
+    assertThat(parameters.getValue("gmailId")).isEqualTo("gmail-1");
+    assertThat(parameters.getValue("attempts")).isEqualTo(3);
+    assertThat(parameters.getValue("lastError")).isNull();
+  }
+
+  @Test
+  public void properties_Converted() {
+    var parameters = new Parameters(retry);
+    assertThat(parameters.getValue("stage")).isEqualTo("DEBIT");
+    assertThat(parameters.getValue("nextAttemptAt"))
+        .isEqualTo(Timestamp.from(Instant.parse("2026-01-01T00:00:00Z")));
+  }
+
+  @Test
+  public void map_OverridesProperty() {
+    var parameters = new Parameters(retry, Map.of("attempts", 4)).add("limit", 10);
+    assertThat(parameters.getValue("attempts")).isEqualTo(4);
+    assertThat(parameters.getValue("limit")).isEqualTo(10);
+  }
+
+  @Test
+  public void array_ElementsConverted() {
+    var array = Parameters.array("text", List.of(TollStage.DEBIT, "gmail-1"));
+    assertThat(ReflectionTestUtils.getField(array, "typeName")).isEqualTo("text");
+    assertThat(ReflectionTestUtils.getField(array, "elements"))
+        .isEqualTo(new Object[] {"DEBIT", "gmail-1"});
+  }
+
+  @Test
+  public void unknown_NoValue() {
+    var parameters = new Parameters(retry);
+    assertThat(parameters.hasValue("missing")).isFalse();
+    assertThat(parameters.hasValue("class")).isFalse();
+    assertThatThrownBy(() -> parameters.getValue("missing"))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThat(new Parameters().hasValue("id")).isFalse();
+  }
+}
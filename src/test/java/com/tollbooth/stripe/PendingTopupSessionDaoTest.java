@@ -0,0 +1,60 @@
+package com.tollbooth.stripe;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+import com.tollbooth.persistence.AbstractCrudDaoTest;
+import com.tollbooth.query.CrudDao;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import org.junit.jupiter.api.Test;
+
+public class PendingTopupSessionDaoTest extends AbstractCrudDaoTest<PendingTopupSession, String> {
+
+  @Override
+  protected CrudDao<PendingTopupSession, String> dao() {
+    return pendingTopupSessionDao;
+  }
+
+  @Override
+  protected PendingTopupSession build() {
+    return FAKER.pendingTopupSession();
+  }
+
+  @Override
+  protected void mutate(PendingTopupSession entity) {
+    entity.setSessionId("cs_" + FAKER.internet().uuid());
+    entity.setSessionUrl("https://checkout.stripe.com/c/pay/" + entity.getSessionId());
+  }
+
+  @Test
+  public void findOpen_Valid() {
+    var entity = create(build());
+    assertThat(pendingTopupSessionDao.findOpen(entity.getSenderEmail(), Instant.now()).get())
+        .isEqualTo(entity);
+    assertThat(
+            pendingTopupSessionDao
+                .findOpen(entity.getSenderEmail(), entity.getExpiresAt().plus(1, ChronoUnit.HOURS))
+                .isPresent())
+        .isFalse();
+  }
+
+  @Test
+  public void upsert_ReplacesSession() {
+    var entity = create(build());
+    var replacement = build();
+    replacement.setSenderEmail(entity.getSenderEmail());
+
+    pendingTopupSessionDao.upsert(replacement);
+    assertThat(pendingTopupSessionDao.find(entity.getSenderEmail()).get()).isEqualTo(replacement);
+  }
+
+  @Test
+  public void deleteSession_KeepsNewerSession() {
+    var entity = create(build());
+    pendingTopupSessionDao.deleteSession(entity.getSenderEmail(), "cs_" + FAKER.internet().uuid());
+    assertThat(pendingTopupSessionDao.find(entity.getSenderEmail()).isPresent()).isTrue();
+
+    pendingTopupSessionDao.deleteSession(entity.getSenderEmail(), entity.getSessionId());
+    assertThat(pendingTopupSessionDao.find(entity.getSenderEmail()).isPresent()).isFalse();
+  }
+}
@@ -0,0 +1,63 @@
+package com.tollbooth.stripe;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+import com.tollbooth.persistence.AbstractCrudDaoTest;
+import com.tollbooth.query.CrudDao;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+public class SenderCustomerDaoTest extends AbstractCrudDaoTest<SenderCustomer, UUID> {
+
+  @Override
+  protected CrudDao<SenderCustomer, UUID> dao() {
+    return senderCustomerDao;
+  }
+
+  @Override
+  protected SenderCustomer build() {
+    return FAKER.senderCustomer();
+  }
+
+  @Override
+  protected void mutate(SenderCustomer entity) {
+    entity.setSenderEmail(FAKER.internet().emailAddress());
+    entity.setStripeCustomerId("cus_" + FAKER.internet().uuid());
+  }
+
+  @Test
+  public void findBySenderEmail_Valid() {
+    var entity = create(build());
+    var found = senderCustomerDao.findBySenderEmail(entity.getSenderEmail());
+    assertThat(found).isPresent();
+    assertThat(found.get()).isEqualTo(entity);
+  }
+
+  @Test
+  public void createIfAbsent_Conflict() {
+    var entity = create(build());
+    var duplicate = build();
+    duplicate.setSenderEmail(entity.getSenderEmail());
+    cleanup(() -> senderCustomerDao.delete(duplicate.getId()));
+
+    assertThat(senderCustomerDao.createIfAbsent(duplicate)).isFalse();
+    assertThat(senderCustomerDao.findBySenderEmail(entity.getSenderEmail()).get())
+        .isEqualTo(entity);
+  }
+
+  @Test
+  public void createAllIfAbsent_Valid() {
+    var existing = create(build());
+    var duplicate = build();
+    duplicate.setSenderEmail(existing.getSenderEmail());
+    var fresh = build();
+    cleanup(() -> senderCustomerDao.delete(duplicate.getId()));
+    cleanup(() -> senderCustomerDao.delete(fresh.getId()));
+
+    senderCustomerDao.createAllIfAbsent(List.of(duplicate, fresh));
+
+    assertThat(senderCustomerDao.find(duplicate.getId())).isEmpty();
+    assertThat(senderCustomerDao.find(fresh.getId()).get()).isEqualTo(fresh);
+  }
+}
@@ -0,0 +1,54 @@
+package com.tollbooth.stripe;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.tollbooth.config.StripeConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class StripeCircuitBreakerTest {
+
+  private StripeConfig stripeConfig;
+  private StripeCircuitBreaker circuitBreaker;
+
+  @BeforeEach
+  void setup() {
+    stripeConfig = new StripeConfig();
+    ReflectionTestUtils.setField(stripeConfig, "circuitBreakerFailureThreshold", 3);
+    ReflectionTestUtils.setField(stripeConfig, "circuitBreakerOpenMs", 60_000L);
+    circuitBreaker = new StripeCircuitBreaker();
+    ReflectionTestUtils.setField(circuitBreaker, "stripeConfig", stripeConfig);
+  }
+
+  @Test
+  public void opensAfterConsecutiveFailures() {
+    circuitBreaker.recordFailure();
+    circuitBreaker.recordFailure();
+    circuitBreaker.recordSuccess();
+    circuitBreaker.recordFailure();
+    circuitBreaker.recordFailure();
+    assertThat(circuitBreaker.isOpen()).isFalse();
+    assertThat(circuitBreaker.allowRequest()).isTrue();
+
+    circuitBreaker.recordFailure();
+    assertThat(circuitBreaker.isOpen()).isTrue();
+    assertThat(circuitBreaker.allowRequest()).isFalse();
+  }
+
+  @Test
+  public void halfOpenAllowsSingleProbe() {
+    ReflectionTestUtils.setField(stripeConfig, "circuitBreakerOpenMs", 0L);
+    for (int i = 0; i < 3; i++) {
+      circuitBreaker.recordFailure();
+    }
+
+    assertThat(circuitBreaker.allowRequest()).isTrue();
+    assertThat(circuitBreaker.allowRequest()).isFalse();
+    assertThat(circuitBreaker.isOpen()).isTrue();
+
+    circuitBreaker.recordSuccess();
+    assertThat(circuitBreaker.isOpen()).isFalse();
+    assertThat(circuitBreaker.allowRequest()).isTrue();
+  }
+}
@@ -0,0 +1,110 @@
+package com.tollbooth.stripe;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+import com.tollbooth.persistence.AbstractCrudDaoTest;
+import com.tollbooth.query.CrudDao;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+public class StripeEventInboxDaoTest extends AbstractCrudDaoTest<StripeEventInboxEntry, String> {
+
+  @Override
+  protected CrudDao<StripeEventInboxEntry, String> dao() {
+    return stripeEventInboxDao;
+  }
+
+  @Override
+  protected StripeEventInboxEntry build() {
+    return FAKER.stripeEventInboxEntry();
+  }
+
+  @Override
+  protected void mutate(StripeEventInboxEntry entity) {
+    entity.setEventType("customer.updated");
+    entity.setAttempts(entity.getAttempts() + 1);
+    entity.setLastError(FAKER.lorem().sentence());
+  }
+
+  @Test
+  public void createIfAbsent_IgnoresRedelivery() {
+    var entity = create(build());
+    var redelivery = entity.toBuilder().payload("{}").build();
+
+    assertThat(stripeEventInboxDao.createIfAbsent(redelivery)).isFalse();
+    assertThat(stripeEventInboxDao.find(entity.getEventId()).get()).isEqualTo(entity);
+  }
+
+  @Test
+  public void claimDue_LeasesEvent() {
+    var entity = create(build());
+    var now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+    var leaseUntil = now.plus(5, ChronoUnit.MINUTES);
+
+    var claimed = claim(entity.getEventId(), now, leaseUntil);
+    assertThat(claimed).isPresent();
+    assertThat(claimed.get().getAttempts()).isEqualTo(1);
+    assertThat(claimed.get().getNextAttemptAt()).isEqualTo(leaseUntil);
+
+    // Still leased
+    assertThat(claim(entity.getEventId(), now, leaseUntil)).isEmpty();
+  }
+
+  @Test
+  public void claimDue_SkipsFinishedEvents() {
+    var processed = create(build());
+    var deadLettered = create(build());
+    var now = Instant.now();
+
+    stripeEventInboxDao.markProcessed(processed.getEventId(), now);
+    stripeEventInboxDao.markDeadLettered(deadLettered.getEventId(), "boom", now);
+
+    var later = now.plus(1, ChronoUnit.DAYS);
+    assertThat(claim(processed.getEventId(), later, later)).isEmpty();
+    assertThat(claim(deadLettered.getEventId(), later, later)).isEmpty();
+  }
+
+  @Test
+  public void markFailed_Reschedules() {
+    var entity = create(build());
+    var nextAttemptAt = Instant.now().plus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.MILLIS);
+
+    stripeEventInboxDao.markFailed(entity.getEventId(), "boom", nextAttemptAt);
+
+    var found = stripeEventInboxDao.find(entity.getEventId()).get();
+    assertThat(found.getLastError()).isEqualTo("boom");
+    assertThat(found.getNextAttemptAt()).isEqualTo(nextAttemptAt);
+    assertThat(claim(entity.getEventId(), Instant.now(), nextAttemptAt)).isEmpty();
+  }
+
+  private Optional<StripeEventInboxEntry> claim(String eventId, Instant now, Instant leaseUntil) {
+    return stripeEventInboxDao.claimDue(1000, now, leaseUntil).stream()
+        .filter(entry -> entry.getEventId().equals(eventId))
+        .findFirst();
+  }
+
+  @Test
+  public void createAllIfAbsent_SkipsReceivedEvents() {
+    var received = create(build());
+    var missed = build();
+    cleanup(() -> stripeEventInboxDao.delete(missed.getEventId()));
+
+    stripeEventInboxDao.createAllIfAbsent(
+        List.of(received.toBuilder().payload("{}").build(), missed));
+
+    assertThat(stripeEventInboxDao.find(received.getEventId()).get()).isEqualTo(received);
+    assertThat(stripeEventInboxDao.find(missed.getEventId()).get()).isEqualTo(missed);
+  }
+
+  @Test
+  public void findExistingIds_Valid() {
+    var received = create(build());
+
+    assertThat(stripeEventInboxDao.findExistingIds(List.of(received.getEventId(), "evt_missing")))
+        .isEqualTo(Set.of(received.getEventId()));
+  }
+}
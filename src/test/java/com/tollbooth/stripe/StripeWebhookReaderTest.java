@@ -0,0 +1,138 @@
+package com.tollbooth.stripe;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.stripe.exception.SignatureVerificationException;
+import com.stripe.model.Event;
+import com.stripe.net.ApiResource;
+import com.stripe.net.Webhook;
+import com.tollbooth.config.StripeConfig;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class StripeWebhookReaderTest {
+
+  private static final String SECRET = "whsec_test";
+
+  private static final String CHECKOUT_COMPLETED =
+      """
+      {
+        "id": "evt_1",
+        "object": "event",
+        "created": 1700000000,
+        "data": {
+          "object": {
+            "id": "cs_1",
+            "object": "checkout.session",
+            "amount_total": 1000,
+            "customer_details": {"email": "sender@example.com", "address": null},
+            "line_items": [{"id": "li_1"}],
+            "metadata": {
+              "sessionType": "inbox_toll_topup",
+              "senderEmail": "sender@example.com",
+              "senderCustomerId": "cus_1",
+              "tollAmountAtTopUp": "0.25"
+            }
+          },
+          "previous_attributes": {"metadata": {"sessionType": "old"}}
+        },
+        "livemode": false,
+        "type": "checkout.session.completed"
+      }
+      """;
+
+  private StripeWebhookReader reader;
+
+  @BeforeEach
+  void setup() {
+    StripeConfig stripeConfig = new StripeConfig();
+    ReflectionTestUtils.setField(stripeConfig, "webhookSecret", SECRET);
+    reader = new StripeWebhookReader();
+    ReflectionTestUtils.setField(reader, "stripeConfig", stripeConfig);
+    reader.init();
+  }
+
+  @Test
+  public void read_ExtractsHandledEvent() throws Exception {
+    byte[] payload = CHECKOUT_COMPLETED.getBytes(StandardCharsets.UTF_8);
+
+    var summary = reader.read(payload, sign(payload, Instant.now().getEpochSecond()));
+
+    assertThat(summary)
+        .contains(
+            StripeEventSummary.builder()
+                .id("evt_1")
+                .type("checkout.session.completed")
+                .created(1700000000L)
+                .objectId("cs_1")
+                .amountTotal(1000L)
+                .metadata(
+                    Map.of(
+                        "sessionType", "inbox_toll_topup",
+                        "senderEmail", "sender@example.com",
+                        "senderCustomerId", "cus_1",
+                        "tollAmountAtTopUp", "0.25"))
+                .build());
+  }
+
+  @Test
+  public void read_DropsUnhandledEvent() throws Exception {
+    byte[] payload =
+        CHECKOUT_COMPLETED
+            .replace("checkout.session.completed", "invoice.paid")
+            .getBytes(StandardCharsets.UTF_8);
+
+    assertThat(reader.read(payload, sign(payload, Instant.now().getEpochSecond()))).isEmpty();
+  }
+
+  @Test
+  public void verify_RejectsTamperedPayload() throws Exception {
+    byte[] payload = CHECKOUT_COMPLETED.getBytes(StandardCharsets.UTF_8);
+    String sigHeader = sign(payload, Instant.now().getEpochSecond());
+    byte[] tampered = CHECKOUT_COMPLETED.replace("1000", "100000").getBytes(StandardCharsets.UTF_8);
+
+    assertThatThrownBy(() -> reader.verify(tampered, sigHeader))
+        .isInstanceOf(SignatureVerificationException.class);
+  }
+
+  @Test
+  public void verify_RejectsStaleTimestamp() throws Exception {
+    byte[] payload = CHECKOUT_COMPLETED.getBytes(StandardCharsets.UTF_8);
+    long stale = Instant.now().getEpochSecond() - Webhook.DEFAULT_TOLERANCE - 60;
+
+    assertThatThrownBy(() -> reader.verify(payload, sign(payload, stale)))
+        .isInstanceOf(SignatureVerificationException.class)
+        .hasMessageContaining("tolerance");
+  }
+
+  @Test
+  public void verify_RejectsMissingHeader() {
+    byte[] payload = CHECKOUT_COMPLETED.getBytes(StandardCharsets.UTF_8);
+
+    assertThatThrownBy(() -> reader.verify(payload, null))
+        .isInstanceOf(SignatureVerificationException.class);
+    assertThatThrownBy(() -> reader.verify(payload, "t=abc,v1=zz"))
+        .isInstanceOf(SignatureVerificationException.class);
+  }
+
+  @Test
+  public void summarize_ReadsListedEvent() throws Exception {
+    Event event = ApiResource.GSON.fromJson(CHECKOUT_COMPLETED, Event.class);
+
+    assertThat(StripeWebhookReader.summarize(event))
+        .isEqualTo(
+            StripeWebhookReader.summarize(CHECKOUT_COMPLETED.getBytes(StandardCharsets.UTF_8))
+                .get());
+  }
+
+  private static String sign(byte[] payload, long timestamp) throws Exception {
+    String signedPayload = timestamp + "." + new String(payload, StandardCharsets.UTF_8);
+    String signature = Webhook.Util.computeHmacSha256(SECRET, signedPayload);
+    return "t=" + timestamp + ",v0=ignored," + Webhook.Signature.EXPECTED_SCHEME + "=" + signature;
+  }
+}
@@ -0,0 +1,39 @@
+package com.tollbooth.stripe;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+import com.tollbooth.persistence.AbstractCrudDaoTest;
+import com.tollbooth.query.CrudDao;
+import java.time.temporal.ChronoUnit;
+import org.junit.jupiter.api.Test;
+
+public class SyncCursorDaoTest extends AbstractCrudDaoTest<SyncCursor, String> {
+
+  @Override
+  protected CrudDao<SyncCursor, String> dao() {
+    return syncCursorDao;
+  }
+
+  @Override
+  protected SyncCursor build() {
+    return FAKER.syncCursor();
+  }
+
+  @Override
+  protected void mutate(SyncCursor entity) {
+    entity.setCursorAt(entity.getCursorAt().plus(1, ChronoUnit.HOURS));
+  }
+
+  @Test
+  public void upsert_MovesCursor() {
+    var cursor = build();
+    cleanup(() -> syncCursorDao.delete(cursor.getName()));
+
+    syncCursorDao.upsert(cursor);
+    assertThat(syncCursorDao.find(cursor.getName()).get()).isEqualTo(cursor);
+
+    var moved = cursor.toBuilder().cursorAt(cursor.getCursorAt().plus(1, ChronoUnit.DAYS)).build();
+    syncCursorDao.upsert(moved);
+    assertThat(syncCursorDao.find(cursor.getName()).get()).isEqualTo(moved);
+  }
+}
@@ -0,0 +1,53 @@
+package com.tollbooth.toll;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.tollbooth.config.TollProperties;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class KnownContactSetTest {
+
+  @TempDir Path tempDir;
+
+  private KnownContactSet open(Path path) {
+    var properties = new TollProperties();
+    properties.setKnownContactsPath(path.toString());
+    properties.setKnownContactsInitialSize(16);
+    var set = new KnownContactSet();
+    ReflectionTestUtils.setField(set, "tollProperties", properties);
+    set.open();
+    return set;
+  }
+
+  @Test
+  public void addAndContains_Valid() {
+    var set = open(tempDir.resolve("contacts.idx"));
+    set.add("alice@example.com");
+    assertThat(set.contains("alice@example.com")).isTrue();
+    assertThat(set.contains("ALICE@Example.com")).isTrue();
+    assertThat(set.contains("bob@example.com")).isFalse();
+    set.add("alice@example.com");
+    assertThat(set.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void reopen_PersistsAcrossGrowthAndCompaction() {
+    var path = tempDir.resolve("contacts.idx");
+    var set = open(path);
+    for (int i = 0; i < 5_000; i++) {
+      set.add("sender" + i + "@example.com");
+    }
+    set.compact();
+    set.close();
+
+    var reopened = open(path);
+    assertThat(reopened.size()).isEqualTo(5_000);
+    for (int i = 0; i < 5_000; i++) {
+      assertThat(reopened.contains("sender" + i + "@example.com")).isTrue();
+    }
+    assertThat(reopened.contains("stranger@example.com")).isFalse();
+  }
+}
@@ -0,0 +1,126 @@
+package com.tollbooth.toll;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.tollbooth.config.TollProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class ProcessedEmailBufferTest {
+
+  private final List<List<String>> batches = new CopyOnWriteArrayList<>();
+  private volatile boolean failing;
+  private TollProperties tollProperties;
+  private SimpleMeterRegistry meterRegistry;
+  private ProcessedEmailBuffer buffer;
+
+  @BeforeEach
+  void setup() {
+    tollProperties = new TollProperties();
+    tollProperties.setProcessedBatchSize(3);
+    tollProperties.setProcessedFlushMs(60_000);
+    meterRegistry = new SimpleMeterRegistry();
+    buffer = new ProcessedEmailBuffer();
+    ReflectionTestUtils.setField(buffer, "tollEmailMetaDao", new RecordingDao());
+    ReflectionTestUtils.setField(buffer, "tollProperties", tollProperties);
+    ReflectionTestUtils.setField(buffer, "meterRegistry", meterRegistry);
+    buffer.start();
+  }
+
+  @AfterEach
+  void tearDown() throws InterruptedException {
+    failing = false;
+    buffer.stop();
+  }
+
+  @Test
+  public void flush_WritesOneBatch() {
+    buffer.record(processed("gmail-1"));
+    buffer.record(processed("gmail-2"));
+
+    buffer.flush();
+
+    assertThat(batches).isEqualTo(List.of(List.of("gmail-1", "gmail-2")));
+    assertThat(buffer.size()).isZero();
+    assertThat(meterRegistry.get("toll.processed.flush").timer().count()).isEqualTo(1);
+  }
+
+  @Test
+  public void record_FlushesFullBatch() throws Exception {
+    buffer.record(processed("gmail-1"));
+    buffer.record(processed("gmail-2"));
+    buffer.record(processed("gmail-3"));
+
+    awaitBatches(1);
+    assertThat(batches).isEqualTo(List.of(List.of("gmail-1", "gmail-2", "gmail-3")));
+  }
+
+  @Test
+  public void record_FlushesAfterDeadline() throws Exception {
+    tollProperties.setProcessedFlushMs(10);
+
+    buffer.record(processed("gmail-1"));
+
+    awaitBatches(1);
+    assertThat(batches).isEqualTo(List.of(List.of("gmail-1")));
+  }
+
+  @Test
+  public void flush_FailureKeepsRecords() {
+    buffer.record(processed("gmail-1"));
+    failing = true;
+
+    assertThatThrownBy(buffer::flush).isInstanceOf(IllegalStateException.class);
+    assertThat(buffer.size()).isEqualTo(1);
+
+    failing = false;
+    buffer.flush();
+    assertThat(batches).isEqualTo(List.of(List.of("gmail-1")));
+  }
+
+  @Test
+  public void stop_Drains() throws Exception {
+    buffer.record(processed("gmail-1"));
+
+    buffer.stop();
+
+    assertThat(batches).isEqualTo(List.of(List.of("gmail-1")));
+  }
+
+  private void awaitBatches(int count) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (batches.size() < count && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+  }
+
+  private static TollEmailMeta processed(String gmailId) {
+    Instant now = Instant.now();
+    return TollEmailMeta.builder()
+        .id(TollEmailMeta.idFor(gmailId))
+        .gmailId(gmailId)
+        .senderEmail("sender@example.com")
+        .processedAt(now)
+        .receivedAt(now)
+        .createdAt(now)
+        .build();
+  }
+
+  private class RecordingDao extends TollEmailMetaDao {
+    @Override
+    public void createAllProcessed(List<TollEmailMeta> processed) {
+      if (failing) {
+        throw new IllegalStateException("Database unavailable");
+      }
+      batches.add(processed.stream().map(TollEmailMeta::getGmailId).toList());
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package com.tollbooth.toll;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.tollbooth.config.TollProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class SenderLockTest {
+
+  private SimpleMeterRegistry meterRegistry;
+  private SenderLock senderLock;
+
+  @BeforeEach
+  void setup() {
+    meterRegistry = new SimpleMeterRegistry();
+    senderLock = new SenderLock();
+    ReflectionTestUtils.setField(senderLock, "tollProperties", new TollProperties());
+    ReflectionTestUtils.setField(senderLock, "meterRegistry", meterRegistry);
+    senderLock.init();
+  }
+
+  @Test
+  public void sameSenderWaits() throws Exception {
+    CountDownLatch acquired = new CountDownLatch(1);
+    CompletableFuture<Void> waiter;
+    try (var held = senderLock.acquire("cus_1")) {
+      waiter =
+          CompletableFuture.runAsync(
+              () -> {
+                try (var other = senderLock.acquire("cus_1")) {
+                  acquired.countDown();
+                } catch (Exception e) {
+                  throw new IllegalStateException(e);
+                }
+              });
+      assertThat(acquired.await(200, TimeUnit.MILLISECONDS)).isFalse();
+    }
+    waiter.get(5, TimeUnit.SECONDS);
+    assertThat(acquired.getCount()).isZero();
+    assertThat(meterRegistry.get("toll.sender_lock.wait").timer().count()).isEqualTo(2);
+  }
+
+  @Test
+  public void otherSendersProceed() throws Exception {
+    try (var held = senderLock.acquire("cus_1")) {
+      CompletableFuture<Void> other =
+          CompletableFuture.runAsync(
+              () -> {
+                try (var lock = senderLock.acquire("cus_2")) {
+                  // Acquired while cus_1 is held
+                } catch (Exception e) {
+                  throw new IllegalStateException(e);
+                }
+              });
+      other.get(5, TimeUnit.SECONDS);
+    }
+  }
+}
@@ -4,6 +4,14 @@ import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 
 import com.tollbooth.persistence.AbstractCrudDaoTest;
 import com.tollbooth.query.CrudDao;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import org.junit.jupiter.api.Test;
 
@@ -34,6 +42,26 @@ public class TollEmailMetaDaoTest extends AbstractCrudDaoTest<TollEmailMeta, UUI
     assertThat(found.get()).isEqualTo(entity);
   }
 
+  @Test
+  public void findByGmailId_ReceivedAt() {
+    var entity = create(build());
+    assertThat(tollEmailMetaDao.findByGmailId(entity.getGmailId(), entity.getReceivedAt()))
+        .isEqualTo(Optional.of(entity));
+    assertThat(tollEmailMetaDao.findByGmailId(FAKER.internet().uuid(), entity.getReceivedAt()))
+        .isEmpty();
+  }
+
+  @Test
+  public void findByGmailIds_Valid() {
+    var first = create(build());
+    var second = create(build());
+
+    var found =
+        tollEmailMetaDao.findByGmailIds(
+            List.of(first.getGmailId(), second.getGmailId(), FAKER.internet().uuid()));
+    assertThat(Set.copyOf(found)).isEqualTo(Set.of(first, second));
+  }
+
   @Test
   public void findByGmailId_NotFound() {
     var found = tollEmailMetaDao.findByGmailId(FAKER.internet().uuid());
@@ -52,4 +80,260 @@ public class TollEmailMetaDaoTest extends AbstractCrudDaoTest<TollEmailMeta, UUI
     var isProcessed = tollEmailMetaDao.isEmailAlreadyProcessed(FAKER.internet().uuid());
     assertThat(isProcessed).isFalse();
   }
+
+  @Test
+  public void claim_New() {
+    var entity = unclaimed();
+    cleanup(() -> tollEmailMetaDao.delete(entity.getId()));
+
+    assertThat(tollEmailMetaDao.claim(entity, entity.getCreatedAt().minusSeconds(300))).isTrue();
+    assertThat(tollEmailMetaDao.find(entity.getId())).isEqualTo(Optional.of(entity));
+  }
+
+  @Test
+  public void claim_Processed() {
+    var entity = create(build());
+    var claim = unclaimed();
+    claim.setGmailId(entity.getGmailId());
+    claim.setReceivedAt(entity.getReceivedAt());
+
+    assertThat(tollEmailMetaDao.claim(claim, claim.getCreatedAt().plusSeconds(60))).isFalse();
+    assertThat(tollEmailMetaDao.find(entity.getId())).isEqualTo(Optional.of(entity));
+  }
+
+  @Test
+  public void claim_Unfinished() {
+    var entity = unclaimed();
+    cleanup(() -> tollEmailMetaDao.delete(entity.getId()));
+    var staleBefore = entity.getCreatedAt().minusSeconds(300);
+    tollEmailMetaDao.claim(entity, staleBefore);
+
+    assertThat(tollEmailMetaDao.claim(entity, staleBefore)).isFalse();
+  }
+
+  @Test
+  public void claim_Stale() {
+    var entity = unclaimed();
+    cleanup(() -> tollEmailMetaDao.delete(entity.getId()));
+    tollEmailMetaDao.claim(entity, entity.getCreatedAt().minusSeconds(300));
+    var takeover = entity.toBuilder().createdAt(entity.getCreatedAt().plusSeconds(600)).build();
+
+    assertThat(tollEmailMetaDao.claim(takeover, takeover.getCreatedAt().minusSeconds(300)))
+        .isTrue();
+    assertThat(tollEmailMetaDao.find(entity.getId()).get().getCreatedAt())
+        .isEqualTo(takeover.getCreatedAt());
+  }
+
+  @Test
+  public void claim_RecordedBeforePartitioning() {
+    var entity = create(build());
+    // Recorded under its claim time, while the message is now claimed under its receipt time
+    var claim = unclaimed();
+    claim.setGmailId(entity.getGmailId());
+    claim.setReceivedAt(entity.getReceivedAt().minusSeconds(60));
+
+    assertThat(tollEmailMetaDao.claim(claim, claim.getCreatedAt().plusSeconds(60))).isFalse();
+    assertThat(tollEmailMetaDao.findByGmailId(entity.getGmailId())).isEqualTo(Optional.of(entity));
+  }
+
+  @Test
+  public void claim_NoPartition() {
+    var claim = unclaimed();
+    claim.setReceivedAt(LocalDateTime.of(2200, 1, 1, 0, 0).toInstant(ZoneOffset.UTC));
+
+    assertThat(tollEmailMetaDao.claim(claim, claim.getCreatedAt().minusSeconds(300))).isFalse();
+    assertThat(tollEmailMetaDao.find(claim.getId()).isPresent()).isFalse();
+  }
+
+  @Test
+  public void release_Unfinished() {
+    var entity = unclaimed();
+    cleanup(() -> tollEmailMetaDao.delete(entity.getId()));
+    tollEmailMetaDao.claim(entity, entity.getCreatedAt().minusSeconds(300));
+
+    tollEmailMetaDao.release(entity.getGmailId(), entity.getReceivedAt());
+
+    assertThat(tollEmailMetaDao.find(entity.getId()).isPresent()).isFalse();
+  }
+
+  @Test
+  public void release_Processed() {
+    var entity = create(build());
+
+    tollEmailMetaDao.release(entity.getGmailId(), entity.getReceivedAt());
+
+    assertThat(tollEmailMetaDao.find(entity.getId())).isEqualTo(Optional.of(entity));
+  }
+
+  @Test
+  public void markProcessed_Valid() {
+    var entity = unclaimed();
+    cleanup(() -> tollEmailMetaDao.delete(entity.getId()));
+    tollEmailMetaDao.claim(entity, entity.getCreatedAt().minusSeconds(300));
+    var customerId = "cus_" + FAKER.internet().uuid();
+    var processedAt = entity.getCreatedAt().plusSeconds(1);
+
+    tollEmailMetaDao.markProcessed(
+        entity.getGmailId(), entity.getReceivedAt(), customerId, true, processedAt);
+
+    var expected =
+        entity.toBuilder().stripeCustomerId(customerId).tollPaid(true).processedAt(processedAt);
+    assertThat(tollEmailMetaDao.find(entity.getId())).isEqualTo(Optional.of(expected.build()));
+  }
+
+  @Test
+  public void createAllProcessed_SkipsRecorded() {
+    var recorded = create(build());
+    var fresh = build();
+    cleanup(() -> tollEmailMetaDao.delete(fresh.getId()));
+    var duplicate = recorded.toBuilder().id(UUID.randomUUID()).tollPaid(!recorded.isTollPaid());
+
+    tollEmailMetaDao.createAllProcessed(List.of(fresh, duplicate.build()));
+
+    var found = tollEmailMetaDao.findByGmailIds(List.of(recorded.getGmailId(), fresh.getGmailId()));
+    assertThat(Set.copyOf(found)).isEqualTo(Set.of(recorded, fresh));
+  }
+
+  @Test
+  public void createAllProcessed_NoPartition() {
+    var fresh = build();
+    cleanup(() -> tollEmailMetaDao.delete(fresh.getId()));
+    var outside = build();
+    outside.setReceivedAt(LocalDateTime.of(2200, 1, 1, 0, 0).toInstant(ZoneOffset.UTC));
+
+    tollEmailMetaDao.createAllProcessed(List.of(fresh, outside));
+
+    assertThat(tollEmailMetaDao.find(fresh.getId())).isEqualTo(Optional.of(fresh));
+    assertThat(tollEmailMetaDao.find(outside.getId()).isPresent()).isFalse();
+  }
+
+  @Test
+  public void findUnpaidByCustomer_OldestFirst() {
+    var customerId = "cus_" + FAKER.internet().uuid();
+    var newer = build();
+    newer.setStripeCustomerId(customerId);
+    newer.setTollPaid(false);
+    var older = build();
+    older.setStripeCustomerId(customerId);
+    older.setTollPaid(false);
+    older.setCreatedAt(newer.getCreatedAt().minusSeconds(60));
+    var paid = build();
+    paid.setStripeCustomerId(customerId);
+    paid.setTollPaid(true);
+    create(newer);
+    create(older);
+    create(paid);
+
+    var unpaid = tollEmailMetaDao.findUnpaidByCustomer(customerId);
+    assertThat(unpaid).isEqualTo(List.of(older, newer));
+  }
+
+  @Test
+  public void markPaid_Valid() {
+    var first = build();
+    first.setTollPaid(false);
+    var second = build();
+    second.setTollPaid(false);
+    create(first);
+    create(second);
+
+    tollEmailMetaDao.markPaid(List.of(first, second));
+
+    assertThat(tollEmailMetaDao.find(first.getId()).get().isTollPaid()).isTrue();
+    assertThat(tollEmailMetaDao.find(second.getId()).get().isTollPaid()).isTrue();
+  }
+
+  @Test
+  public void findCustomersWithUnpaid_Valid() {
+    var unpaid = build();
+    unpaid.setTollPaid(false);
+    var paid = build();
+    paid.setTollPaid(true);
+    create(unpaid);
+    create(paid);
+
+    var customerIds =
+        tollEmailMetaDao.findCustomersWithUnpaid(
+            List.of(unpaid.getStripeCustomerId(), paid.getStripeCustomerId()));
+    assertThat(customerIds).isEqualTo(Set.of(unpaid.getStripeCustomerId()));
+  }
+
+  @Test
+  public void findPage_Keyset() {
+    var first = build();
+    var second = build();
+    second.setCreatedAt(first.getCreatedAt().plusSeconds(60));
+    var third = build();
+    third.setCreatedAt(second.getCreatedAt());
+    create(third);
+    create(second);
+    create(first);
+    // Rows created at the same time are ordered by ID
+    var tied =
+        second.getId().compareTo(third.getId()) < 0
+            ? List.of(second, third)
+            : List.of(third, second);
+
+    var page = tollEmailMetaDao.findPage(null, 2);
+    assertThat(page).isEqualTo(List.of(first, tied.get(0)));
+    page = tollEmailMetaDao.findPage(page.get(1), 2);
+    assertThat(page).isEqualTo(List.of(tied.get(1)));
+    assertThat(tollEmailMetaDao.findPage(page.get(0), 2)).isEqualTo(List.of());
+  }
+
+  @Test
+  public void streamCreatedBefore_OldestFirst() {
+    var newer = build();
+    var older = build();
+    older.setCreatedAt(newer.getCreatedAt().minusSeconds(60));
+    var excluded = build();
+    excluded.setCreatedAt(newer.getCreatedAt().plusSeconds(60));
+    create(newer);
+    create(older);
+    create(excluded);
+
+    try (var stream = tollEmailMetaDao.streamCreatedBefore(excluded.getCreatedAt())) {
+      assertThat(stream.toList()).isEqualTo(List.of(older, newer));
+    }
+  }
+
+  @Test
+  public void createPartition_Listed() {
+    var from = LocalDate.of(2100, 1, 1);
+    tollEmailMetaDao.createPartition(from, from.plusMonths(1));
+    var partition =
+        TollEmailMetaPartition.builder()
+            .name("toll_email_meta_2100_01")
+            .receivedBefore(LocalDateTime.of(2100, 2, 1, 0, 0))
+            .build();
+    cleanup(() -> tollEmailMetaDao.dropPartition(partition));
+
+    assertThat(tollEmailMetaDao.findPartitions().contains(partition)).isTrue();
+  }
+
+  @Test
+  public void dropPartition_Exported() {
+    var from = LocalDate.of(2100, 2, 1);
+    tollEmailMetaDao.createPartition(from, from.plusMonths(1));
+    var entity = build();
+    entity.setReceivedAt(LocalDateTime.of(2100, 2, 15, 0, 0).toInstant(ZoneOffset.UTC));
+    tollEmailMetaDao.create(entity);
+    var partition =
+        tollEmailMetaDao.findPartitions().stream()
+            .filter(p -> p.getName().equals("toll_email_meta_2100_02"))
+            .findFirst()
+            .get();
+
+    var out = new ByteArrayOutputStream();
+    assertThat(tollEmailMetaDao.exportPartition(partition.getName(), out)).isEqualTo(1);
+    assertThat(out.toString(StandardCharsets.UTF_8)).contains(entity.getGmailId());
+    tollEmailMetaDao.dropPartition(partition);
+
+    assertThat(tollEmailMetaDao.find(entity.getId()).isPresent()).isFalse();
+    assertThat(tollEmailMetaDao.findPartitions().contains(partition)).isFalse();
+  }
+
+  private TollEmailMeta unclaimed() {
+    return build().toBuilder().tollPaid(false).stripeCustomerId(null).processedAt(null).build();
+  }
 }
@@ -0,0 +1,83 @@
+package com.tollbooth.toll;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+import com.tollbooth.persistence.AbstractCrudDaoTest;
+import com.tollbooth.query.CrudDao;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import org.junit.jupiter.api.Test;
+
+public class TollRetryDaoTest extends AbstractCrudDaoTest<TollRetry, String> {
+
+  @Override
+  protected CrudDao<TollRetry, String> dao() {
+    return tollRetryDao;
+  }
+
+  @Override
+  protected TollRetry build() {
+    return FAKER.tollRetry();
+  }
+
+  @Override
+  protected void mutate(TollRetry entity) {
+    entity.setStage(TollStage.GMAIL);
+    entity.setAttempts(entity.getAttempts() + 1);
+    entity.setLastError(FAKER.lorem().sentence());
+  }
+
+  @Test
+  public void recordFailure_KeepsAttemptsAndSchedule() {
+    var retry = build();
+    cleanup(() -> tollRetryDao.delete(retry.getGmailId()));
+    assertThat(tollRetryDao.recordFailure(retry)).isEqualTo(0);
+
+    var again =
+        retry.toBuilder()
+            .stage(TollStage.DEBIT)
+            .nextAttemptAt(retry.getNextAttemptAt().plus(1, ChronoUnit.HOURS))
+            .lastError("again")
+            .build();
+    assertThat(tollRetryDao.recordFailure(again)).isEqualTo(0);
+
+    var stored = tollRetryDao.find(retry.getGmailId()).get();
+    assertThat(stored.getStage()).isEqualTo(TollStage.DEBIT);
+    assertThat(stored.getLastError()).isEqualTo("again");
+    assertThat(stored.getNextAttemptAt()).isEqualTo(retry.getNextAttemptAt());
+  }
+
+  @Test
+  public void claimDue_LeasesRetry() {
+    var now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+    var due = build();
+    due.setNextAttemptAt(now.minusSeconds(60));
+    create(due);
+    var leaseUntil = now.plus(5, ChronoUnit.MINUTES);
+
+    var claimed = tollRetryDao.claimDue(100, now, leaseUntil);
+    var entry = claimed.stream().filter(r -> r.getGmailId().equals(due.getGmailId())).findFirst();
+    assertThat(entry.get().getAttempts()).isEqualTo(1);
+    assertThat(entry.get().getNextAttemptAt()).isEqualTo(leaseUntil);
+
+    var again = tollRetryDao.claimDue(100, now, leaseUntil);
+    assertThat(again.stream().anyMatch(r -> r.getGmailId().equals(due.getGmailId()))).isFalse();
+  }
+
+  @Test
+  public void markDeadLettered_StopsRetries() {
+    var now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+    var retry = build();
+    retry.setNextAttemptAt(now.minusSeconds(60));
+    create(retry);
+    int pending = tollRetryDao.countPending();
+    int deadLettered = tollRetryDao.countDeadLettered();
+
+    tollRetryDao.markDeadLettered(retry.getGmailId(), now);
+
+    assertThat(tollRetryDao.countPending()).isEqualTo(pending - 1);
+    assertThat(tollRetryDao.countDeadLettered()).isEqualTo(deadLettered + 1);
+    var claimed = tollRetryDao.claimDue(100, now, now.plus(5, ChronoUnit.MINUTES));
+    assertThat(claimed.stream().anyMatch(r -> r.getGmailId().equals(retry.getGmailId()))).isFalse();
+  }
+}
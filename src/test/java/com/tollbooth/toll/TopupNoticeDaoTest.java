@@ -0,0 +1,79 @@
+package com.tollbooth.toll;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+import com.tollbooth.persistence.AbstractCrudDaoTest;
+import com.tollbooth.query.CrudDao;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+public class TopupNoticeDaoTest extends AbstractCrudDaoTest<TopupNotice, UUID> {
+
+  @Override
+  protected CrudDao<TopupNotice, UUID> dao() {
+    return topupNoticeDao;
+  }
+
+  @Override
+  protected TopupNotice build() {
+    return FAKER.topupNotice();
+  }
+
+  @Override
+  protected void mutate(TopupNotice entity) {
+    entity.setSenderAddress(FAKER.internet().emailAddress());
+    entity.setSubject(FAKER.lorem().sentence());
+    entity.setSentAt(Instant.now().truncatedTo(ChronoUnit.MILLIS));
+  }
+
+  @Test
+  public void findDueSenders_WaitsForWindowAndRateLimit() {
+    var now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+    var collecting = build();
+    var due = build();
+    due.setCreatedAt(now.minus(10, ChronoUnit.MINUTES));
+    var rateLimited = build();
+    rateLimited.setCreatedAt(now.minus(10, ChronoUnit.MINUTES));
+    var lastSent = build();
+    lastSent.setSenderEmail(rateLimited.getSenderEmail());
+    lastSent.setSentAt(now.minus(1, ChronoUnit.MINUTES));
+    create(collecting);
+    create(due);
+    create(rateLimited);
+    create(lastSent);
+
+    var senders =
+        topupNoticeDao.findDueSenders(
+            now.minus(5, ChronoUnit.MINUTES), now.minus(1, ChronoUnit.HOURS));
+    assertThat(senders.contains(due.getSenderEmail())).isTrue();
+    assertThat(senders.contains(collecting.getSenderEmail())).isFalse();
+    assertThat(senders.contains(rateLimited.getSenderEmail())).isFalse();
+  }
+
+  @Test
+  public void markSent_RemovesFromUnsent() {
+    var first = build();
+    var second = build();
+    second.setSenderEmail(first.getSenderEmail());
+    second.setCreatedAt(first.getCreatedAt().plusSeconds(1));
+    create(first);
+    create(second);
+    assertThat(topupNoticeDao.findUnsent(first.getSenderEmail())).isEqualTo(List.of(first, second));
+
+    topupNoticeDao.markSent(List.of(first.getId()), Instant.now());
+    assertThat(topupNoticeDao.findUnsent(first.getSenderEmail())).isEqualTo(List.of(second));
+  }
+
+  @Test
+  public void createIfAbsent_Conflict() {
+    var entity = create(build());
+    var duplicate = build();
+    duplicate.setId(entity.getId());
+
+    assertThat(topupNoticeDao.createIfAbsent(duplicate)).isFalse();
+    assertThat(topupNoticeDao.find(entity.getId()).get()).isEqualTo(entity);
+  }
+}